@@ -0,0 +1,270 @@
+package com.digipro.emulator.adapter;
+
+import com.digipro.emulator.config.AppConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de contenido de archivos con presupuesto en bytes, para los documentos que se piden una y
+ * otra vez (p. ej. los estados de cuenta del periodo actual) y no volver a leerlos del repositorio.
+ *
+ * - Clave: ruta absoluta; cada entrada guarda mtime y tamaño y solo sirve si coinciden con los del
+ *   archivo en disco (un archivo reemplazado se vuelve a leer).
+ * - Admisión estilo W-TinyLFU: una ventana LRU chica (1% del presupuesto) recibe los archivos
+ *   nuevos; al salir de ella, o directamente si no caben en la ventana, compiten con las víctimas
+ *   LRU de la región principal y solo entran si se han pedido más veces que cada una (frecuencia
+ *   aproximada en un count-min sketch de 4 bits que se reduce a la mitad periódicamente). Así un
+ *   archivo grande pedido una vez no saca a los que se piden siempre.
+ * - Almacén en heap (byte[]) o fuera del heap (ByteBuffer directo; cuenta contra
+ *   -XX:MaxDirectMemorySize).
+ *
+ * database.properties (solo al arrancar):
+ *   cache.contenido.max.mb=0            (0 = deshabilitada; p. ej. 256)
+ *   cache.contenido.archivo.max.mb=16
+ *   cache.contenido.almacen=heap        (heap | directo)
+ */
+final class ContenidoCache {
+
+    private static final int VENTANA_PCT = 1;
+
+    private final long maxBytes;
+    private final long ventanaMax;
+    private final long archivoMax;
+    private final boolean directo;
+    private final Frecuencias frecuencias;
+
+    /** Orden de acceso = LRU. Ambas regiones protegidas por el monitor de esta instancia. */
+    private final LinkedHashMap<String, Entrada> ventana = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Entrada> principal = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytesVentana;
+    private long bytesPrincipal;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesAhorrados = new LongAdder();
+    private final LongAdder rechazados = new LongAdder();
+    private final LongAdder desalojados = new LongAdder();
+
+    private ContenidoCache(AppConfig cfg) {
+        this.maxBytes = cfg.cacheContenidoMaxMb * 1024L * 1024L;
+        this.ventanaMax = Math.max(1, maxBytes * VENTANA_PCT / 100);
+        this.archivoMax = Math.min(maxBytes - ventanaMax, cfg.cacheContenidoArchivoMaxMb * 1024L * 1024L);
+        this.directo = cfg.cacheContenidoDirecto;
+        // Contadores para ~ un archivo de 32 KB por cada uno en el presupuesto
+        this.frecuencias = new Frecuencias((int) Math.min(1 << 22, Math.max(1024, maxBytes / (32 * 1024))));
+        System.out.println("[ContenidoCache] Caché de contenido de " + cfg.cacheContenidoMaxMb + " MB ("
+                + (directo ? "directo" : "heap") + ", archivos hasta " + cfg.cacheContenidoArchivoMaxMb + " MB)");
+    }
+
+    /** Caché configurada, o null si cache.contenido.max.mb=0. */
+    static ContenidoCache crear(AppConfig cfg) {
+        return cfg.cacheContenidoMaxMb > 0 ? new ContenidoCache(cfg) : null;
+    }
+
+    /**
+     * Contenido guardado del archivo si coincide con mtime y tamaño. Cuenta el acceso para la admisión.
+     * @return búfer en posición 0, o null. En almacén heap es un duplicado con acceso al arreglo
+     *         compartido (ver arreglo()): no modificarlo. En almacén directo es de solo lectura.
+     */
+    synchronized ByteBuffer get(String clave, long mtime, long tamano) {
+        if (tamano > archivoMax) return null; // nunca se guarda: no cuenta
+        frecuencias.incrementar(clave);
+        Entrada e = ventana.get(clave);
+        if (e == null) e = principal.get(clave);
+        if (e != null && (e.mtime != mtime || e.datos.capacity() != tamano)) {
+            quitar(clave);
+            e = null;
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        bytesAhorrados.add(tamano);
+        return directo ? e.datos.asReadOnlyBuffer() : e.datos.duplicate();
+    }
+
+    /** byte[] de un búfer devuelto por get: el mismo arreglo si está en heap (no modificarlo), o una copia. */
+    static byte[] arreglo(ByteBuffer b) {
+        if (b.hasArray() && b.arrayOffset() == 0 && b.array().length == b.remaining()) return b.array();
+        byte[] copia = new byte[b.remaining()];
+        b.duplicate().get(copia);
+        return copia;
+    }
+
+    /**
+     * true si vale la pena preparar un archivo de este tamaño para put(): cabe en la ventana, o ganaría
+     * ya la competencia contra la región principal. Se consulta antes de copiarlo (fuera del lock).
+     */
+    synchronized boolean admitiria(String clave, long tamano) {
+        if (tamano > archivoMax) {
+            rechazados.increment();
+            return false;
+        }
+        if (tamano <= ventanaMax) return true;
+        if (victimas(clave, tamano) == null) {
+            rechazados.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Búfer para put() con el contenido (posición a límite): el mismo si es propio (byte[] completo
+     * en heap que nadie modificará) y el almacén es heap; si no, una copia en el almacén configurado.
+     */
+    ByteBuffer almacenable(ByteBuffer contenido, boolean propio) {
+        if (propio && !directo && contenido.hasArray() && contenido.arrayOffset() == 0
+                && contenido.position() == 0 && contenido.limit() == contenido.capacity()) {
+            return contenido;
+        }
+        ByteBuffer copia = directo ? ByteBuffer.allocateDirect(contenido.remaining()) : ByteBuffer.allocate(contenido.remaining());
+        copia.put(contenido.duplicate());
+        copia.flip();
+        return copia;
+    }
+
+    /**
+     * Guarda el contenido leído del archivo (búfer de almacenable(), que ya no se modifica).
+     */
+    synchronized void put(String clave, long mtime, ByteBuffer datos) {
+        long tamano = datos.capacity();
+        if (tamano > archivoMax) return;
+        quitar(clave);
+        Entrada nueva = new Entrada(mtime, datos);
+        if (tamano > ventanaMax) {
+            if (!admitir(clave, nueva)) rechazados.increment();
+            return;
+        }
+        ventana.put(clave, nueva);
+        bytesVentana += tamano;
+        Iterator<Map.Entry<String, Entrada>> it = ventana.entrySet().iterator();
+        while (bytesVentana > ventanaMax && it.hasNext()) {
+            Map.Entry<String, Entrada> candidato = it.next();
+            it.remove();
+            bytesVentana -= candidato.getValue().datos.capacity();
+            if (!admitir(candidato.getKey(), candidato.getValue())) desalojados.increment();
+        }
+    }
+
+    /** El candidato entra a la región principal si hay lugar o si le gana a las víctimas necesarias. */
+    private boolean admitir(String clave, Entrada e) {
+        List<String> victimas = victimas(clave, e.datos.capacity());
+        if (victimas == null) return false;
+        for (String v : victimas) {
+            bytesPrincipal -= principal.remove(v).datos.capacity();
+            desalojados.increment();
+        }
+        principal.put(clave, e);
+        bytesPrincipal += e.datos.capacity();
+        return true;
+    }
+
+    /**
+     * Entradas LRU de la región principal que habría que sacar para que quepan {@code tamano} bytes,
+     * o null si el candidato no se ha pedido más veces que cada una de ellas.
+     */
+    private List<String> victimas(String clave, long tamano) {
+        long libre = maxBytes - ventanaMax - bytesPrincipal;
+        List<String> victimas = new ArrayList<>();
+        if (libre >= tamano) return victimas;
+        int frecuencia = frecuencias.estimar(clave);
+        for (Map.Entry<String, Entrada> v : principal.entrySet()) {
+            if (frecuencias.estimar(v.getKey()) >= frecuencia) return null;
+            victimas.add(v.getKey());
+            libre += v.getValue().datos.capacity();
+            if (libre >= tamano) return victimas;
+        }
+        return null;
+    }
+
+    private void quitar(String clave) {
+        Entrada e = ventana.remove(clave);
+        if (e != null) bytesVentana -= e.datos.capacity();
+        e = principal.remove(clave);
+        if (e != null) bytesPrincipal -= e.datos.capacity();
+    }
+
+    // ===================== métricas =====================
+
+    long getHits() { return hits.sum(); }
+
+    long getMisses() { return misses.sum(); }
+
+    long getBytesAhorrados() { return bytesAhorrados.sum(); }
+
+    @Override
+    public synchronized String toString() {
+        long h = getHits(), m = getMisses();
+        return "ContenidoCache[archivos=" + (ventana.size() + principal.size())
+                + ", MB=" + (bytesVentana + bytesPrincipal) / (1024 * 1024)
+                + ", hits=" + h + ", misses=" + m
+                + ", aciertos=" + (h + m == 0 ? 0 : h * 100 / (h + m)) + "%"
+                + ", MB ahorrados=" + getBytesAhorrados() / (1024 * 1024)
+                + ", rechazados=" + rechazados.sum() + ", desalojados=" + desalojados.sum() + "]";
+    }
+
+    private static final class Entrada {
+        final long mtime;
+        /** Contenido completo (0..capacity); nunca se modifica. */
+        final ByteBuffer datos;
+
+        Entrada(long mtime, ByteBuffer datos) {
+            this.mtime = mtime;
+            this.datos = datos;
+        }
+    }
+
+    /**
+     * Count-min sketch de 4 filas con contadores de 4 bits (saturan en 15). Tras 10 accesos por
+     * contador todos se reducen a la mitad, para que lo que dejó de pedirse pierda peso.
+     * Solo se usa con el monitor de ContenidoCache tomado.
+     */
+    private static final class Frecuencias {
+        private static final int[] SEMILLAS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] filas;
+        private final int mascara;
+        private final int muestrasMax;
+        private int muestras;
+
+        Frecuencias(int contadores) {
+            int n = Integer.highestOneBit(contadores - 1) << 1;
+            this.filas = new byte[SEMILLAS.length][n];
+            this.mascara = n - 1;
+            this.muestrasMax = 10 * n;
+        }
+
+        void incrementar(String clave) {
+            int h = clave.hashCode();
+            for (int i = 0; i < filas.length; i++) {
+                int j = indice(h, i);
+                if (filas[i][j] < 15) filas[i][j]++;
+            }
+            if (++muestras >= muestrasMax) {
+                for (byte[] fila : filas) {
+                    for (int j = 0; j < fila.length; j++) fila[j] >>= 1;
+                }
+                muestras /= 2;
+            }
+        }
+
+        int estimar(String clave) {
+            int h = clave.hashCode();
+            int min = 15;
+            for (int i = 0; i < filas.length; i++) min = Math.min(min, filas[i][indice(h, i)]);
+            return min;
+        }
+
+        private int indice(int h, int i) {
+            int x = h * SEMILLAS[i];
+            return (x ^ x >>> 16) & mascara;
+        }
+    }
+}
@@ -1,32 +1,56 @@
 package com.digipro.emulator.adapter;
 
+import com.digipro.emulator.config.AppConfig;
 import com.digipro.emulator.database.DatabaseManager;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Adaptador de acceso al repositorio de archivos en disco.
  * Lee la ruta base desde database.properties (clave: files.base.path).
+ *
+ * Dos formas de leer, ambas con una sola apertura (sin exists/isRegularFile previos):
+ * - readFile: byte[] en heap, para JAXB.
+ * - abrir: contenido sin copia al heap. Desde files.mmap.umbral.kb (0 = nunca; tampoco si la base
+ *   está en un sistema de archivos de red) el archivo se mapea en memoria; los menores se leen a un
+ *   búfer directo de un pool de files.buffers.pool. Para quien escribe el contenido por partes
+ *   (respuesta RAW, con Contenido.leer).
+ *
+ * Con cache.contenido.max.mb > 0 ambas pasan antes por ContenidoCache: un stat (mtime y tamaño)
+ * y, si el archivo ya está en memoria, no se abre.
  */
 public class FileSystemAdapter {
 
+    /** Tramo de lectura a heap: NIO lee a través de un búfer directo temporal por hilo de este tamaño. */
+    private static final int TRAMO = 64 * 1024;
+
+    private static final Buferes BUFERES = new Buferes(DatabaseManager.getInstance().getConfig());
+
+    /** null = sin caché de contenido. */
+    private static final ContenidoCache CACHE = ContenidoCache.crear(DatabaseManager.getInstance().getConfig());
+
     private final DatabaseManager db;
 
     public FileSystemAdapter() {
         this.db = DatabaseManager.getInstance();
     }
 
-    /** Obtiene la ruta base del repositorio desde  properties. */
+    /** Obtiene la ruta base del repositorio (ya normalizada con '/') desde el snapshot de configuración. */
     private String basePath() {
-        String bp = db.getProperty("files.base.path");
-        if (bp == null || bp.trim().isEmpty()) {
-            // fallback seguro
-            bp = "C:/ImagenesSOAP";
-        }
-        return bp.trim();
+        return db.getConfig().filesBasePath;
     }
 
     /**
@@ -40,24 +64,85 @@ public class FileSystemAdapter {
         // Normaliza separadores
         String norm = relative.replace("\\", "/");
         // Evita doble separador
-        String bp = basePath().replace("\\", "/");
+        String bp = basePath();
         if (norm.startsWith("/")) norm = norm.substring(1);
         return Paths.get(bp, norm).normalize();
     }
 
     /**
      * Lee el archivo indicado por la ruta relativa guardada en BD.
+     * Con caché de contenido el arreglo puede ser compartido: no modificarlo.
      * @param relativePath ejemplo: "Estados/02202501456.pdf"
      * @return contenido en bytes o null si no existe o no se puede leer
      */
     public byte[] readFile(String relativePath) {
+        Path p = resolveAbsolutePath(relativePath);
         try {
-            Path p = resolveAbsolutePath(relativePath);
-            if (!Files.exists(p) || !Files.isRegularFile(p)) {
-                System.err.println("[FileSystemAdapter] No existe: " + p);
-                return null;
+            BasicFileAttributes a = CACHE != null ? atributosParaCache(p) : null;
+            if (a != null) {
+                ByteBuffer enCache = CACHE.get(p.toString(), a.lastModifiedTime().toMillis(), a.size());
+                if (enCache != null) return ContenidoCache.arreglo(enCache);
+            }
+            byte[] datos;
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                datos = new byte[tamano(ch)];
+                ByteBuffer buf = ByteBuffer.wrap(datos);
+                leer(ch, buf);
+                if (buf.hasRemaining()) datos = Arrays.copyOf(datos, buf.position()); // se acortó al leer
+            }
+            guardarEnCache(p, a, ByteBuffer.wrap(datos), true);
+            return datos;
+        } catch (NoSuchFileException e) {
+            System.err.println("[FileSystemAdapter] No existe: " + p);
+            return null;
+        } catch (IOException e) {
+            System.err.println("[FileSystemAdapter] Error leyendo archivo: " + relativePath + " -> " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Abre el archivo indicado por la ruta relativa guardada en BD como ByteBuffer (de la caché de
+     * contenido si está ahí). Cerrar el resultado devuelve el búfer al pool: no usar el ByteBuffer después.
+     *
+     * Un archivo mapeado no se libera al cerrar sino cuando el GC recoge el búfer, y no debe
+     * truncarse mientras está mapeado (los documentos del repositorio no se reescriben).
+     *
+     * @return contenido abierto, o null si no existe o no se puede leer
+     */
+    public Contenido abrir(String relativePath) {
+        Path p = resolveAbsolutePath(relativePath);
+        try {
+            BasicFileAttributes a = CACHE != null ? atributosParaCache(p) : null;
+            if (a != null) {
+                ByteBuffer enCache = CACHE.get(p.toString(), a.lastModifiedTime().toMillis(), a.size());
+                if (enCache != null) return new Contenido(enCache, Origen.CACHE, null);
             }
-            return Files.readAllBytes(p);
+            Contenido c;
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                int tamano = tamano(ch);
+                if (BUFERES.mapear && tamano >= BUFERES.umbral) {
+                    // Lo que va a la caché se lee con el canal, nunca copiando el mapeo (ver Contenido)
+                    if (a != null && CACHE.admitiria(p.toString(), tamano)) {
+                        return new Contenido(leerParaCache(p, a, ch, tamano), Origen.CACHE, null);
+                    }
+                    return new Contenido(ch.map(FileChannel.MapMode.READ_ONLY, 0, tamano), Origen.MAPEADO, p);
+                }
+                ByteBuffer buf = BUFERES.tomar(tamano);
+                try {
+                    leer(ch, buf);
+                } catch (IOException e) {
+                    BUFERES.devolver(buf);
+                    throw e;
+                }
+                buf.flip();
+                c = new Contenido(buf, Origen.POOL, null);
+            }
+            guardarEnCache(p, a, c.datos, false);
+            return c;
+        } catch (NoSuchFileException e) {
+            System.err.println("[FileSystemAdapter] No existe: " + p);
+            return null;
         } catch (IOException e) {
             System.err.println("[FileSystemAdapter] Error leyendo archivo: " + relativePath + " -> " + e.getMessage());
             return null;
@@ -70,9 +155,196 @@ public class FileSystemAdapter {
     public boolean exists(String relativePath) {
         try {
             Path p = resolveAbsolutePath(relativePath);
-            return Files.exists(p) && Files.isRegularFile(p);
+            return Files.isRegularFile(p);
         } catch (Exception e) {
             return false;
         }
     }
+
+    /** Métricas de la caché de contenido, o null si está deshabilitada. */
+    public static String estadisticasCache() {
+        return CACHE != null ? CACHE.toString() : null;
+    }
+
+    /** mtime y tamaño para validar la caché (un stat; solo se llama con caché habilitada). */
+    private static BasicFileAttributes atributosParaCache(Path p) throws IOException {
+        BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+        if (!a.isRegularFile()) throw new IOException("No es un archivo regular");
+        return a;
+    }
+
+    /** Ofrece a la caché lo recién leído (a = atributos tomados antes de leer). */
+    private static void guardarEnCache(Path p, BasicFileAttributes a, ByteBuffer contenido, boolean propio) {
+        if (a == null || !CACHE.admitiria(p.toString(), contenido.remaining())) return;
+        CACHE.put(p.toString(), a.lastModifiedTime().toMillis(), CACHE.almacenable(contenido, propio));
+    }
+
+    /** Lee el archivo completo con el canal, lo guarda en la caché y devuelve el búfer guardado. */
+    private static ByteBuffer leerParaCache(Path p, BasicFileAttributes a, FileChannel ch, int tamano) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(tamano);
+        leer(ch, buf);
+        if (buf.hasRemaining()) throw new IOException("El archivo se acortó mientras se leía: " + p);
+        buf.flip();
+        ByteBuffer guardado = CACHE.almacenable(buf, true);
+        CACHE.put(p.toString(), a.lastModifiedTime().toMillis(), guardado);
+        return guardado.duplicate();
+    }
+
+    private static int tamano(FileChannel ch) throws IOException {
+        long n = ch.size();
+        if (n > Integer.MAX_VALUE - 8) throw new IOException("Archivo demasiado grande: " + n + " bytes");
+        return (int) n;
+    }
+
+    /** Lee hasta llenar buf (hasta su limit) o hasta fin de archivo. */
+    private static void leer(FileChannel ch, ByteBuffer buf) throws IOException {
+        int fin = buf.limit();
+        while (buf.position() < fin) {
+            // En heap por tramos: si no, NIO retiene por hilo un búfer directo del tamaño del archivo más grande
+            if (!buf.isDirect()) buf.limit(Math.min(fin, buf.position() + TRAMO));
+            if (ch.read(buf) < 0) break;
+        }
+        buf.limit(fin);
+    }
+
+    /** De dónde salió el ByteBuffer de un {@link Contenido} (CACHE: copia en la caché de contenido). */
+    public enum Origen { MAPEADO, POOL, CACHE }
+
+    /**
+     * Archivo abierto con {@link #abrir(String)}. Un solo hilo a la vez.
+     *
+     * Leer un archivo mapeado cuyo medio falla (p. ej. un archivo truncado) no da IOException sino
+     * InternalError al tocar la página. {@link #leer} lo atrapa y sigue con lecturas normales del
+     * archivo desde el mismo punto, pero solo si la JVM lo lanza ahí: en código ya compilado por el
+     * JIT lo entrega más tarde, en otro punto del hilo. Por eso no se mapea un files.base.path en un
+     * sistema de archivos de red, y la copia para la caché no se hace desde el mapeo.
+     * {@link #buffer()} no tiene esa protección.
+     */
+    public static final class Contenido implements AutoCloseable {
+        private final ByteBuffer datos;
+        private final Origen origen;
+        /** Solo MAPEADO: para releer sin el mapeo si falla. */
+        private final Path ruta;
+        private FileChannel respaldo;
+        private int leidos;
+        private boolean cerrado;
+
+        private Contenido(ByteBuffer datos, Origen origen, Path ruta) {
+            this.datos = datos;
+            this.origen = origen;
+            this.ruta = ruta;
+        }
+
+        /** Vista de solo lectura del contenido completo (posición 0); cada llamada da una vista nueva. */
+        public ByteBuffer buffer() {
+            if (cerrado) throw new IllegalStateException("Contenido ya cerrado");
+            return datos.asReadOnlyBuffer();
+        }
+
+        /**
+         * Copia los siguientes bytes del contenido (lectura secuencial, independiente de buffer()).
+         * @return bytes copiados (len salvo al final), o -1 si ya se leyó todo
+         */
+        public int leer(byte[] destino, int desde, int len) throws IOException {
+            if (cerrado) throw new IllegalStateException("Contenido ya cerrado");
+            int n = Math.min(len, datos.limit() - leidos);
+            if (n <= 0) return -1;
+            if (respaldo == null) {
+                try {
+                    ByteBuffer vista = datos.duplicate();
+                    vista.position(leidos);
+                    vista.get(destino, desde, n);
+                    leidos += n;
+                    return n;
+                } catch (InternalError e) {
+                    if (origen != Origen.MAPEADO) throw e;
+                    System.err.println("[FileSystemAdapter] Fallo de E/S en archivo mapeado " + ruta
+                            + " (byte " + leidos + "): " + e.getMessage() + "; se continúa sin mapeo");
+                    respaldo = FileChannel.open(ruta, StandardOpenOption.READ);
+                }
+            }
+            ByteBuffer b = ByteBuffer.wrap(destino, desde, n);
+            while (b.hasRemaining()) {
+                if (respaldo.read(b, leidos + b.position() - desde) < 0) {
+                    throw new IOException("El archivo se acortó mientras se leía: " + ruta);
+                }
+            }
+            leidos += n;
+            return n;
+        }
+
+        public int tamano() {
+            return datos.limit();
+        }
+
+        public Origen origen() {
+            return origen;
+        }
+
+        @Override
+        public void close() {
+            if (cerrado) return;
+            cerrado = true;
+            if (origen == Origen.POOL) BUFERES.devolver(datos);
+            if (respaldo != null) {
+                try {
+                    respaldo.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Búferes directos de files.mmap.umbral.kb para los archivos chicos, hasta files.buffers.pool;
+     * con el pool agotado (o umbral 0: sin mapeo ni pool) se usa un búfer en heap del tamaño del archivo.
+     */
+    private static final class Buferes {
+        /** Tipos de FileStore de red: ahí no se mapea (un corte da InternalError, ver Contenido). */
+        private static final Set<String> RED = new HashSet<>(Arrays.asList(
+                "nfs", "nfs4", "cifs", "smb", "smb2", "smb3", "smbfs", "afs", "9p", "fuse.sshfs", "davfs"));
+
+        final int umbral;
+        final int maximo;
+        /** Archivos desde umbral se mapean; false con umbral 0 o con la base en red. */
+        final boolean mapear;
+        final ConcurrentLinkedQueue<ByteBuffer> libres = new ConcurrentLinkedQueue<>();
+        final AtomicInteger creados = new AtomicInteger();
+
+        Buferes(AppConfig cfg) {
+            this.umbral = cfg.filesMmapUmbralBytes;
+            this.maximo = cfg.filesBuffersPool;
+            this.mapear = umbral > 0 && esLocal(cfg.filesBasePath);
+        }
+
+        private static boolean esLocal(String base) {
+            try {
+                String tipo = Files.getFileStore(Paths.get(base)).type().toLowerCase();
+                if (!RED.contains(tipo)) return true;
+                System.out.println("[FileSystemAdapter] " + base + " está en " + tipo + " (red): sin mapeo en memoria");
+            } catch (IOException | RuntimeException e) {
+                System.out.println("[FileSystemAdapter] No se pudo determinar el sistema de archivos de " + base
+                        + " (" + e.getMessage() + "): sin mapeo en memoria");
+            }
+            return false;
+        }
+
+        ByteBuffer tomar(int tamano) {
+            if (tamano > umbral) return ByteBuffer.allocate(tamano);
+            ByteBuffer b = libres.poll();
+            if (b == null) {
+                int n = creados.get();
+                b = n < maximo && creados.compareAndSet(n, n + 1)
+                        ? ByteBuffer.allocateDirect(umbral)
+                        : ByteBuffer.allocate(tamano);
+            }
+            b.clear();
+            b.limit(tamano);
+            return b;
+        }
+
+        void devolver(ByteBuffer b) {
+            if (b.isDirect()) libres.offer(b);
+        }
+    }
 }
@@ -0,0 +1,370 @@
+package com.digipro.emulator.config;
+
+import java.util.Properties;
+
+/**
+ * Vista tipada e inmutable de database.properties.
+ *
+ * Se construye y valida una sola vez por carga (arranque o recarga en caliente) y
+ * DatabaseManager la publica completa en un campo volatile. Los caminos calientes leen
+ * campos ya parseados en lugar de llamar a getProperty + parse en cada petición.
+ *
+ * Los valores en blanco se tratan como ausentes. Un valor presente pero inválido
+ * hace fallar la carga (en una recarga se conserva la configuración anterior).
+ */
+public final class AppConfig {
+
+    // ===== Archivos =====
+    /** files.base.path, con separadores normalizados a '/'. */
+    public final String filesBasePath;
+    // Lectura a ByteBuffer (FileSystemAdapter.abrir); solo se leen al arrancar
+    public final int filesMmapUmbralBytes;
+    public final int filesBuffersPool;
+
+    // ===== Tickets =====
+    public final int ticketLongitudBytes;
+    public final int ticketTiempoVidaMinutos;
+
+    // Generación de TicketID (GeneradorTokens); solo se leen al arrancar
+    public final String ticketGenerador;
+    public final String ticketGeneradorAlgoritmo;
+
+    // Tickets firmados (TicketFirmado). Claves decodificadas de Base64: no modificar los arreglos.
+    public final boolean ticketFirmado;
+    public final byte[] ticketFirmaClave;
+    public final byte[] ticketFirmaClaveAnterior;
+    /** En modo firmado, acepta también tickets aleatorios validándolos contra BD (transición). */
+    public final boolean ticketFirmaAceptarAleatorios;
+
+    // Expiración deslizante (TicketAccesos); el intervalo de flush solo se lee al arrancar
+    public final boolean ticketExpiracionDeslizante;
+    public final int ticketDeslizanteFlushMs;
+    public final int ticketDeslizanteMaxHoras;
+
+    // Escritura diferida de tickets (TicketWriteBehind); solo se leen al arrancar
+    public final boolean ticketsWriteBehind;
+    public final int ticketsWriteBehindCola;
+    public final int ticketsWriteBehindLote;
+    public final int ticketsWriteBehindIntervaloMs;
+
+    // Depuración de tickets expirados (TicketSweeper); el intervalo solo se lee al arrancar
+    public final boolean ticketsPurgaHabilitada;
+    public final int ticketsPurgaIntervaloSeg;
+    public final int ticketsPurgaRetencionHoras;
+    public final boolean ticketsPurgaArchivar;
+    public final int ticketsPurgaLote;
+    public final int ticketsPurgaLotesMax;
+    public final int ticketsPurgaPresupuestoSeg;
+
+    // Valores QA: null = no configurado (cada llamador aplica su default histórico)
+    public final Integer qaVersionAplicacionId;
+    public final Integer qaTiempoVida;
+    public final Integer qaTiempoVidaPwd;
+    public final Integer qaTiempoActualizoPwd;
+    public final boolean qaForceSample;
+    public final String qaSampleTicketBase64;
+    public final String qaSampleUsr;
+    public final String qaSampleIp;
+    public final Integer qaSampleProyecto;
+
+    // ===== Respuestas SOAP crudas =====
+    public final boolean rawIncludeIp;
+    public final boolean rawIncludeNombreCompleto;
+    public final boolean rawIncludeNombreUsuario;
+    public final boolean forceRawLogin;
+    public final boolean forceRawLoginCredenciales;
+    public final boolean forceRawContesta;
+
+    // ===== Log de accesos asíncrono (LogAccesosWriteBehind); solo se leen al arrancar =====
+    public final boolean logAccesosAsincrono;
+    public final int logAccesosCola;
+    public final int logAccesosLote;
+    public final int logAccesosIntervaloMs;
+    public final boolean logAccesosBloquear;
+    public final int logAccesosBloqueoMaxMs;
+    /** Directorio del diario en disco (DiarioAccesos); null = sin diario. */
+    public final String logAccesosDiarioDir;
+    public final int logAccesosDiarioSegmentoMb;
+    public final int logAccesosDiarioMaxMb;
+    public final int logAccesosDiarioReproduccionSeg;
+    // Resumen por minuto (ResumenAccesos); el intervalo solo se lee al arrancar
+    public final boolean logAccesosResumen;
+    public final int logAccesosResumenIntervaloSeg;
+    public final int logAccesosMuestreoExitososPct;
+    // Particiones de log_accesos (LogAccesosParticiones); intervalo y meses solo se leen al arrancar
+    public final int logAccesosParticionMeses;
+    public final int logAccesosParticionesAdelante;
+    public final int logAccesosParticionesIntervaloSeg;
+    /** Meses completos de log_accesos que se conservan; 0 = no se retira nada. */
+    public final int logAccesosRetencionMeses;
+    public final boolean logAccesosRetencionArchivar;
+
+    // ===== Límite de intentos de login (LimitadorLogin); franjas solo al arrancar =====
+    public final int loginLimiteUsuarioPorMin;
+    public final int loginLimiteUsuarioRafaga;
+    public final int loginLimiteIpPorMin;
+    public final int loginLimiteIpRafaga;
+    public final int loginLimiteFranjas;
+
+    // ===== Orquestador =====
+    /** routing.fecha.corte normalizado a MMYYYY entero (mes*10000 + año). */
+    public final int routingCorteMMYYYY;
+    public final boolean routingFallbackHabilitado;
+    public final int routingTimeoutMs;
+    public final String estadosCuentaSimuladoPdf;
+
+    // ===== Base de datos (solo al arrancar) =====
+    /** Aplica db/migration/V*.sql en segundo plano al arrancar (SchemaMigrator). */
+    public final boolean dbMigracionesHabilitadas;
+    // Réplicas de lectura (ReplicaRouter)
+    public final int dbReplicaLagMaxMs;
+    public final int dbReplicaChequeoMs;
+    /** Espera al prestar del pool de cada réplica; 0 = no esperar (se pasa a otra o al primario). */
+    public final int dbReplicaPoolTimeoutMs;
+
+    // ===== Cachés =====
+    public final int cacheDocumentosMax;
+    public final int cacheDocumentosTtlSeg;
+    public final int cacheTicketsMax;
+    public final int cacheTicketsRevalidacionSeg;
+    public final int cacheTicketsNegativoMs;
+    public final int cacheUsuariosMax;
+    public final int cacheUsuariosRefrescoSeg;
+    // Contenido de archivos (ContenidoCache); solo se leen al arrancar
+    public final int cacheContenidoMaxMb;
+    public final int cacheContenidoArchivoMaxMb;
+    public final boolean cacheContenidoDirecto;
+
+    // ===== Consultas =====
+    /** Documentos por página (keyset) al recorrer expedientes. */
+    public final int documentosPaginaTamano;
+
+    private AppConfig(Properties p) {
+        String bp = str(p, "files.base.path", "C:/ImagenesSOAP");
+        this.filesBasePath = bp.replace("\\", "/");
+        int umbralKb = nonNegative(p, "files.mmap.umbral.kb", 0);
+        if (umbralKb > 1024 * 1024) throw invalido("files.mmap.umbral.kb", String.valueOf(umbralKb));
+        this.filesMmapUmbralBytes = umbralKb * 1024;
+        this.filesBuffersPool = nonNegative(p, "files.buffers.pool", 32);
+
+        this.ticketLongitudBytes = positive(p, "ticket.longitud.bytes", 20);
+        this.ticketTiempoVidaMinutos = positive(p, "ticket.tiempo.vida.minutos", 240);
+
+        this.ticketGenerador = str(p, "ticket.generador", "porhilo").toLowerCase();
+        if (!ticketGenerador.equals("porhilo") && !ticketGenerador.equals("rayado") && !ticketGenerador.equals("compartido")) {
+            throw invalido("ticket.generador", ticketGenerador);
+        }
+        this.ticketGeneradorAlgoritmo = str(p, "ticket.generador.algoritmo", "DRBG");
+
+        this.ticketFirmado = bool(p, "ticket.firmado", false);
+        this.ticketFirmaClave = clave(p, "ticket.firma.clave");
+        this.ticketFirmaClaveAnterior = clave(p, "ticket.firma.clave.anterior");
+        this.ticketFirmaAceptarAleatorios = bool(p, "ticket.firma.aceptar.aleatorios", true);
+        if (ticketFirmado && ticketFirmaClave == null) {
+            throw new IllegalArgumentException("ticket.firmado=true requiere ticket.firma.clave");
+        }
+
+        this.ticketExpiracionDeslizante = bool(p, "ticket.expiracion.deslizante", false);
+        this.ticketDeslizanteFlushMs = positive(p, "ticket.deslizante.flush.ms", 5000);
+        this.ticketDeslizanteMaxHoras = positive(p, "ticket.deslizante.max.horas", 12);
+
+        this.ticketsWriteBehind = bool(p, "tickets.writebehind.habilitado", false);
+        this.ticketsWriteBehindCola = positive(p, "tickets.writebehind.cola", 10000);
+        this.ticketsWriteBehindLote = positive(p, "tickets.writebehind.lote", 500);
+        this.ticketsWriteBehindIntervaloMs = positive(p, "tickets.writebehind.intervalo.ms", 200);
+
+        this.ticketsPurgaHabilitada = bool(p, "tickets.purga.habilitada", false);
+        this.ticketsPurgaIntervaloSeg = positive(p, "tickets.purga.intervalo.s", 300);
+        this.ticketsPurgaRetencionHoras = nonNegative(p, "tickets.purga.retencion.h", 24);
+        this.ticketsPurgaArchivar = bool(p, "tickets.purga.archivar", false);
+        this.ticketsPurgaLote = positive(p, "tickets.purga.lote", 5000);
+        this.ticketsPurgaLotesMax = positive(p, "tickets.purga.lotes.max", 100);
+        this.ticketsPurgaPresupuestoSeg = positive(p, "tickets.purga.presupuesto.s", 30);
+
+        this.qaVersionAplicacionId = optInt(p, "ticket.qa.version.aplicacion.id");
+        this.qaTiempoVida = optInt(p, "ticket.qa.tiempo.vida");
+        this.qaTiempoVidaPwd = optInt(p, "ticket.qa.tiempo.vida.pwd");
+        this.qaTiempoActualizoPwd = optInt(p, "ticket.qa.tiempo.actualizo.pwd");
+        this.qaForceSample = bool(p, "ticket.qa.force.sample", false);
+        this.qaSampleTicketBase64 = str(p, "ticket.qa.sample.ticket.base64", null);
+        this.qaSampleUsr = str(p, "ticket.qa.sample.usr", null);
+        this.qaSampleIp = str(p, "ticket.qa.sample.ip", null);
+        this.qaSampleProyecto = optInt(p, "ticket.qa.sample.proyecto");
+
+        this.rawIncludeIp = bool(p, "ws.qa.raw.include.ip", false);
+        this.rawIncludeNombreCompleto = bool(p, "ws.qa.raw.include.nombrecompleto", false);
+        this.rawIncludeNombreUsuario = bool(p, "ws.qa.raw.include.nombreusuario", false);
+        this.forceRawLogin = bool(p, "ws.qa.force.raw", false);
+        this.forceRawLoginCredenciales = bool(p, "ws.qa.force.raw.login.credenciales", true);
+        this.forceRawContesta = bool(p, "ws.qa.force.raw.contesta", true);
+
+        this.logAccesosAsincrono = bool(p, "log.accesos.asincrono", false);
+        this.logAccesosCola = positive(p, "log.accesos.cola", 10000);
+        this.logAccesosLote = positive(p, "log.accesos.lote", 500);
+        this.logAccesosIntervaloMs = positive(p, "log.accesos.intervalo.ms", 500);
+        String politica = str(p, "log.accesos.politica", "descartar").toLowerCase();
+        if (!politica.equals("descartar") && !politica.equals("bloquear")) throw invalido("log.accesos.politica", politica);
+        this.logAccesosBloquear = politica.equals("bloquear");
+        this.logAccesosBloqueoMaxMs = nonNegative(p, "log.accesos.bloqueo.max.ms", 1000);
+        this.logAccesosDiarioDir = str(p, "log.accesos.diario.dir", null);
+        this.logAccesosDiarioSegmentoMb = positive(p, "log.accesos.diario.segmento.mb", 16);
+        this.logAccesosDiarioMaxMb = positive(p, "log.accesos.diario.max.mb", 1024);
+        this.logAccesosDiarioReproduccionSeg = positive(p, "log.accesos.diario.reproduccion.s", 10);
+        this.logAccesosResumen = bool(p, "log.accesos.resumen.habilitado", false);
+        this.logAccesosResumenIntervaloSeg = positive(p, "log.accesos.resumen.intervalo.s", 60);
+        this.logAccesosMuestreoExitososPct = nonNegative(p, "log.accesos.muestreo.exitosos.pct", 100);
+        if (logAccesosMuestreoExitososPct > 100) throw invalido("log.accesos.muestreo.exitosos.pct", String.valueOf(logAccesosMuestreoExitososPct));
+        this.logAccesosParticionMeses = positive(p, "log.accesos.particion.meses", 1);
+        if (12 % logAccesosParticionMeses != 0) throw invalido("log.accesos.particion.meses", String.valueOf(logAccesosParticionMeses));
+        this.logAccesosParticionesAdelante = nonNegative(p, "log.accesos.particiones.adelante", 3);
+        this.logAccesosParticionesIntervaloSeg = positive(p, "log.accesos.particiones.intervalo.s", 3600);
+        this.logAccesosRetencionMeses = nonNegative(p, "log.accesos.retencion.meses", 0);
+        this.logAccesosRetencionArchivar = bool(p, "log.accesos.retencion.archivar", false);
+
+        this.loginLimiteUsuarioPorMin = nonNegative(p, "login.limite.usuario.por.min", 0);
+        this.loginLimiteUsuarioRafaga = rafaga(p, "login.limite.usuario.rafaga", 20);
+        this.loginLimiteIpPorMin = nonNegative(p, "login.limite.ip.por.min", 0);
+        this.loginLimiteIpRafaga = rafaga(p, "login.limite.ip.rafaga", 100);
+        this.loginLimiteFranjas = positive(p, "login.limite.franjas", 65536);
+
+        this.routingCorteMMYYYY = parseCorteToMMYYYY(str(p, "routing.fecha.corte", null), 102025);
+        this.routingFallbackHabilitado = bool(p, "routing.fallback.habilitado", true);
+        this.routingTimeoutMs = positive(p, "routing.timeout.ms", 2000);
+        this.estadosCuentaSimuladoPdf = str(p, "estadoscuenta.simulado.pdf", null);
+
+        this.dbMigracionesHabilitadas = bool(p, "db.migraciones.habilitadas", false);
+        this.dbReplicaLagMaxMs = nonNegative(p, "db.replica.lag.max.ms", 5000);
+        this.dbReplicaChequeoMs = positive(p, "db.replica.chequeo.ms", 5000);
+        this.dbReplicaPoolTimeoutMs = nonNegative(p, "db.replica.pool.timeout.ms", 0);
+
+        this.cacheDocumentosMax = nonNegative(p, "cache.documentos.max", 10000);
+        this.cacheDocumentosTtlSeg = positive(p, "cache.documentos.ttl.s", 300);
+        this.cacheTicketsMax = nonNegative(p, "cache.tickets.max", 100000);
+        this.cacheTicketsRevalidacionSeg = positive(p, "cache.tickets.revalidacion.s", 60);
+        this.cacheTicketsNegativoMs = positive(p, "cache.tickets.negativo.ms", 2000);
+        this.cacheUsuariosMax = nonNegative(p, "cache.usuarios.max", 10000);
+        this.cacheUsuariosRefrescoSeg = positive(p, "cache.usuarios.refresco.s", 30);
+        this.cacheContenidoMaxMb = nonNegative(p, "cache.contenido.max.mb", 0);
+        this.cacheContenidoArchivoMaxMb = positive(p, "cache.contenido.archivo.max.mb", 16);
+        String almacen = str(p, "cache.contenido.almacen", "heap").toLowerCase();
+        if (!almacen.equals("heap") && !almacen.equals("directo")) throw invalido("cache.contenido.almacen", almacen);
+        this.cacheContenidoDirecto = almacen.equals("directo");
+
+        this.documentosPaginaTamano = positive(p, "documentos.pagina.tamano", 50);
+    }
+
+    /**
+     * Construye y valida un snapshot.
+     * @throws IllegalArgumentException si algún valor presente no es válido
+     */
+    public static AppConfig from(Properties p) {
+        return new AppConfig(p);
+    }
+
+    /** Devuelve v o el default si v es null. */
+    public static int or(Integer v, int def) {
+        return v != null ? v : def;
+    }
+
+    /** Devuelve v o el default si v es null. */
+    public static String or(String v, String def) {
+        return v != null ? v : def;
+    }
+
+    // ===================== parseo =====================
+
+    private static String str(Properties p, String key, String def) {
+        String v = p.getProperty(key);
+        return (v == null || v.trim().isEmpty()) ? def : v.trim();
+    }
+
+    private static Integer optInt(Properties p, String key) {
+        String v = str(p, key, null);
+        if (v == null) return null;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw invalido(key, v);
+        }
+    }
+
+    private static int positive(Properties p, String key, int def) {
+        Integer v = optInt(p, key);
+        if (v == null) return def;
+        if (v <= 0) throw invalido(key, String.valueOf(v));
+        return v;
+    }
+
+    private static int nonNegative(Properties p, String key, int def) {
+        Integer v = optInt(p, key);
+        if (v == null) return def;
+        if (v < 0) throw invalido(key, String.valueOf(v));
+        return v;
+    }
+
+    /** Ráfaga de un token bucket de LimitadorLogin: 1..16000 fichas. */
+    private static int rafaga(Properties p, String key, int def) {
+        int v = positive(p, key, def);
+        if (v > 16000) throw invalido(key, String.valueOf(v));
+        return v;
+    }
+
+    private static boolean bool(Properties p, String key, boolean def) {
+        String v = str(p, key, null);
+        if (v == null) return def;
+        if ("true".equalsIgnoreCase(v)) return true;
+        if ("false".equalsIgnoreCase(v)) return false;
+        throw invalido(key, v);
+    }
+
+    /** Clave HMAC en Base64, de al menos 16 bytes; null si no está configurada. */
+    private static byte[] clave(Properties p, String key) {
+        String v = str(p, key, null);
+        if (v == null) return null;
+        byte[] k;
+        try {
+            k = java.util.Base64.getDecoder().decode(v);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Valor inválido para '" + key + "': no es Base64");
+        }
+        if (k.length < 16) {
+            throw new IllegalArgumentException("Valor inválido para '" + key + "': mínimo 16 bytes");
+        }
+        return k;
+    }
+
+    private static IllegalArgumentException invalido(String key, String v) {
+        return new IllegalArgumentException("Valor inválido para '" + key + "': " + v);
+    }
+
+    /**
+     * Normaliza el corte de routing.fecha.corte a entero MMYYYY.
+     * Acepta:
+     *   - "MMYYYY" (p.ej. 102025) -> 102025
+     *   - "YYYYMM" (p.ej. 202510) -> 102025
+     *   - entero "crudo" (ej. 22025 para 02/2025)
+     */
+    private static int parseCorteToMMYYYY(String v, int def) {
+        if (v == null) return def;
+        try {
+            if (v.length() == 6) {
+                // Intento como MMYYYY
+                int mm = Integer.parseInt(v.substring(0, 2));
+                int yyyy = Integer.parseInt(v.substring(2, 6));
+                if (isValidYearMonth(yyyy, mm)) return mm * 10000 + yyyy;
+
+                // Intento como YYYYMM
+                int yyyy2 = Integer.parseInt(v.substring(0, 4));
+                int mm2 = Integer.parseInt(v.substring(4, 6));
+                if (isValidYearMonth(yyyy2, mm2)) return mm2 * 10000 + yyyy2;
+            }
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw invalido("routing.fecha.corte", v);
+        }
+    }
+
+    private static boolean isValidYearMonth(int year, int month) {
+        return (year >= 1900 && year <= 2100) && (month >= 1 && month <= 12);
+    }
+}
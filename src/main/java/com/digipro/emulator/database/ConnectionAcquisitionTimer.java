@@ -0,0 +1,67 @@
+package com.digipro.emulator.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mide cuánto tarda DatabaseManager en entregar una conexión.
+ *
+ * Separa el tiempo total de adquisición (espera en el pool del contenedor o en el pool propio)
+ * del tiempo gastado en resolver el DataSource por JNDI, para distinguir una cosa de la otra.
+ */
+public final class ConnectionAcquisitionTimer {
+
+    private final LongAdder adquisiciones = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+
+    ConnectionAcquisitionTimer() {}
+
+    void registrarAdquisicion(long nanos, boolean exitosa) {
+        if (exitosa) adquisiciones.increment(); else fallos.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void registrarLookup(long nanos) {
+        lookups.increment();
+        lookupNanos.add(nanos);
+    }
+
+    public long getAdquisiciones() { return adquisiciones.sum(); }
+
+    public long getFallos() { return fallos.sum(); }
+
+    /** Promedio de adquisición en microsegundos (incluye los intentos fallidos). */
+    public double getPromedioMicros() {
+        long n = adquisiciones.sum() + fallos.sum();
+        return n == 0 ? 0.0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    public double getMaxMicros() { return maxNanos.get() / 1000.0; }
+
+    public long getLookupsJndi() { return lookups.sum(); }
+
+    /** Tiempo acumulado en lookups JNDI, en microsegundos. */
+    public double getLookupJndiMicros() { return lookupNanos.sum() / 1000.0; }
+
+    /** Reinicia los contadores (p. ej. entre ventanas de medición). */
+    public void reset() {
+        adquisiciones.reset();
+        fallos.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        lookups.reset();
+        lookupNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("adquisiciones=%d, fallos=%d, promedio=%.1fus, max=%.1fus, lookupsJndi=%d, lookupJndi=%.1fus",
+                getAdquisiciones(), getFallos(), getPromedioMicros(), getMaxMicros(), getLookupsJndi(), getLookupJndiMicros());
+    }
+}
@@ -0,0 +1,336 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de conexiones JDBC acotado para el modo directo (sin JNDI).
+ *
+ * - Tamaño mínimo/máximo de conexiones físicas.
+ * - Validación al prestar (solo si la conexión lleva más de 'validacion.intervalo' sin uso).
+ * - Expulsión de conexiones ociosas (respetando el mínimo) y vida máxima por conexión.
+ * - Espera acotada al prestar: si no hay conexión disponible en 'timeout.ms' se lanza SQLTimeoutException.
+ *
+ * Las conexiones entregadas son proxies: close() devuelve la conexión física al pool.
+ *
+ * database.properties (opcionales, prefijo db.pool.):
+ *   db.pool.min=2
+ *   db.pool.max=20
+ *   db.pool.timeout.ms=5000
+ *   db.pool.idle.timeout.ms=600000
+ *   db.pool.max.lifetime.ms=1800000
+ *   db.pool.validacion.timeout.s=2
+ *   db.pool.validacion.intervalo.ms=1000
+ *   db.pool.mantenimiento.ms=30000
+ */
+final class ConnectionPool {
+
+    private final String nombre;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int min;
+    private final int max;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final int validationTimeoutSec;
+    private final long validationIntervalMs;
+
+    /** Conexiones físicas ociosas; se presta por la cabeza (LIFO) para que las frías caduquen. */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    /** Conexiones físicas abiertas (ociosas + prestadas). */
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger prestadas = new AtomicInteger();
+
+    private volatile boolean cerrado;
+    private final ScheduledFuture<?> mantenimiento;
+
+    ConnectionPool(String nombre, String url, String user, String password, Properties props) {
+        this(nombre, url, user, password, props, longProp(props, "db.pool.timeout.ms", 5000));
+    }
+
+    /** Con una espera al prestar propia en lugar de db.pool.timeout.ms (p. ej. réplicas, ver ReplicaRouter). */
+    ConnectionPool(String nombre, String url, String user, String password, Properties props, long borrowTimeoutMs) {
+        this.nombre = nombre;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+
+        this.max = Math.max(1, intProp(props, "db.pool.max", 20));
+        this.min = Math.min(max, Math.max(0, intProp(props, "db.pool.min", 2)));
+        this.borrowTimeoutMs = Math.max(0, borrowTimeoutMs);
+        this.idleTimeoutMs = longProp(props, "db.pool.idle.timeout.ms", 600_000);
+        this.maxLifetimeMs = longProp(props, "db.pool.max.lifetime.ms", 1_800_000);
+        this.validationTimeoutSec = Math.max(1, intProp(props, "db.pool.validacion.timeout.s", 2));
+        this.validationIntervalMs = Math.max(0, longProp(props, "db.pool.validacion.intervalo.ms", 1000));
+        long mantenimientoMs = Math.max(1000, longProp(props, "db.pool.mantenimiento.ms", 30_000));
+
+        // El llenado inicial va en segundo plano para no fallar el arranque si la BD no responde
+        BackgroundTasks.submit("pool-" + nombre + "-inicio", this::mantener);
+        this.mantenimiento = BackgroundTasks.scheduleWithFixedDelay(
+                "pool-" + nombre, this::mantener, mantenimientoMs, TimeUnit.MILLISECONDS);
+
+        System.out.println("[ConnectionPool] Pool '" + nombre + "' creado para " + url
+                + " (min=" + min + ", max=" + max + ", timeout=" + borrowTimeoutMs + "ms)");
+    }
+
+    /**
+     * Presta una conexión; espera como máximo db.pool.timeout.ms si el pool está agotado.
+     * @throws SQLTimeoutException si se agotó la espera (pool lleno, no una falla de conexión)
+     */
+    Connection borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+        while (true) {
+            if (cerrado) throw new SQLException("Pool '" + nombre + "' cerrado");
+
+            PooledConnection pc = idle.pollFirst();
+            if (pc == null && reservarNueva()) {
+                pc = crearReservada();
+            }
+            if (pc == null) {
+                long restante = deadline - System.nanoTime();
+                if (restante <= 0) {
+                    throw new SQLTimeoutException("Timeout esperando conexión del pool '" + nombre
+                            + "' (" + borrowTimeoutMs + "ms, activas=" + prestadas.get() + ", max=" + max + ")");
+                }
+                try {
+                    pc = idle.pollFirst(restante, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrumpido esperando conexión del pool '" + nombre + "'", e);
+                }
+                if (pc == null) continue;
+            }
+
+            if (!esUtilizable(pc)) {
+                destruir(pc);
+                continue;
+            }
+            prestadas.incrementAndGet();
+            return pc.prestar();
+        }
+    }
+
+    /** Cierra todas las conexiones ociosas; las prestadas se cierran al devolverse. */
+    void close() {
+        cerrado = true;
+        mantenimiento.cancel(false);
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destruir(pc);
+        }
+        System.out.println("[ConnectionPool] Pool '" + nombre + "' cerrado");
+    }
+
+    int getTotal() { return total.get(); }
+
+    int getOciosas() { return idle.size(); }
+
+    int getActivas() { return prestadas.get(); }
+
+    // ===================== internos =====================
+
+    private boolean reservarNueva() {
+        while (true) {
+            int t = total.get();
+            if (t >= max) return false;
+            if (total.compareAndSet(t, t + 1)) return true;
+        }
+    }
+
+    /** Abre una conexión física para un lugar ya reservado en 'total'. */
+    private PooledConnection crearReservada() throws SQLException {
+        try {
+            Connection cn = DriverManager.getConnection(url, user, password);
+            // Pequeña variación en la vida máxima para no renovar todo el pool a la vez
+            long vida = maxLifetimeMs > 0
+                    ? maxLifetimeMs - ThreadLocalRandom.current().nextLong(Math.max(1, maxLifetimeMs / 40))
+                    : 0;
+            System.out.println("[ConnectionPool] Conexión física establecida con " + url
+                    + " (pool '" + nombre + "', total=" + total.get() + ")");
+            return new PooledConnection(cn, vida);
+        } catch (SQLException e) {
+            total.decrementAndGet();
+            throw new SQLException("Error conectando a PostgreSQL (" + url + ")", e);
+        } catch (RuntimeException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean esUtilizable(PooledConnection pc) {
+        long ahora = System.currentTimeMillis();
+        if (pc.caducada(ahora)) return false;
+        if (ahora - pc.ultimoUso < validationIntervalMs) return true;
+        try {
+            return pc.fisica.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void devolver(PooledConnection pc) {
+        prestadas.decrementAndGet();
+        pc.ultimoUso = System.currentTimeMillis();
+        if (cerrado || pc.rota || pc.caducada(pc.ultimoUso) || !restablecer(pc.fisica)) {
+            destruir(pc);
+            return;
+        }
+        idle.offerFirst(pc);
+    }
+
+    /** Deja la conexión como recién abierta (autocommit, lectura/escritura). */
+    private static boolean restablecer(Connection cn) {
+        try {
+            if (!cn.getAutoCommit()) {
+                cn.rollback();
+                cn.setAutoCommit(true);
+            }
+            if (cn.isReadOnly()) cn.setReadOnly(false);
+            cn.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destruir(PooledConnection pc) {
+        total.decrementAndGet();
+        try {
+            pc.fisica.close();
+        } catch (SQLException ignore) {
+            // la conexión ya no sirve de todos modos
+        }
+    }
+
+    /** Expulsa ociosas/caducadas y rellena hasta el mínimo. */
+    private void mantener() {
+        if (cerrado) return;
+        long ahora = System.currentTimeMillis();
+
+        List<PooledConnection> snapshot = new ArrayList<>(idle);
+        for (PooledConnection pc : snapshot) {
+            boolean ociosa = idleTimeoutMs > 0 && ahora - pc.ultimoUso > idleTimeoutMs && total.get() > min;
+            if ((ociosa || pc.caducada(ahora)) && idle.remove(pc)) {
+                destruir(pc);
+            }
+        }
+
+        while (!cerrado && total.get() < min && reservarNueva()) {
+            try {
+                PooledConnection pc = crearReservada();
+                pc.ultimoUso = System.currentTimeMillis();
+                idle.offerLast(pc);
+            } catch (SQLException e) {
+                System.err.println("[ConnectionPool] No se pudo rellenar pool '" + nombre + "': " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    private static boolean esErrorFatal(SQLException e) {
+        String state = e.getSQLState();
+        // 08xxx: errores de conexión; 57P0x: el servidor terminó la sesión
+        return state == null || state.startsWith("08") || state.startsWith("57P");
+    }
+
+    private static int intProp(Properties p, String key, int def) {
+        return (int) longProp(p, key, def);
+    }
+
+    private static long longProp(Properties p, String key, long def) {
+        try {
+            String v = p.getProperty(key);
+            if (v == null || v.trim().isEmpty()) return def;
+            return Long.parseLong(v.trim());
+        } catch (Exception e) {
+            return def;
+        }
+    }
+
+    // ===================== conexión física + proxy =====================
+
+    private final class PooledConnection {
+        final Connection fisica;
+        final long creadaEn = System.currentTimeMillis();
+        final long vidaMs;
+        volatile long ultimoUso = creadaEn;
+        volatile boolean rota;
+
+        PooledConnection(Connection fisica, long vidaMs) {
+            this.fisica = fisica;
+            this.vidaMs = vidaMs;
+        }
+
+        boolean caducada(long ahora) {
+            return vidaMs > 0 && ahora - creadaEn > vidaMs;
+        }
+
+        Connection prestar() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Prestamo(this));
+        }
+    }
+
+    /** Handler del proxy: un préstamo se puede cerrar una sola vez y después no admite llamadas. */
+    private final class Prestamo implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean cerrada;
+
+        Prestamo(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        devolver(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    if (cerrada) return true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + nombre + "]" + (cerrada ? " (devuelta)" : "");
+                default:
+                    if (cerrada) throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+            try {
+                return method.invoke(pc.fisica, args);
+            } catch (InvocationTargetException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof SQLException && esErrorFatal((SQLException) causa)) {
+                    pc.rota = true;
+                }
+                throw causa;
+            }
+        }
+    }
+}
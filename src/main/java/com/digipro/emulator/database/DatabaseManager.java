@@ -1,26 +1,64 @@
 package com.digipro.emulator.database;
 
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 /**
  * Administra las conexiones JDBC o JNDI según el modo configurado en database.properties.
+ * En modo directo las conexiones salen de un {@link ConnectionPool} (claves db.pool.*).
+ * En modo JNDI el DataSource se resuelve una sola vez y solo se vuelve a buscar tras un fallo que
+ * indique que quedó obsoleto (cerrado o re-publicado), no tras un timeout de su pool.
+ * Las consultas de solo lectura pueden ir a réplicas ({@link #getReadConnection()}, claves db.replica*).
+ *
+ * La configuración se publica como snapshot inmutable ({@link AppConfig}) y se recarga en caliente
+ * cuando cambia el archivo en disco:
+ *   - por defecto el database.properties del classpath (si está desplegado como archivo);
+ *   - o el indicado con -Demulator.config.path=/ruta/database.properties.
+ *   config.recarga.intervalo.ms=5000   (0 = sin recarga)
+ * La conexión (db.*, db.pool.*, jdbc.jndi.*) solo se aplica al arrancar.
  */
 public class DatabaseManager {
 
+    private static final String CONFIG_PATH_PROPERTY = "emulator.config.path";
+
     private static DatabaseManager instance;
-    private Properties props;
+    private volatile Properties props;
+    private volatile AppConfig config;
     private boolean useJndi;
+    private Path configFile;
+    private FileTime configFileModified;
+    private ConnectionPool pool;
+    private ReplicaRouter replicas;
+    private volatile DataSource dataSource;
+    private final ConnectionAcquisitionTimer acquisitionTimer = new ConnectionAcquisitionTimer();
 
     private DatabaseManager() {
         loadProperties();
+        if (!useJndi) {
+            initPool();
+        }
+        runMigrations();
+        startConfigWatcher();
+        TicketSweeper.iniciar(this);
+        LogAccesosParticiones.iniciar(this);
+        DirectorioUsuarios.get(this); // primera carga de usuarios en segundo plano
+        DiarioAccesos.get(this);      // carga lo que quedó en el diario de una ejecución anterior
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -31,56 +69,235 @@ public class DatabaseManager {
     }
 
     private void loadProperties() {
-        props = new Properties();
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream("database.properties")) {
-            if (is != null) {
-                props.load(is);
-                useJndi = Boolean.parseBoolean(props.getProperty("jdbc.jndi.enabled", "false"));
-                System.out.println("[DatabaseManager] Propiedades cargadas correctamente. Modo JNDI=" + useJndi);
+        try {
+            configFile = resolveConfigFile();
+            Properties p = new Properties();
+            if (configFile != null) {
+                configFileModified = Files.getLastModifiedTime(configFile);
+                try (InputStream is = Files.newInputStream(configFile)) {
+                    p.load(is);
+                }
             } else {
-                throw new RuntimeException("No se encontró database.properties en el classpath.");
+                try (InputStream is = getClass().getClassLoader().getResourceAsStream("database.properties")) {
+                    if (is == null) {
+                        throw new RuntimeException("No se encontró database.properties en el classpath.");
+                    }
+                    p.load(is);
+                }
             }
+            config = AppConfig.from(p);
+            props = p;
+            useJndi = Boolean.parseBoolean(p.getProperty("jdbc.jndi.enabled", "false"));
+            System.out.println("[DatabaseManager] Propiedades cargadas correctamente. Modo JNDI=" + useJndi);
         } catch (Exception e) {
             throw new RuntimeException("Error cargando configuración de base de datos", e);
         }
     }
 
+    /**
+     * Aplica las migraciones de esquema pendientes (db.migraciones.habilitadas, default false) en un
+     * hilo propio: crear índices en tablas grandes puede tardar minutos y no debe retener
+     * getInstance() ni ocupar los hilos de BackgroundTasks.
+     * Un fallo no impide arrancar: sin los índices las consultas funcionan, solo más lento.
+     */
+    private void runMigrations() {
+        if (!config.dbMigracionesHabilitadas) {
+            System.out.println("[DatabaseManager] Migraciones de esquema deshabilitadas");
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                int n = new SchemaMigrator(this).migrar();
+                if (n >= 0) System.out.println("[DatabaseManager] Esquema al día (" + n + " migraciones aplicadas)");
+            } catch (Exception e) {
+                System.err.println("[DatabaseManager] No se pudieron aplicar las migraciones de esquema: " + e.getMessage());
+            }
+        }, "migraciones-esquema");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Archivo a vigilar para recarga en caliente, o null si el recurso no está en disco (p. ej. dentro de un WAR). */
+    private Path resolveConfigFile() {
+        String externo = System.getProperty(CONFIG_PATH_PROPERTY);
+        if (externo != null && !externo.trim().isEmpty()) {
+            return Paths.get(externo.trim());
+        }
+        try {
+            URL url = getClass().getClassLoader().getResource("database.properties");
+            if (url != null && "file".equals(url.getProtocol())) {
+                return Paths.get(url.toURI());
+            }
+        } catch (Exception ignore) {
+            // sin recarga en caliente
+        }
+        return null;
+    }
+
+    private void startConfigWatcher() {
+        long intervalo = parseLong(props.getProperty("config.recarga.intervalo.ms"), 5000);
+        if (configFile == null || intervalo <= 0) {
+            System.out.println("[DatabaseManager] Recarga en caliente de configuración deshabilitada");
+            return;
+        }
+        BackgroundTasks.scheduleWithFixedDelay("config-recarga", this::reloadIfChanged, intervalo, TimeUnit.MILLISECONDS);
+        System.out.println("[DatabaseManager] Vigilando cambios en " + configFile + " cada " + intervalo + "ms");
+    }
+
+    /** Recarga la configuración si el archivo cambió. Si el nuevo contenido es inválido se conserva el anterior. */
+    private void reloadIfChanged() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(configFile);
+            if (modified.equals(configFileModified)) return;
+            configFileModified = modified;
+
+            Properties p = new Properties();
+            try (InputStream is = Files.newInputStream(configFile)) {
+                p.load(is);
+            }
+            AppConfig nueva = AppConfig.from(p);
+            props = p;
+            config = nueva;
+            System.out.println("[DatabaseManager] Configuración recargada desde " + configFile);
+        } catch (Exception e) {
+            System.err.println("[DatabaseManager] Recarga de configuración rechazada, se conserva la anterior: " + e.getMessage());
+        }
+    }
+
+    private static long parseLong(String v, long def) {
+        try {
+            return (v == null || v.trim().isEmpty()) ? def : Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /** Conexión al primario. Usar para escrituras y lecturas que deben ver lo recién escrito. */
     public Connection getConnection() throws SQLException {
-        if (useJndi) {
-            return getConnectionFromJndi();
-        } else {
-            return getConnectionDirect();
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            Connection cn = useJndi ? getConnectionFromJndi() : getConnectionDirect();
+            ok = true;
+            return cn;
+        } finally {
+            acquisitionTimer.registrarAdquisicion(System.nanoTime() - t0, ok);
         }
     }
 
+    /**
+     * Conexión para consultas de solo lectura: una réplica sana si hay réplicas configuradas,
+     * si no (o si ninguna está disponible) el primario.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (replicas != null) {
+            long t0 = System.nanoTime();
+            Connection cn = replicas.getConnection();
+            if (cn != null) {
+                acquisitionTimer.registrarAdquisicion(System.nanoTime() - t0, true);
+                return cn;
+            }
+        }
+        return getConnection();
+    }
+
+    /** true si hay réplicas de lectura configuradas (las lecturas pueden ir atrasadas respecto al primario). */
+    public boolean hasReadReplicas() {
+        return replicas != null;
+    }
+
+    /** Tiempos de adquisición de conexiones (espera en pool vs. lookup JNDI). */
+    public ConnectionAcquisitionTimer getAcquisitionTimer() {
+        return acquisitionTimer;
+    }
+
     private Connection getConnectionFromJndi() throws SQLException {
+        DataSource ds = resolveDataSource();
         try {
-            String jndiName = props.getProperty("jdbc.jndi.name");
-            Context ctx = new InitialContext();
-            DataSource ds = (DataSource) ctx.lookup(jndiName);
-            System.out.println("[DatabaseManager] Conexión obtenida vía JNDI: " + jndiName);
             return ds.getConnection();
-        } catch (Exception e) {
-            throw new SQLException("Error obteniendo conexión vía JNDI", e);
+        } catch (SQLException e) {
+            // El DataSource pudo haberse re-publicado (redeploy del datasource): una sola re-búsqueda.
+            // Un timeout del pool del contenedor se propaga tal cual
+            if (!ErroresSql.esDataSourceObsoleto(e)) throw e;
+            synchronized (this) {
+                if (dataSource == ds) dataSource = null;
+            }
+            DataSource fresh = resolveDataSource();
+            System.out.println("[DatabaseManager] Reintentando con DataSource re-resuelto vía JNDI: " + e.getMessage());
+            return fresh.getConnection();
         }
     }
 
-    private Connection getConnectionDirect() throws SQLException {
+    private DataSource resolveDataSource() throws SQLException {
+        DataSource ds = dataSource;
+        if (ds != null) return ds;
+        synchronized (this) {
+            if (dataSource == null) {
+                String jndiName = props.getProperty("jdbc.jndi.name");
+                long t0 = System.nanoTime();
+                try {
+                    Context ctx = new InitialContext();
+                    try {
+                        dataSource = (DataSource) ctx.lookup(jndiName);
+                    } finally {
+                        ctx.close();
+                    }
+                } catch (NamingException | ClassCastException e) {
+                    throw new SQLException("Error obteniendo conexión vía JNDI", e);
+                } finally {
+                    acquisitionTimer.registrarLookup(System.nanoTime() - t0);
+                }
+                System.out.println("[DatabaseManager] DataSource resuelto vía JNDI: " + jndiName);
+            }
+            return dataSource;
+        }
+    }
+
+    private void initPool() {
         String host = props.getProperty("db.host");
         String port = props.getProperty("db.port");
         String dbName = props.getProperty("db.name");
-        String user = props.getProperty("db.user");
-        String pass = props.getProperty("db.password");
-
         String url = "jdbc:postgresql://" + host + ":" + port + "/" + dbName;
         try {
             Class.forName("org.postgresql.Driver");
-            Connection cn = DriverManager.getConnection(url, user, pass);
-            System.out.println("[DatabaseManager] Conexión directa establecida con " + url);
-            return cn;
-        } catch (Exception e) {
-            throw new SQLException("Error conectando a PostgreSQL (" + url + ")", e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("No se encontró el driver de PostgreSQL", e);
+        }
+        pool = new ConnectionPool("primario", url, props.getProperty("db.user"), props.getProperty("db.password"), props);
+
+        String hostsReplica = props.getProperty("db.replicas");
+        if (hostsReplica != null && !hostsReplica.trim().isEmpty()) {
+            ReplicaRouter router = new ReplicaRouter(hostsReplica, dbName,
+                    props.getProperty("db.user"), props.getProperty("db.password"), props, config);
+            if (!router.isEmpty()) replicas = router;
+        }
+    }
+
+    private Connection getConnectionDirect() throws SQLException {
+        return pool.borrow();
+    }
+
+    /** Libera el pool de conexiones (undeploy). */
+    public synchronized void shutdown() {
+        TicketWriteBehind.detener();
+        ResumenAccesos.detener();
+        LogAccesosWriteBehind.detener(); // después de los tickets: log_accesos puede tener FK a tickets
+        DiarioAccesos.detener();         // después del log asíncrono, que puede terminar en el diario
+        TicketAccesos.detener();
+        DirectorioUsuarios.detener();
+        System.out.println("[DatabaseManager] Adquisición de conexiones: " + acquisitionTimer);
+        if (replicas != null) {
+            replicas.close();
         }
+        if (pool != null) {
+            pool.close();
+        }
+        dataSource = null;
+    }
+
+    /** Snapshot tipado vigente de la configuración. Leerlo una vez por petición y usar sus campos. */
+    public AppConfig getConfig() {
+        return config;
     }
 
     public String getProperty(String key) {
@@ -0,0 +1,404 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Diario local (append-only) de log_accesos para cuando la BD no responde.
+ *
+ * Los registros que no se pudieron escribir (lote fallido, cola llena o BD marcada caída) se copian
+ * a un búfer en memoria que se vuelca cada 100 ms (o al llenarse) a segmentos accesos-NNN.jnl con
+ * FileChannel: anexar no hace E/S. Si el proceso muere se pierden a lo más esos 100 ms. El volcado
+ * tiene su propio hilo: durante una caída el pool compartido de BackgroundTasks puede estar ocupado
+ * (reproductor, depuraciones esperando conexión) y no debe retrasarlo. No se usa mmap: en Windows
+ * un archivo mapeado no se puede borrar hasta que el GC libera el mapeo.
+ * Mientras la BD esté marcada caída, LogAccesoDAO ni siquiera pide conexión (no se paga el timeout
+ * del pool en cada petición).
+ *
+ * Cada reproduccion.s un reproductor cierra el segmento actual, carga los segmentos cerrados en
+ * orden (cada uno en una transacción) y los borra. Entrega al menos una vez: si el proceso muere
+ * entre el commit y el borrado, ese segmento se vuelve a cargar.
+ *
+ * Formato por registro: [int longitud][int CRC32][datos]. Una cola truncada o corrupta (caída a
+ * mitad de escritura) se detecta por longitud/CRC y se descarta desde ahí.
+ *
+ * database.properties (solo al arrancar):
+ *   log.accesos.diario.dir=            (vacío = deshabilitado)
+ *   log.accesos.diario.segmento.mb=16
+ *   log.accesos.diario.max.mb=1024     (arriba de esto los registros se descartan)
+ *   log.accesos.diario.reproduccion.s=10
+ */
+final class DiarioAccesos {
+
+    private static final String PREFIJO = "accesos-";
+    private static final String EXTENSION = ".jnl";
+    private static final int NULO = Integer.MIN_VALUE;
+    /** Registro más grande aceptado al leer; más que esto es un encabezado corrupto. */
+    private static final int MAX_REGISTRO = 1 << 20;
+    private static final int BUFER = 64 * 1024;
+    private static final long VOLCADO_MS = 100;
+
+    private static volatile DiarioAccesos instance;
+    private static boolean detenido;
+
+    private final DatabaseManager db;
+    private final Path dir;
+    private final long segmentoBytes;
+    private final long maxBytes;
+    private final long reproduccionMs;
+    private final int lote;
+    private final ScheduledFuture<?> tarea;
+    /** Hilo propio del volcado periódico (ver comentario de la clase). */
+    private final ScheduledExecutorService volcador;
+
+    /** Segmento abierto para anexar y búfer pendiente de volcar. Solo se tocan dentro de synchronized(this). */
+    private final ByteBuffer bufer = ByteBuffer.allocate(BUFER);
+    private final CRC32 crc = new CRC32();
+    private FileChannel actual;
+    private Path actualRuta;
+    private long actualBytes;
+    private long secuencia;
+    private long bytesEnDisco;
+
+    /** BD marcada caída hasta este instante (ms): no se intenta escribir en línea. */
+    private volatile long caidaHasta;
+
+    private final LongAdder anexados = new LongAdder();
+    private final LongAdder reproducidos = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+
+    private DiarioAccesos(DatabaseManager db, AppConfig cfg) throws IOException {
+        this.db = db;
+        this.dir = Paths.get(cfg.logAccesosDiarioDir);
+        this.segmentoBytes = cfg.logAccesosDiarioSegmentoMb * 1024L * 1024L;
+        this.maxBytes = cfg.logAccesosDiarioMaxMb * 1024L * 1024L;
+        this.reproduccionMs = cfg.logAccesosDiarioReproduccionSeg * 1000L;
+        this.lote = cfg.logAccesosLote;
+        Files.createDirectories(dir);
+        for (Path p : segmentos()) {
+            secuencia = Math.max(secuencia, numero(p));
+            bytesEnDisco += Files.size(p);
+        }
+        this.tarea = BackgroundTasks.scheduleWithFixedDelay("log-accesos-diario", this::reproducir,
+                cfg.logAccesosDiarioReproduccionSeg, TimeUnit.SECONDS);
+        this.volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-accesos-diario-volcado");
+            t.setDaemon(true);
+            return t;
+        });
+        volcador.scheduleWithFixedDelay(this::volcarPeriodico, VOLCADO_MS, VOLCADO_MS, TimeUnit.MILLISECONDS);
+        System.out.println("[DiarioAccesos] Diario de accesos en " + dir.toAbsolutePath()
+                + (bytesEnDisco > 0 ? " (pendiente de cargar: " + bytesEnDisco + " bytes)" : ""));
+    }
+
+    /** Instancia activa, o null si no hay log.accesos.diario.dir (o no se pudo crear el directorio). */
+    static DiarioAccesos get(DatabaseManager db) {
+        DiarioAccesos d = instance;
+        if (d != null) return d;
+        AppConfig cfg = db.getConfig();
+        if (cfg.logAccesosDiarioDir == null) return null;
+        synchronized (DiarioAccesos.class) {
+            if (instance == null && !detenido) {
+                try {
+                    instance = new DiarioAccesos(db, cfg);
+                } catch (IOException e) {
+                    System.err.println("[DiarioAccesos] No se pudo abrir " + cfg.logAccesosDiarioDir + ": " + e.getMessage());
+                    detenido = true;
+                }
+            }
+            return instance;
+        }
+    }
+
+    /** Cierra el segmento actual (undeploy). Lo pendiente se carga en el siguiente arranque. */
+    static synchronized void detener() {
+        detenido = true;
+        DiarioAccesos d = instance;
+        if (d != null) {
+            d.tarea.cancel(false);
+            d.volcador.shutdown(); // sin interrumpir: un FileChannel interrumpido se cierra
+            synchronized (d) {
+                d.volcar();
+                d.cerrarActual();
+            }
+            System.out.println("[DiarioAccesos] Detenido. " + d);
+            instance = null;
+        }
+    }
+
+    /** true si una escritura reciente a log_accesos falló y todavía no se reintenta. */
+    boolean bdCaida() {
+        return System.currentTimeMillis() < caidaHasta;
+    }
+
+    /** Marca la BD como caída hasta la siguiente reproducción. */
+    void marcarCaida() {
+        caidaHasta = System.currentTimeMillis() + reproduccionMs;
+    }
+
+    /**
+     * Anexa los registros al diario (al búfer; se escriben en el siguiente volcado).
+     * @return false si no se pudieron guardar (límite max.mb o error de E/S)
+     */
+    synchronized boolean anexar(List<RegistroAcceso> rs) {
+        for (int i = 0; i < rs.size(); i++) {
+            byte[] c = cuerpo(rs.get(i));
+            if (bytesEnDisco + bufer.position() + 8 + c.length > maxBytes
+                    || bufer.remaining() < 8 + c.length && !volcar()) {
+                descartados.add(rs.size() - i);
+                return false;
+            }
+            crc.reset();
+            crc.update(c);
+            if (bufer.remaining() >= 8 + c.length) {
+                bufer.putInt(c.length).putInt((int) crc.getValue()).put(c);
+            } else if (!escribir(ByteBuffer.allocate(8 + c.length).putInt(c.length).putInt((int) crc.getValue()).put(c).flip())) {
+                descartados.add(rs.size() - i); // registro más grande que el búfer: directo al segmento
+                return false;
+            }
+            anexados.increment();
+        }
+        return true;
+    }
+
+    /** Tarea del volcador: una excepción no debe cancelar los volcados siguientes. */
+    private void volcarPeriodico() {
+        try {
+            volcar();
+        } catch (Throwable t) {
+            System.err.println("[DiarioAccesos] Error en volcado periódico: " + t.getMessage());
+        }
+    }
+
+    /** Escribe el búfer al segmento actual. @return false si hubo error de E/S (el búfer se pierde). */
+    private synchronized boolean volcar() {
+        if (bufer.position() == 0) return true;
+        bufer.flip();
+        try {
+            return escribir(bufer);
+        } finally {
+            bufer.clear();
+        }
+    }
+
+    private boolean escribir(ByteBuffer b) {
+        int n = b.remaining();
+        try {
+            if (actual == null || actualBytes >= segmentoBytes) abrirSiguiente();
+            while (b.hasRemaining()) actual.write(b);
+            actualBytes += n;
+            bytesEnDisco += n;
+            return true;
+        } catch (IOException e) {
+            System.err.println("[DiarioAccesos] No se pudo escribir al diario: " + e.getMessage());
+            cerrarActual();
+            return false;
+        }
+    }
+
+    /** Carga en BD los segmentos cerrados; se detiene en el primero que falle. */
+    void reproducir() {
+        synchronized (this) {
+            volcar();
+            if (actualRuta != null) cerrarActual(); // lo anexado hasta ahora entra en esta pasada
+        }
+        for (Path p : segmentos()) {
+            synchronized (this) {
+                if (p.equals(actualRuta)) return; // abierto después de cerrar: siguiente pasada
+            }
+            try {
+                long tam = Files.size(p);
+                int n = cargar(p);
+                Files.delete(p);
+                synchronized (this) {
+                    bytesEnDisco -= tam;
+                }
+                reproducidos.add(n);
+                System.out.println("[DiarioAccesos] " + n + " registros cargados de " + p.getFileName());
+            } catch (SQLException | RuntimeException e) {
+                marcarCaida();
+                return; // BD aún no disponible
+            } catch (IOException e) {
+                System.err.println("[DiarioAccesos] No se pudo leer " + p.getFileName() + ": " + e.getMessage());
+                return;
+            }
+        }
+        caidaHasta = 0; // sin pendientes (o todos cargados): la BD vuelve a recibir en línea
+    }
+
+    /** Inserta un segmento completo en una transacción. */
+    private int cargar(Path p) throws IOException, SQLException {
+        List<RegistroAcceso> rs = leer(p);
+        if (rs.isEmpty()) return 0;
+        try (Connection cn = db.getConnection()) {
+            boolean autoCommit = cn.getAutoCommit();
+            cn.setAutoCommit(false);
+            try {
+                for (int i = 0; i < rs.size(); i += lote) {
+                    List<RegistroAcceso> parte = rs.subList(i, Math.min(rs.size(), i + lote));
+                    try {
+                        LogAccesoDAO.insertarLote(cn, parte);
+                    } catch (SQLException e) {
+                        if (!ErroresSql.esErrorDeDatos(e)) throw e;
+                        cn.rollback();
+                        cargarFilaPorFila(cn, rs);
+                        return rs.size();
+                    }
+                }
+                cn.commit();
+            } catch (SQLException e) {
+                cn.rollback();
+                throw e;
+            } finally {
+                cn.setAutoCommit(autoCommit);
+            }
+        }
+        return rs.size();
+    }
+
+    /** Segmento con filas inválidas (p. ej. FK): fila por fila con savepoint, descartando solo las malas. */
+    private void cargarFilaPorFila(Connection cn, List<RegistroAcceso> rs) throws SQLException {
+        for (RegistroAcceso r : rs) {
+            java.sql.Savepoint sp = cn.setSavepoint();
+            try {
+                LogAccesoDAO.insertarLote(cn, List.of(r));
+                cn.releaseSavepoint(sp);
+            } catch (SQLException e) {
+                if (!ErroresSql.esErrorDeDatos(e)) throw e;
+                cn.rollback(sp);
+                descartados.increment();
+                System.err.println("[DiarioAccesos] Registro descartado: " + e.getMessage());
+            }
+        }
+        cn.commit();
+    }
+
+    private void abrirSiguiente() throws IOException {
+        cerrarActual();
+        actualRuta = dir.resolve(String.format("%s%019d%s", PREFIJO, ++secuencia, EXTENSION));
+        actual = FileChannel.open(actualRuta, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        actualBytes = 0;
+    }
+
+    private void cerrarActual() {
+        if (actual == null) return;
+        try {
+            actual.force(false);
+            actual.close();
+        } catch (IOException e) {
+            System.err.println("[DiarioAccesos] Error cerrando " + actualRuta.getFileName() + ": " + e.getMessage());
+        }
+        actual = null;
+        actualRuta = null;
+    }
+
+    /** Segmentos en disco, en orden de escritura. */
+    private List<Path> segmentos() {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIJO + "*" + EXTENSION)) {
+            for (Path p : ds) if (numero(p) > 0) out.add(p);
+        } catch (IOException e) {
+            System.err.println("[DiarioAccesos] No se pudo listar " + dir + ": " + e.getMessage());
+        }
+        out.sort((a, b) -> Long.compare(numero(a), numero(b)));
+        return out;
+    }
+
+    private static long numero(Path p) {
+        String n = p.getFileName().toString();
+        try {
+            return Long.parseLong(n.substring(PREFIJO.length(), n.length() - EXTENSION.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // ===================== Formato =====================
+
+    static byte[] cuerpo(RegistroAcceso r) {
+        byte[][] textos = {utf8(r.idTicket), utf8(r.operacion), utf8(r.llaveBusqueda), utf8(r.ipOrigen), utf8(r.mensajeError)};
+        int tam = 8 + 1 + 4;
+        for (byte[] t : textos) tam += 4 + (t == null ? 0 : t.length);
+        ByteBuffer b = ByteBuffer.allocate(tam);
+        b.putLong(r.fechaHora).put((byte) (r.exitoso ? 1 : 0)).putInt(r.idDocumento == null ? NULO : r.idDocumento);
+        for (byte[] t : textos) {
+            if (t == null) {
+                b.putInt(NULO);
+            } else {
+                b.putInt(t.length).put(t);
+            }
+        }
+        return b.array();
+    }
+
+    /** Registros válidos del segmento; se detiene en el primer registro truncado o con CRC inválido. */
+    static List<RegistroAcceso> leer(Path p) throws IOException {
+        List<RegistroAcceso> out = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(p));
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= 8) {
+            int len = buf.getInt();
+            int esperado = buf.getInt();
+            if (len < 0 || len > MAX_REGISTRO || len > buf.remaining()) {
+                System.err.println("[DiarioAccesos] " + p.getFileName() + ": registro truncado en " + (buf.position() - 8) + ", se descarta el resto");
+                break;
+            }
+            byte[] c = new byte[len];
+            buf.get(c);
+            crc.reset();
+            crc.update(c);
+            if ((int) crc.getValue() != esperado) {
+                System.err.println("[DiarioAccesos] " + p.getFileName() + ": CRC inválido en " + (buf.position() - len - 8) + ", se descarta el resto");
+                break;
+            }
+            out.add(registro(ByteBuffer.wrap(c)));
+        }
+        return out;
+    }
+
+    private static RegistroAcceso registro(ByteBuffer b) {
+        long fecha = b.getLong();
+        boolean exitoso = b.get() != 0;
+        int doc = b.getInt();
+        String ticket = texto(b), operacion = texto(b), llave = texto(b), ip = texto(b), error = texto(b);
+        return new RegistroAcceso(ticket, doc == NULO ? null : doc, operacion, llave, fecha, ip, exitoso, error);
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String texto(ByteBuffer b) {
+        int len = b.getInt();
+        if (len == NULO) return null;
+        String s = new String(b.array(), b.arrayOffset() + b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return "DiarioAccesos[enDisco=" + bytesEnDisco + "B, anexados=" + anexados.sum()
+                + ", reproducidos=" + reproducidos.sum() + ", descartados=" + descartados.sum() + "]";
+    }
+}
@@ -0,0 +1,194 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copia en memoria de los usuarios activos para validar ObtenLogin sin ir a BD.
+ *
+ * Se carga al arrancar y se reemplaza completa cada cache.usuarios.refresco.s: un usuario
+ * desactivado o con contraseña cambiada deja de validar aquí a más tardar en un periodo. La
+ * contraseña no se guarda: solo SHA-256(sal || contraseña) con una sal aleatoria por usuario.
+ *
+ * Un fallo (usuario desconocido o contraseña distinta) se confirma en BD, así que los usuarios
+ * nuevos o con contraseña recién cambiada entran sin esperar al refresco; si BD los acepta se
+ * agregan a la copia. Si pasa un periodo sin refresco exitoso la copia se deja de usar y se valida
+ * contra BD hasta la siguiente carga (un usuario desactivado nunca valida con una copia más vieja
+ * que un periodo).
+ *
+ * database.properties:
+ *   cache.usuarios.max=10000        (0 = deshabilitada; si hay más usuarios activos tampoco se usa)
+ *   cache.usuarios.refresco.s=30    (solo al arrancar)
+ */
+final class DirectorioUsuarios {
+
+    private static final String SQL_CARGAR =
+            "SELECT id_usuario, username, password, nombre_completo, email, rol, activo, " +
+                    "grupo_admin_id, cliente_id, perfil_usuario_id, no_identidad " +
+                    "FROM usuarios WHERE activo = true";
+
+    private static final int LONGITUD_SAL = 16;
+
+    private static volatile DirectorioUsuarios instance;
+    private static boolean detenido;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    });
+
+    private final DatabaseManager db;
+    private final SecureRandom sales = new SecureRandom();
+    private final long refrescoMs;
+    private final ScheduledFuture<?> tarea;
+
+    /** username → entrada. null hasta la primera carga (o si se excedió cache.usuarios.max). */
+    private volatile ConcurrentHashMap<String, Entrada> usuarios;
+    /** Inicio de la consulta de la copia vigente (ms): la copia refleja la BD a partir de ese instante. */
+    private volatile long cargadoEn;
+    private boolean excedido;
+
+    private DirectorioUsuarios(DatabaseManager db, AppConfig cfg) {
+        this.db = db;
+        this.refrescoMs = cfg.cacheUsuariosRefrescoSeg * 1000L;
+        BackgroundTasks.submit("usuarios-carga", this::refrescar);
+        this.tarea = BackgroundTasks.scheduleWithFixedDelay("usuarios-refresco", this::refrescar,
+                cfg.cacheUsuariosRefrescoSeg, TimeUnit.SECONDS);
+    }
+
+    /** Instancia activa, o null si está deshabilitada (cache.usuarios.max=0). */
+    static DirectorioUsuarios get(DatabaseManager db) {
+        DirectorioUsuarios d = instance;
+        if (d != null) return d;
+        AppConfig cfg = db.getConfig();
+        if (cfg.cacheUsuariosMax == 0) return null;
+        synchronized (DirectorioUsuarios.class) {
+            if (instance == null && !detenido) instance = new DirectorioUsuarios(db, cfg);
+            return instance;
+        }
+    }
+
+    /** Detiene el refresco (undeploy). */
+    static synchronized void detener() {
+        detenido = true;
+        DirectorioUsuarios d = instance;
+        if (d != null) {
+            d.tarea.cancel(false);
+            d.usuarios = null;
+            instance = null;
+        }
+    }
+
+    /**
+     * Usuario si la contraseña coincide con la copia en memoria; null si no se puede decidir aquí
+     * (sin copia vigente, usuario desconocido o contraseña distinta): el llamador consulta BD.
+     */
+    UsuarioDTO validar(String username, String password) {
+        ConcurrentHashMap<String, Entrada> mapa = usuarios;
+        if (mapa == null || username == null || password == null) return null;
+        if (System.currentTimeMillis() - cargadoEn > refrescoMs) return null;
+        Entrada e = mapa.get(username);
+        if (e == null || !MessageDigest.isEqual(e.hash, hash(e.sal, password))) return null;
+        return copia(e.usuario);
+    }
+
+    /** Registra un login confirmado por BD para que los siguientes no vayan a BD. */
+    void aceptado(UsuarioDTO u, String password) {
+        ConcurrentHashMap<String, Entrada> mapa = usuarios;
+        if (mapa == null || u.username == null || password == null) return;
+        if (mapa.size() >= db.getConfig().cacheUsuariosMax) return;
+        mapa.put(u.username, entrada(copia(u), password));
+    }
+
+    private synchronized void refrescar() {
+        AppConfig cfg = db.getConfig();
+        if (cfg.cacheUsuariosMax == 0) {
+            usuarios = null;
+            return;
+        }
+        ConcurrentHashMap<String, Entrada> nuevo = new ConcurrentHashMap<>();
+        long inicio = System.currentTimeMillis();
+        try (Connection cn = db.getConnection();
+             PreparedStatement ps = cn.prepareStatement(SQL_CARGAR)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (nuevo.size() >= cfg.cacheUsuariosMax) {
+                        if (!excedido) {
+                            System.out.println("[DirectorioUsuarios] Más de " + cfg.cacheUsuariosMax
+                                    + " usuarios activos; se valida contra BD");
+                        }
+                        excedido = true;
+                        usuarios = null;
+                        return;
+                    }
+                    UsuarioDTO u = UsuarioDAO.leer(rs);
+                    String password = rs.getString("password");
+                    if (u.username != null && password != null) nuevo.put(u.username, entrada(u, password));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[DirectorioUsuarios] No se pudo refrescar: " + e.getMessage());
+            return;
+        }
+        boolean primera = usuarios == null;
+        excedido = false;
+        usuarios = nuevo;
+        cargadoEn = inicio;
+        if (primera) System.out.println("[DirectorioUsuarios] Usuarios activos en memoria: " + nuevo.size());
+    }
+
+    private Entrada entrada(UsuarioDTO u, String password) {
+        byte[] sal = new byte[LONGITUD_SAL];
+        sales.nextBytes(sal);
+        return new Entrada(u, sal, hash(sal, password));
+    }
+
+    private static byte[] hash(byte[] sal, String password) {
+        MessageDigest md = SHA256.get();
+        md.update(sal);
+        return md.digest(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** UsuarioDTO es mutable: cada login recibe su propia copia. */
+    private static UsuarioDTO copia(UsuarioDTO u) {
+        UsuarioDTO c = new UsuarioDTO();
+        c.idUsuario = u.idUsuario;
+        c.username = u.username;
+        c.nombreCompleto = u.nombreCompleto;
+        c.email = u.email;
+        c.rol = u.rol;
+        c.activo = u.activo;
+        c.grupoAdminId = u.grupoAdminId;
+        c.clienteId = u.clienteId;
+        c.perfilUsuarioId = u.perfilUsuarioId;
+        c.noIdentidad = u.noIdentidad;
+        return c;
+    }
+
+    private static final class Entrada {
+        final UsuarioDTO usuario;
+        final byte[] sal;
+        final byte[] hash;
+
+        Entrada(UsuarioDTO usuario, byte[] sal, byte[] hash) {
+            this.usuario = usuario;
+            this.sal = sal;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché LRU con TTL de los metadatos de documentos que devuelve {@link DocumentoDAO}.
+ *
+ * - Listas por (llave, tipoDocID) — tipoDocID 0 = todos los tipos — y documentos por id_documento.
+ * - Tamaño máximo (entradas) y TTL tomados del snapshot de configuración que pasa el llamador
+ *   (una lectura por operación del DAO), así que una recarga en caliente aplica sin reiniciar.
+ * - Guarda y entrega copias: los llamadores modifican el DTO (p. ej. consecutivo).
+ * - No guarda listas vacías: la lectura puede venir de una réplica atrasada y ocultaría por todo el
+ *   TTL los documentos recién cargados.
+ *
+ * database.properties:
+ *   cache.documentos.max=10000   (0 = deshabilitada)
+ *   cache.documentos.ttl.s=300
+ */
+public final class DocumentoCache {
+
+    private static final DocumentoCache INSTANCE = new DocumentoCache();
+
+    /** Orden de acceso = LRU. Protegido por el monitor de esta instancia. */
+    private final LinkedHashMap<Object, Entrada> mapa = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private DocumentoCache() {}
+
+    public static DocumentoCache getInstance() {
+        return INSTANCE;
+    }
+
+    // ===================== lectura / escritura =====================
+
+    /** Documentos de la llave (tipoDocID 0 = todos), o null si no está en caché. */
+    List<DocumentoDTO> getLista(AppConfig cfg, String llave, int tipoDocID) {
+        Object v = get(cfg, new ClaveLlave(llave, tipoDocID));
+        if (v == null) return null;
+        @SuppressWarnings("unchecked")
+        List<DocumentoDTO> docs = (List<DocumentoDTO>) v;
+        return copiar(docs);
+    }
+
+    /** Guarda la lista; una vacía no se guarda (la siguiente consulta vuelve a BD). */
+    void putLista(AppConfig cfg, String llave, int tipoDocID, List<DocumentoDTO> docs) {
+        if (docs.isEmpty() || cfg.cacheDocumentosMax <= 0) return;
+        put(cfg, new ClaveLlave(llave, tipoDocID), llave, copiar(docs));
+    }
+
+    /** Documento por id, o null si no está en caché. */
+    DocumentoDTO getDocumento(AppConfig cfg, long idDocumento) {
+        Object v = get(cfg, idDocumento);
+        return v == null ? null : ((DocumentoDTO) v).copia();
+    }
+
+    void putDocumento(AppConfig cfg, long idDocumento, DocumentoDTO d) {
+        if (d == null || cfg.cacheDocumentosMax <= 0) return;
+        put(cfg, idDocumento, d.llaveBusqueda, d.copia());
+    }
+
+    // ===================== invalidación =====================
+
+    /** Elimina todas las entradas de la llave (cualquier tipo) y los documentos que le pertenecen. */
+    public synchronized void invalidarLlave(String llave) {
+        mapa.values().removeIf(e -> Objects.equals(e.llave, llave));
+    }
+
+    /** Elimina el documento y toda lista que lo contenga. */
+    public synchronized void invalidarDocumento(long idDocumento) {
+        Entrada e = mapa.remove(idDocumento);
+        if (e != null && e.llave != null) {
+            invalidarLlave(e.llave);
+            return;
+        }
+        Iterator<Entrada> it = mapa.values().iterator();
+        while (it.hasNext()) {
+            Object v = it.next().valor;
+            if (v instanceof List && contiene((List<?>) v, idDocumento)) it.remove();
+        }
+    }
+
+    public synchronized void invalidarTodo() {
+        mapa.clear();
+    }
+
+    // ===================== métricas =====================
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public long getEvictions() { return evictions.sum(); }
+
+    public synchronized int size() { return mapa.size(); }
+
+    @Override
+    public String toString() {
+        return "DocumentoCache[entradas=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+                + ", evictions=" + getEvictions() + "]";
+    }
+
+    // ===================== internos =====================
+
+    private Object get(AppConfig cfg, Object clave) {
+        if (cfg.cacheDocumentosMax <= 0) return null;
+        Entrada e;
+        synchronized (this) {
+            e = mapa.get(clave);
+            if (e != null && e.expiraEn <= System.currentTimeMillis()) {
+                mapa.remove(clave);
+                evictions.increment();
+                e = null;
+            }
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.valor;
+    }
+
+    private void put(AppConfig cfg, Object clave, String llave, Object valor) {
+        int max = cfg.cacheDocumentosMax;
+        if (max <= 0) return;
+        long expiraEn = System.currentTimeMillis() + cfg.cacheDocumentosTtlSeg * 1000L;
+        synchronized (this) {
+            mapa.put(clave, new Entrada(llave, valor, expiraEn));
+            Iterator<Entrada> it = mapa.values().iterator();
+            while (mapa.size() > max && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static List<DocumentoDTO> copiar(List<DocumentoDTO> docs) {
+        List<DocumentoDTO> copia = new ArrayList<>(docs.size());
+        for (DocumentoDTO d : docs) copia.add(d.copia());
+        return copia;
+    }
+
+    private static boolean contiene(List<?> docs, long idDocumento) {
+        for (Object o : docs) {
+            if (((DocumentoDTO) o).getIdDocumento() == idDocumento) return true;
+        }
+        return false;
+    }
+
+    private static final class Entrada {
+        final String llave;
+        final Object valor;
+        final long expiraEn;
+
+        Entrada(String llave, Object valor, long expiraEn) {
+            this.llave = llave;
+            this.valor = valor;
+            this.expiraEn = expiraEn;
+        }
+    }
+
+    private static final class ClaveLlave {
+        final String llave;
+        final int tipoDocID;
+
+        ClaveLlave(String llave, int tipoDocID) {
+            this.llave = llave;
+            this.tipoDocID = Math.max(0, tipoDocID);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ClaveLlave)) return false;
+            ClaveLlave k = (ClaveLlave) o;
+            return tipoDocID == k.tipoDocID && Objects.equals(llave, k.llave);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(llave) + tipoDocID;
+        }
+    }
+}
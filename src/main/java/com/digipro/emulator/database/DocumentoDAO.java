@@ -1,48 +1,136 @@
 package com.digipro.emulator.database;
 
+import com.digipro.emulator.config.AppConfig;
+
+import java.sql.Array;
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DAO para acceso a los documentos y archivos físicos asociados.
+ * Todas las consultas son de solo lectura y se envían a réplica cuando hay réplicas configuradas.
+ * Los resultados pasan por {@link DocumentoCache} (LRU/TTL); invalidar ahí al cargar o modificar documentos.
  */
 public class DocumentoDAO {
 
+    /** Máximo de llaves por consulta en findByLlaves (las colecciones mayores se parten en lotes). */
+    private static final int LLAVES_POR_CONSULTA = 1000;
+
+    /** Expedientes con más documentos que esto no se guardan en caché al recorrerlos por páginas. */
+    private static final int MAX_DOCS_CACHEABLES = 200;
+
+    /** Recibe los documentos uno a uno en {@link #recorrerPorLlave}. */
+    public interface ProcesadorDocumento {
+        void procesar(DocumentoDTO d) throws Exception;
+    }
+
     private final DatabaseManager db;
+    private final DocumentoCache cache;
 
     public DocumentoDAO() {
         this.db = DatabaseManager.getInstance();
+        this.cache = DocumentoCache.getInstance();
     }
 
     // ===================== MAPEO A DTO =====================
 
-    private static DocumentoDTO map(ResultSet rs) throws Exception {
+    /**
+     * Proyección explícita compartida por todas las consultas. El orden de columnas define los
+     * índices COL_* que usa map(): no se resuelven etiquetas por fila.
+     */
+    private static final String SELECT_DOCUMENTOS =
+            "SELECT d.id_documento, d.negocio, d.proyecto_id, d.tipo_doc_id, d.llave_busqueda, d.periodo, " +
+                    "d.contrato, d.descripcion, d.fecha_documento, d.id_archivo, " +
+                    "a.ruta_relativa, a.nombre_archivo, a.extension, a.tamano_bytes, a.fecha_creacion " +
+                    "FROM documentos d " +
+                    "JOIN archivos_fisicos a ON a.id_archivo = d.id_archivo ";
+
+    // Consultas calientes. Package-private para que IndexPlanCheck haga EXPLAIN exactamente de este SQL;
+    // los índices que las cubren están en db/migration (SchemaMigrator).
+    static final String SQL_POR_LLAVE =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.llave_busqueda = ? " +
+                    "ORDER BY d.tipo_doc_id, d.id_documento";
+
+    static final String SQL_POR_LLAVE_Y_TIPO =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.llave_busqueda = ? AND d.tipo_doc_id = ? " +
+                    "ORDER BY d.id_documento";
+
+    static final String SQL_POR_LLAVES =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.llave_busqueda = ANY(?) " +
+                    "ORDER BY d.llave_busqueda, d.tipo_doc_id, d.id_documento";
+
+    static final String SQL_POR_LLAVES_Y_TIPO =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.llave_busqueda = ANY(?) AND d.tipo_doc_id = ? " +
+                    "ORDER BY d.llave_busqueda, d.tipo_doc_id, d.id_documento";
+
+    // Páginas de recorrerPorLlave (keyset sobre el mismo orden; mismo índice que las anteriores)
+    static final String SQL_PAGINA_POR_LLAVE =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.llave_busqueda = ? AND (d.tipo_doc_id, d.id_documento) > (?, ?) " +
+                    "ORDER BY d.tipo_doc_id, d.id_documento LIMIT ?";
+
+    static final String SQL_PAGINA_POR_LLAVE_Y_TIPO =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.llave_busqueda = ? AND d.tipo_doc_id = ? AND d.id_documento > ? " +
+                    "ORDER BY d.id_documento LIMIT ?";
+
+    static final String SQL_POR_ID =
+            SELECT_DOCUMENTOS +
+                    "WHERE d.id_documento = ?";
+
+    private static final int COL_ID_DOCUMENTO    = 1;
+    private static final int COL_NEGOCIO         = 2;
+    private static final int COL_PROYECTO_ID     = 3;
+    private static final int COL_TIPO_DOC_ID     = 4;
+    private static final int COL_LLAVE_BUSQUEDA  = 5;
+    private static final int COL_PERIODO         = 6;
+    private static final int COL_CONTRATO        = 7;
+    private static final int COL_DESCRIPCION     = 8;
+    private static final int COL_FECHA_DOCUMENTO = 9;
+    private static final int COL_ID_ARCHIVO      = 10;
+    private static final int COL_RUTA_RELATIVA   = 11;
+    private static final int COL_NOMBRE_ARCHIVO  = 12;
+    private static final int COL_EXTENSION       = 13;
+    private static final int COL_TAMANO_BYTES    = 14;
+    private static final int COL_FECHA_CREACION  = 15;
+
+    /** Package-private para que RecorridoDocumentosBench lo compare con el mapeo por nombre de SELECT d.*. */
+    static DocumentoDTO map(ResultSet rs) throws Exception {
         DocumentoDTO d = new DocumentoDTO();
-        d.idDocumento   = rs.getInt("id_documento");
-        d.negocio       = rs.getString("negocio");
-        d.proyectoId    = rs.getInt("proyecto_id");
-        d.tipoDocId     = rs.getInt("tipo_doc_id");
-        d.llaveBusqueda = rs.getString("llave_busqueda");
-        d.periodo       = rs.getString("periodo");
-        d.contrato      = rs.getString("contrato");  // ← CORREGIDO: getString
-        d.descripcion   = rs.getString("descripcion");
-
-        if (rs.getDate("fecha_documento") != null) {
-            d.fechaDocumento = rs.getDate("fecha_documento").toLocalDate();
+        d.idDocumento   = rs.getInt(COL_ID_DOCUMENTO);
+        d.negocio       = rs.getString(COL_NEGOCIO);
+        d.proyectoId    = rs.getInt(COL_PROYECTO_ID);
+        d.tipoDocId     = rs.getInt(COL_TIPO_DOC_ID);
+        d.llaveBusqueda = rs.getString(COL_LLAVE_BUSQUEDA);
+        d.periodo       = rs.getString(COL_PERIODO);
+        d.contrato      = rs.getString(COL_CONTRATO);
+        d.descripcion   = rs.getString(COL_DESCRIPCION);
+
+        Date fd = rs.getDate(COL_FECHA_DOCUMENTO);
+        if (fd != null) {
+            d.fechaDocumento = fd.toLocalDate();
         }
 
-        Timestamp fc = rs.getTimestamp("fecha_creacion");
+        Timestamp fc = rs.getTimestamp(COL_FECHA_CREACION);
         if (fc != null) {
             d.fechaCreacion = new java.util.Date(fc.getTime());
         }
 
-        d.idArchivo     = rs.getInt("id_archivo");
-        d.rutaRelativa  = rs.getString("ruta_relativa");
-        d.nombreArchivo = rs.getString("nombre_archivo");
-        d.extension     = rs.getString("extension");
-        d.tamanoBytes   = rs.getLong("tamano_bytes");
+        d.idArchivo     = rs.getInt(COL_ID_ARCHIVO);
+        d.rutaRelativa  = rs.getString(COL_RUTA_RELATIVA);
+        d.nombreArchivo = rs.getString(COL_NOMBRE_ARCHIVO);
+        d.extension     = rs.getString(COL_EXTENSION);
+        d.tamanoBytes   = rs.getLong(COL_TAMANO_BYTES);
         d.consecutivo   = 1; // Se actualizará en el servicio según el orden
         return d;
     }
@@ -54,16 +142,134 @@ public class DocumentoDAO {
      * Se utiliza cuando TipoDocID = 0 (todos los documentos).
      */
     public List<DocumentoDTO> findByLlave(String llave) {
-        final String sql =
-                "SELECT d.*, a.ruta_relativa, a.nombre_archivo, a.extension, a.tamano_bytes, a.fecha_creacion " +
-                        "FROM documentos d " +
-                        "JOIN archivos_fisicos a ON a.id_archivo = d.id_archivo " +
-                        "WHERE d.llave_busqueda = ? " +
-                        "ORDER BY d.tipo_doc_id, d.id_documento";
+        AppConfig cfg = db.getConfig();
+        List<DocumentoDTO> docs = cache.getLista(cfg, llave, 0);
+        if (docs == null) {
+            docs = consultarPorLlave(llave);
+            cache.putLista(cfg, llave, 0, docs);
+        }
+        return docs;
+    }
 
+    /**
+     * Busca documentos por llave Y tipo de documento específico.
+     * Se utiliza cuando TipoDocID = 1, 2, 3, etc. (tipo específico).
+     */
+    public List<DocumentoDTO> findByLlaveYTipo(String llave, int tipoDocID) {
+        AppConfig cfg = db.getConfig();
+        List<DocumentoDTO> docs = cache.getLista(cfg, llave, tipoDocID);
+        if (docs == null) {
+            docs = consultarPorLlaveYTipo(llave, tipoDocID);
+            cache.putLista(cfg, llave, tipoDocID, docs);
+        }
+        return docs;
+    }
+
+    /**
+     * Recorre los documentos de la llave uno a uno, sin materializar la lista completa.
+     * Mismo criterio y orden que findByLlave (tipoDocID <= 0) / findByLlaveYTipo.
+     *
+     * Si no está en caché lee páginas de documentos.pagina.tamano filas (keyset sobre tipo_doc_id,
+     * id_documento) y devuelve la conexión antes de procesar cada página: el procesador puede leer
+     * archivos y escribir al cliente sin retener una conexión del pool ni una transacción abierta.
+     * Los expedientes de hasta MAX_DOCS_CACHEABLES documentos quedan en caché al terminar.
+     *
+     * @return número de documentos procesados
+     */
+    public int recorrerPorLlave(String llave, int tipoDocID, ProcesadorDocumento procesador) {
+        int tipo = Math.max(0, tipoDocID);
+        AppConfig cfg = db.getConfig();
+        List<DocumentoDTO> enCache = cache.getLista(cfg, llave, tipo);
+        try {
+            if (enCache != null) {
+                for (DocumentoDTO d : enCache) procesador.procesar(d);
+                return enCache.size();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error procesando documentos por llave", e);
+        }
+
+        final int porPagina = cfg.documentosPaginaTamano;
+
+        List<DocumentoDTO> cacheables = new ArrayList<>();
+        int n = 0;
+        int ultimoTipo = Integer.MIN_VALUE;
+        int ultimoId = Integer.MIN_VALUE;
+        try {
+            while (true) {
+                List<DocumentoDTO> pagina = consultarPagina(llave, tipo, ultimoTipo, ultimoId, porPagina);
+                // conexión ya devuelta: el procesador puede tardar lo que tarde el cliente
+                for (DocumentoDTO d : pagina) {
+                    if (cacheables != null) {
+                        if (cacheables.size() < MAX_DOCS_CACHEABLES) cacheables.add(d.copia());
+                        else cacheables = null;
+                    }
+                    procesador.procesar(d);
+                    n++;
+                }
+                if (pagina.size() < porPagina) break;
+                DocumentoDTO ultimo = pagina.get(pagina.size() - 1);
+                ultimoTipo = ultimo.tipoDocId;
+                ultimoId = ultimo.idDocumento;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error recorriendo documentos por llave", e);
+        }
+        if (cacheables != null) cache.putLista(cfg, llave, tipo, cacheables);
+        return n;
+    }
+
+    /**
+     * Busca documentos de varias llaves en una sola ida a la BD (WHERE llave_busqueda = ANY(?)).
+     * Pensado para clientes batch y conciliación: evita una consulta por llave.
+     * Las llaves presentes en caché no se consultan.
+     *
+     * @param llaves    llaves de búsqueda (se ignoran null/vacías y duplicadas)
+     * @param tipoDocID tipo específico, o 0 para todos los tipos (mismo criterio que findByLlave)
+     * @return mapa llave → documentos, en el orden de entrada; las llaves sin documentos tienen lista vacía.
+     *         Cada lista conserva el orden de findByLlave / findByLlaveYTipo.
+     */
+    public Map<String, List<DocumentoDTO>> findByLlaves(Collection<String> llaves, int tipoDocID) {
+        Map<String, List<DocumentoDTO>> resultados = new LinkedHashMap<>();
+        if (llaves == null) return resultados;
+        AppConfig cfg = db.getConfig();
+        List<String> pendientes = new ArrayList<>();
+        for (String llave : llaves) {
+            if (llave == null || llave.isEmpty() || resultados.containsKey(llave)) continue;
+            List<DocumentoDTO> docs = cache.getLista(cfg, llave, tipoDocID);
+            resultados.put(llave, docs);
+            if (docs == null) pendientes.add(llave);
+        }
+        if (!pendientes.isEmpty()) {
+            Map<String, List<DocumentoDTO>> consultados = consultarPorLlaves(pendientes, tipoDocID);
+            for (Map.Entry<String, List<DocumentoDTO>> e : consultados.entrySet()) {
+                cache.putLista(cfg, e.getKey(), tipoDocID, e.getValue());
+                resultados.put(e.getKey(), e.getValue());
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Busca un documento por su ID (clave primaria).
+     * Se utiliza para ContestaFileHSM.
+     */
+    public DocumentoDTO findByIdDocumento(long idDocumento) {
+        AppConfig cfg = db.getConfig();
+        DocumentoDTO d = cache.getDocumento(cfg, idDocumento);
+        if (d == null) {
+            d = consultarPorId(idDocumento);
+            cache.putDocumento(cfg, idDocumento, d);
+        }
+        return d;
+    }
+
+    // ===================== SQL =====================
+
+    private List<DocumentoDTO> consultarPorLlave(String llave) {
         List<DocumentoDTO> resultados = new ArrayList<>();
-        try (var cn = db.getConnection();
-             var ps = cn.prepareStatement(sql)) {
+        try (var cn = db.getReadConnection();
+             var ps = cn.prepareStatement(SQL_POR_LLAVE)) {
 
             ps.setString(1, llave);
             try (var rs = ps.executeQuery()) {
@@ -77,21 +283,10 @@ public class DocumentoDAO {
         return resultados;
     }
 
-    /**
-     * Busca documentos por llave Y tipo de documento específico.
-     * Se utiliza cuando TipoDocID = 1, 2, 3, etc. (tipo específico).
-     */
-    public List<DocumentoDTO> findByLlaveYTipo(String llave, int tipoDocID) {
-        final String sql =
-                "SELECT d.*, a.ruta_relativa, a.nombre_archivo, a.extension, a.tamano_bytes, a.fecha_creacion " +
-                        "FROM documentos d " +
-                        "JOIN archivos_fisicos a ON a.id_archivo = d.id_archivo " +
-                        "WHERE d.llave_busqueda = ? AND d.tipo_doc_id = ? " +
-                        "ORDER BY d.id_documento";
-
+    private List<DocumentoDTO> consultarPorLlaveYTipo(String llave, int tipoDocID) {
         List<DocumentoDTO> resultados = new ArrayList<>();
-        try (var cn = db.getConnection();
-             var ps = cn.prepareStatement(sql)) {
+        try (var cn = db.getReadConnection();
+             var ps = cn.prepareStatement(SQL_POR_LLAVE_Y_TIPO)) {
 
             ps.setString(1, llave);
             ps.setInt(2, tipoDocID);
@@ -106,20 +301,67 @@ public class DocumentoDAO {
         return resultados;
     }
 
-    /**
-     * Busca un documento por su ID (clave primaria).
-     * Se utiliza para ContestaFileHSM.
-     */
-    public DocumentoDTO findByIdDocumento(long idDocumento) {
-        final String sql =
-                "SELECT d.*, a.ruta_relativa, a.nombre_archivo, a.extension, a.tamano_bytes, a.fecha_creacion " +
-                        "FROM documentos d " +
-                        "JOIN archivos_fisicos a ON a.id_archivo = d.id_archivo " +
-                        "WHERE d.id_documento = ?";
+    /** Hasta {@code limite} documentos de la llave posteriores a (ultimoTipo, ultimoId) en el orden de recorrido. */
+    private List<DocumentoDTO> consultarPagina(String llave, int tipo, int ultimoTipo, int ultimoId, int limite) {
+        List<DocumentoDTO> resultados = new ArrayList<>(limite);
+        try (var cn = db.getReadConnection();
+             var ps = cn.prepareStatement(tipo > 0 ? SQL_PAGINA_POR_LLAVE_Y_TIPO : SQL_PAGINA_POR_LLAVE)) {
+
+            ps.setString(1, llave);
+            ps.setInt(2, tipo > 0 ? tipo : ultimoTipo);
+            ps.setInt(3, ultimoId);
+            ps.setInt(4, limite);
+            try (var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    resultados.add(map(rs));
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error consultando página de documentos por llave", e);
+        }
+        return resultados;
+    }
 
-        try (var cn = db.getConnection();
+    /** Llaves ya depuradas (sin null/duplicados); devuelve todas las llaves, con lista vacía si no hay documentos. */
+    private Map<String, List<DocumentoDTO>> consultarPorLlaves(List<String> llaves, int tipoDocID) {
+        Map<String, List<DocumentoDTO>> resultados = new LinkedHashMap<>();
+        for (String llave : llaves) {
+            resultados.put(llave, new ArrayList<>());
+        }
+
+        final String sql = tipoDocID > 0 ? SQL_POR_LLAVES_Y_TIPO : SQL_POR_LLAVES;
+
+        try (var cn = db.getReadConnection();
              var ps = cn.prepareStatement(sql)) {
 
+            for (int desde = 0; desde < llaves.size(); desde += LLAVES_POR_CONSULTA) {
+                List<String> lote = llaves.subList(desde, Math.min(llaves.size(), desde + LLAVES_POR_CONSULTA));
+                Array arr = cn.createArrayOf("varchar", lote.toArray());
+                try {
+                    ps.setArray(1, arr);
+                    if (tipoDocID > 0) ps.setInt(2, tipoDocID);
+                    try (var rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            DocumentoDTO d = map(rs);
+                            List<DocumentoDTO> docs = resultados.get(d.llaveBusqueda);
+                            if (docs == null && d.llaveBusqueda != null) docs = resultados.get(d.llaveBusqueda.trim());
+                            if (docs != null) docs.add(d);
+                        }
+                    }
+                } finally {
+                    arr.free();
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error consultando documentos por lote de llaves", e);
+        }
+        return resultados;
+    }
+
+    private DocumentoDTO consultarPorId(long idDocumento) {
+        try (var cn = db.getReadConnection();
+             var ps = cn.prepareStatement(SQL_POR_ID)) {
+
             ps.setLong(1, idDocumento);
             try (var rs = ps.executeQuery()) {
                 if (rs.next()) return map(rs);
@@ -21,6 +21,28 @@ public class DocumentoDTO {
     public Long    tamanoBytes;
     public Integer consecutivo = 1;
 
+    /** Copia independiente (la caché de documentos entrega copias porque el servicio modifica consecutivo). */
+    public DocumentoDTO copia() {
+        DocumentoDTO c = new DocumentoDTO();
+        c.idDocumento    = idDocumento;
+        c.negocio        = negocio;
+        c.proyectoId     = proyectoId;
+        c.tipoDocId      = tipoDocId;
+        c.llaveBusqueda  = llaveBusqueda;
+        c.periodo        = periodo;
+        c.contrato       = contrato;
+        c.descripcion    = descripcion;
+        c.fechaDocumento = fechaDocumento;
+        c.fechaCreacion  = fechaCreacion != null ? new Date(fechaCreacion.getTime()) : null;
+        c.idArchivo      = idArchivo;
+        c.rutaRelativa   = rutaRelativa;
+        c.nombreArchivo  = nombreArchivo;
+        c.extension      = extension;
+        c.tamanoBytes    = tamanoBytes;
+        c.consecutivo    = consecutivo;
+        return c;
+    }
+
     // === Getters auxiliares ===
     public long getIdDocumento() {
         return idDocumento != null ? idDocumento.longValue() : 0L;
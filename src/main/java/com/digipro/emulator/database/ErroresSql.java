@@ -0,0 +1,38 @@
+package com.digipro.emulator.database;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+
+/**
+ * Clasificación de SQLState compartida por las escrituras en segundo plano (TicketWriteBehind,
+ * LogAccesosWriteBehind, DiarioAccesos): decide si un lote fallido se reintenta o se descarta.
+ * También decide cuándo DatabaseManager vuelve a buscar el DataSource por JNDI.
+ */
+final class ErroresSql {
+
+    private ErroresSql() {}
+
+    /** Violación de restricción / dato inválido (clase 22 o 23): reintentar el mismo dato no sirve. */
+    static boolean esErrorDeDatos(SQLException e) {
+        SQLException actual = e;
+        while (actual != null) {
+            String st = actual.getSQLState();
+            if (st != null && (st.startsWith("22") || st.startsWith("23"))) return true;
+            actual = actual.getNextException();
+        }
+        return false;
+    }
+
+    /**
+     * El DataSource de JNDI parece obsoleto (cerrado o re-publicado por un redeploy): error de
+     * conexión (clase 08) o mensaje de DataSource/pool cerrado. Un timeout o error transitorio del
+     * pool del contenedor no cuenta: volver a buscarlo solo duplicaría la espera.
+     */
+    static boolean esDataSourceObsoleto(SQLException e) {
+        if (e instanceof SQLTransientException) return false; // incluye SQLTimeoutException
+        String st = e.getSQLState();
+        if (st != null && st.startsWith("08")) return true;
+        String msg = e.getMessage();
+        return msg != null && msg.toLowerCase().contains("closed");
+    }
+}
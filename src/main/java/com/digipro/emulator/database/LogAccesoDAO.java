@@ -1,10 +1,28 @@
 package com.digipro.emulator.database;
 
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class LogAccesoDAO {
 
+    private static final String SQL_INSERT =
+            "INSERT INTO log_accesos (" +
+                    " id_ticket, id_documento, operacion, llave_busqueda, fecha_hora, " +
+                    " ip_origen, exitoso, mensaje_error" +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_INSERT_LOTE =
+            "INSERT INTO log_accesos (" +
+                    " id_ticket, id_documento, operacion, llave_busqueda, fecha_hora, " +
+                    " ip_origen, exitoso, mensaje_error" +
+                    ") SELECT * FROM unnest(?::varchar[], ?::integer[], ?::varchar[], ?::varchar[], " +
+                    "?::timestamp[], ?::varchar[], ?::boolean[], ?::varchar[])";
+
     private final DatabaseManager db;
 
     public LogAccesoDAO() {
@@ -13,6 +31,8 @@ public class LogAccesoDAO {
 
     /**
      * Inserta un registro en log_accesos (no lanza excepción para no romper el flujo del WS).
+     * Con log.accesos.asincrono=true solo se encola (ver LogAccesosWriteBehind). Si la BD no
+     * responde y hay diario configurado, el registro se guarda en disco (ver DiarioAccesos).
      *
      * @param idTicket      token base64 del ticket o null
      * @param idDocumento   FK a documentos.id_documento o null
@@ -29,45 +49,144 @@ public class LogAccesoDAO {
                           String ipOrigen,
                           boolean exitoso,
                           String mensajeError) {
+        registrar(idTicket, idDocumento, operacion, llaveBusqueda, ipOrigen, exitoso, mensajeError, 0, -1);
+    }
+
+    /**
+     * Igual que {@link #registrar(String, Integer, String, String, String, boolean, String)}, y además
+     * cuenta la operación en el resumen por minuto (ResumenAccesos).
+     *
+     * @param proyecto    ProyectoID de la petición (0 si no aplica)
+     * @param inicioNanos System.nanoTime() al inicio de la petición, o negativo si no se midió
+     */
+    public void registrar(String idTicket,
+                          Integer idDocumento,
+                          String operacion,
+                          String llaveBusqueda,
+                          String ipOrigen,
+                          boolean exitoso,
+                          String mensajeError,
+                          int proyecto,
+                          long inicioNanos) {
+
+        long ahora = System.currentTimeMillis();
+        ResumenAccesos resumen = ResumenAccesos.get(db);
+        if (resumen != null) {
+            resumen.registrar(operacion, exitoso, proyecto, ahora, inicioNanos < 0 ? -1 : System.nanoTime() - inicioNanos);
+            // Muestreo: el resumen ya contó la operación; de las exitosas solo se guarda una fracción
+            int pct = db.getConfig().logAccesosMuestreoExitososPct;
+            if (exitoso && pct < 100 && ThreadLocalRandom.current().nextInt(100) >= pct) return;
+        }
+
+        RegistroAcceso r = new RegistroAcceso(idTicket, idDocumento, operacion, llaveBusqueda,
+                ahora, ipOrigen, exitoso, mensajeError);
 
-        final String sql =
-                "INSERT INTO log_accesos (" +
-                        " id_ticket, id_documento, operacion, llave_busqueda, fecha_hora, " +
-                        " ip_origen, exitoso, mensaje_error" +
-                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        LogAccesosWriteBehind wb = LogAccesosWriteBehind.get(db);
+        if (wb != null) {
+            wb.encolar(r); // asíncrono; si la cola está llena el descarte se cuenta allá
+            return;
+        }
 
-        try (var cn = db.getConnection();
-             var ps = cn.prepareStatement(sql)) {
+        // Con diario: si la BD está marcada caída no se pide conexión (ni se espera su timeout)
+        DiarioAccesos diario = DiarioAccesos.get(db);
+        if (diario != null && diario.bdCaida() && diario.anexar(List.of(r))) return;
+
+        try (var cn = db.getConnection()) {
+            insertarLote(cn, List.of(r));
+        } catch (Exception e) {
+            if (diario != null && diario.anexar(List.of(r))) {
+                diario.marcarCaida();
+                return;
+            }
+            // No detener el flujo del servicio por un fallo de logging
+            System.out.println("[LogAccesoDAO] No se pudo registrar log: " + e.getMessage());
+        }
+    }
+
+    /** Registros esperando en la cola asíncrona (0 si el log es síncrono). */
+    public int profundidadCola() {
+        LogAccesosWriteBehind wb = LogAccesosWriteBehind.get(db);
+        return wb == null ? 0 : wb.profundidad();
+    }
+
+    /** Registros descartados por cola llena desde el arranque. */
+    public long descartados() {
+        LogAccesosWriteBehind wb = LogAccesosWriteBehind.get(db);
+        return wb == null ? 0 : wb.descartados();
+    }
+
+    /**
+     * Inserta los registros en una sola sentencia (autocommit). Un registro: INSERT ... VALUES;
+     * varios: INSERT ... SELECT FROM unnest(arreglos), una ida al servidor por lote.
+     */
+    static void insertarLote(Connection cn, List<RegistroAcceso> rs) throws SQLException {
+        if (rs.size() == 1) {
+            insertarUno(cn, rs.get(0));
+            return;
+        }
+        int n = rs.size();
+        String[] tickets = new String[n], operaciones = new String[n], llaves = new String[n],
+                ips = new String[n], errores = new String[n];
+        Integer[] documentos = new Integer[n];
+        Timestamp[] fechas = new Timestamp[n];
+        Boolean[] exitosos = new Boolean[n];
+        for (int i = 0; i < n; i++) {
+            RegistroAcceso r = rs.get(i);
+            tickets[i] = r.idTicket;
+            documentos[i] = r.idDocumento;
+            operaciones[i] = r.operacion;
+            llaves[i] = r.llaveBusqueda;
+            fechas[i] = new Timestamp(r.fechaHora);
+            ips[i] = r.ipOrigen;
+            exitosos[i] = r.exitoso;
+            errores[i] = r.mensajeError;
+        }
+        Array[] arreglos = {
+                cn.createArrayOf("varchar", tickets),
+                cn.createArrayOf("integer", documentos),
+                cn.createArrayOf("varchar", operaciones),
+                cn.createArrayOf("varchar", llaves),
+                cn.createArrayOf("timestamp", fechas),
+                cn.createArrayOf("varchar", ips),
+                cn.createArrayOf("boolean", exitosos),
+                cn.createArrayOf("varchar", errores)
+        };
+        try (PreparedStatement ps = cn.prepareStatement(SQL_INSERT_LOTE)) {
+            for (int i = 0; i < arreglos.length; i++) ps.setArray(i + 1, arreglos[i]);
+            ps.executeUpdate();
+        } finally {
+            for (Array a : arreglos) a.free();
+        }
+    }
+
+    private static void insertarUno(Connection cn, RegistroAcceso r) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(SQL_INSERT)) {
 
             // 1: id_ticket
-            if (idTicket != null) ps.setString(1, idTicket); else ps.setNull(1, java.sql.Types.VARCHAR);
+            if (r.idTicket != null) ps.setString(1, r.idTicket); else ps.setNull(1, java.sql.Types.VARCHAR);
 
             // 2: id_documento
-            if (idDocumento != null) ps.setInt(2, idDocumento); else ps.setNull(2, java.sql.Types.INTEGER);
+            if (r.idDocumento != null) ps.setInt(2, r.idDocumento); else ps.setNull(2, java.sql.Types.INTEGER);
 
             // 3: operacion
-            ps.setString(3, operacion);
+            ps.setString(3, r.operacion);
 
             // 4: llave_busqueda
-            if (llaveBusqueda != null) ps.setString(4, llaveBusqueda); else ps.setNull(4, java.sql.Types.VARCHAR);
+            if (r.llaveBusqueda != null) ps.setString(4, r.llaveBusqueda); else ps.setNull(4, java.sql.Types.VARCHAR);
 
-            // 5: fecha_hora
-            ps.setTimestamp(5, Timestamp.from(Instant.now()));
+            // 5: fecha_hora (momento del registro, no de la escritura)
+            ps.setTimestamp(5, new Timestamp(r.fechaHora));
 
             // 6: ip_origen
-            if (ipOrigen != null) ps.setString(6, ipOrigen); else ps.setNull(6, java.sql.Types.VARCHAR);
+            if (r.ipOrigen != null) ps.setString(6, r.ipOrigen); else ps.setNull(6, java.sql.Types.VARCHAR);
 
             // 7: exitoso
-            ps.setBoolean(7, exitoso);
+            ps.setBoolean(7, r.exitoso);
 
             // 8: mensaje_error
-            if (mensajeError != null) ps.setString(8, mensajeError); else ps.setNull(8, java.sql.Types.VARCHAR);
+            if (r.mensajeError != null) ps.setString(8, r.mensajeError); else ps.setNull(8, java.sql.Types.VARCHAR);
 
             ps.executeUpdate();
-
-        } catch (Exception e) {
-            // No detener el flujo del servicio por un fallo de logging
-            System.out.println("[LogAccesoDAO] No se pudo registrar log: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,92 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantenimiento de log_accesos particionada por rango de fecha_hora (script
+ * db/opcional/log_accesos_particionado.sql): crea las particiones futuras antes de que lleguen
+ * filas para ellas y retira (DROP o DETACH) las que quedaron fuera de la retención.
+ *
+ * Los INSERT de LogAccesoDAO no cambian: PostgreSQL manda cada fila a su partición. Una fila sin
+ * partición (p. ej. del diario, de un mes ya retirado) falla con SQLState 23514 y se descarta como
+ * error de datos. Con la tabla sin particionar no se hace nada.
+ *
+ * Se ejecuta al arrancar y cada intervalo.s; solo un nodo a la vez (pg_try_advisory_lock).
+ *
+ * database.properties:
+ *   log.accesos.particion.meses=1              (solo al arrancar)
+ *   log.accesos.particiones.adelante=3
+ *   log.accesos.particiones.intervalo.s=3600   (solo al arrancar)
+ *   log.accesos.retencion.meses=0              (0 = no se retira nada)
+ *   log.accesos.retencion.archivar=false
+ */
+final class LogAccesosParticiones {
+
+    private static final long LOCK_ID = 0x4C4F_4741_4343L;
+
+    private final DatabaseManager db;
+    private final ParticionesMensuales particiones;
+    private boolean avisoSinParticionar;
+
+    private LogAccesosParticiones(DatabaseManager db, AppConfig cfg) {
+        this.db = db;
+        this.particiones = new ParticionesMensuales("log_accesos", cfg.logAccesosParticionMeses);
+    }
+
+    /** Revisa las particiones en segundo plano y programa las revisiones siguientes. */
+    static void iniciar(DatabaseManager db) {
+        AppConfig cfg = db.getConfig();
+        LogAccesosParticiones p = new LogAccesosParticiones(db, cfg);
+        BackgroundTasks.submit("log-accesos-particiones", p::ejecutar);
+        BackgroundTasks.scheduleWithFixedDelay("log-accesos-particiones", p::ejecutar,
+                cfg.logAccesosParticionesIntervaloSeg, TimeUnit.SECONDS);
+    }
+
+    synchronized void ejecutar() {
+        AppConfig cfg = db.getConfig();
+        try (Connection cn = db.getConnection()) {
+            if (!particiones.esParticionada(cn)) {
+                if (!avisoSinParticionar) {
+                    System.out.println("[LogAccesosParticiones] log_accesos no está particionada; sin mantenimiento de particiones");
+                    avisoSinParticionar = true;
+                }
+                return;
+            }
+            if (!intentarLock(cn)) return; // otro nodo lo está haciendo
+            try {
+                particiones.asegurarFuturas(cn, cfg.logAccesosParticionesAdelante);
+                if (cfg.logAccesosRetencionMeses > 0) {
+                    LocalDate limite = YearMonth.now().minusMonths(cfg.logAccesosRetencionMeses).atDay(1);
+                    List<String> retiradas = particiones.retirarAnteriores(cn, limite, cfg.logAccesosRetencionArchivar);
+                    if (!retiradas.isEmpty()) {
+                        System.out.println("[LogAccesosParticiones] Retención de " + cfg.logAccesosRetencionMeses
+                                + " meses: " + retiradas.size() + " particiones " + (cfg.logAccesosRetencionArchivar ? "desprendidas" : "eliminadas"));
+                    }
+                }
+            } finally {
+                try (Statement st = cn.createStatement()) {
+                    st.execute("SELECT pg_advisory_unlock(" + LOCK_ID + ")");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[LogAccesosParticiones] Error manteniendo particiones: " + e.getMessage());
+        }
+    }
+
+    private static boolean intentarLock(Connection cn) throws SQLException {
+        try (Statement st = cn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_ID + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Escritura asíncrona de log_accesos: registrar() encola y regresa; un escritor en segundo plano
+ * inserta en lotes (un solo INSERT ... SELECT FROM unnest por lote, ver LogAccesoDAO.insertarLote).
+ *
+ * - Cola sin locks (ConcurrentLinkedQueue) acotada con un contador: encolar es un CAS.
+ * - Se escribe cada intervalo.ms o en cuanto la cola junta un lote completo.
+ * - Cola llena: politica=descartar tira el registro; politica=bloquear espera hasta bloqueo.max.ms
+ *   a que haya lugar y luego lo tira. Los descartes se cuentan y se informan en el log.
+ *   Con diario (DiarioAccesos) el registro va al diario en vez de esperar o tirarse.
+ * - Error de conexión: el lote se reintenta en la siguiente pasada, o va al diario si lo hay.
+ *   Error de datos (SQLState 22/23, p. ej. FK): fila por fila, descartando solo las malas.
+ * - Undeploy: DatabaseManager.shutdown escribe lo pendiente.
+ *
+ * database.properties (solo al arrancar):
+ *   log.accesos.asincrono=false       (true = encolar; lo encolado se pierde si el proceso muere)
+ *   log.accesos.cola=10000
+ *   log.accesos.lote=500
+ *   log.accesos.intervalo.ms=500
+ *   log.accesos.politica=descartar     (descartar | bloquear)
+ *   log.accesos.bloqueo.max.ms=1000
+ */
+final class LogAccesosWriteBehind {
+
+    private static volatile LogAccesosWriteBehind instance;
+    private static boolean detenido;
+
+    private final DatabaseManager db;
+    private final ConcurrentLinkedQueue<RegistroAcceso> cola = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger enCola = new AtomicInteger();
+    private final int capacidad;
+    private final int lote;
+    private final boolean bloquear;
+    private final long bloqueoMaxNs;
+    /** Lote que falló y se reintenta antes de tomar más de la cola. Solo se toca con 'escritura' tomado. */
+    private final List<RegistroAcceso> reintento = new ArrayList<>();
+    private final ReentrantLock escritura = new ReentrantLock();
+    private final AtomicBoolean vaciadoSolicitado = new AtomicBoolean();
+    private final ScheduledFuture<?> tarea;
+
+    private final LongAdder escritos = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder invalidos = new LongAdder();
+    private long descartadosInformados;
+
+    private LogAccesosWriteBehind(DatabaseManager db, AppConfig cfg) {
+        this.db = db;
+        this.capacidad = cfg.logAccesosCola;
+        this.lote = cfg.logAccesosLote;
+        this.bloquear = cfg.logAccesosBloquear;
+        this.bloqueoMaxNs = TimeUnit.MILLISECONDS.toNanos(cfg.logAccesosBloqueoMaxMs);
+        this.tarea = BackgroundTasks.scheduleWithFixedDelay("log-accesos", this::vaciar,
+                cfg.logAccesosIntervaloMs, TimeUnit.MILLISECONDS);
+        System.out.println("[LogAccesosWriteBehind] Log de accesos asíncrono (cola=" + capacidad + ", lote=" + lote
+                + ", intervalo=" + cfg.logAccesosIntervaloMs + "ms, " + (bloquear ? "bloquear" : "descartar") + ")");
+    }
+
+    /** Instancia activa, o null si está deshabilitado (o ya se detuvo: se escribe en línea). */
+    static LogAccesosWriteBehind get(DatabaseManager db) {
+        LogAccesosWriteBehind wb = instance;
+        if (wb != null) return wb;
+        AppConfig cfg = db.getConfig();
+        if (!cfg.logAccesosAsincrono) return null;
+        synchronized (LogAccesosWriteBehind.class) {
+            if (instance == null && !detenido) instance = new LogAccesosWriteBehind(db, cfg);
+            return instance;
+        }
+    }
+
+    /** Escribe lo pendiente y detiene el escritor (undeploy). */
+    static synchronized void detener() {
+        detenido = true;
+        LogAccesosWriteBehind wb = instance;
+        if (wb != null) {
+            wb.tarea.cancel(false);
+            wb.vaciar();
+            System.out.println("[LogAccesosWriteBehind] Detenido. " + wb);
+            instance = null;
+        }
+    }
+
+    /**
+     * Encola el registro según la política de cola llena.
+     * @return false si se descartó
+     */
+    boolean encolar(RegistroAcceso r) {
+        if (!reservar()) {
+            DiarioAccesos diario = DiarioAccesos.get(db);
+            if (diario != null) return diario.anexar(List.of(r));
+            if (!bloquear || !esperarLugar()) {
+                descartados.increment();
+                return false;
+            }
+        }
+        cola.offer(r);
+        if (enCola.get() >= lote && vaciadoSolicitado.compareAndSet(false, true)) {
+            BackgroundTasks.submit("log-accesos-lote", this::vaciar);
+        }
+        return true;
+    }
+
+    /** Registros en cola (sin contar un lote en reintento). */
+    int profundidad() {
+        return enCola.get();
+    }
+
+    long descartados() {
+        return descartados.sum();
+    }
+
+    private boolean reservar() {
+        while (true) {
+            int n = enCola.get();
+            if (n >= capacidad) return false;
+            if (enCola.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    private boolean esperarLugar() {
+        long limite = System.nanoTime() + bloqueoMaxNs;
+        do {
+            LockSupport.parkNanos(200_000L);
+            if (reservar()) return true;
+        } while (System.nanoTime() < limite);
+        return false;
+    }
+
+    void vaciar() {
+        escritura.lock();
+        try {
+            vaciadoSolicitado.set(false);
+            while (true) {
+                if (reintento.isEmpty()) tomar(reintento);
+                if (reintento.isEmpty()) break;
+                if (!escribir(reintento)) break; // BD no disponible: siguiente pasada
+                reintento.clear();
+            }
+            long d = descartados.sum();
+            if (d != descartadosInformados) {
+                System.err.println("[LogAccesosWriteBehind] Registros descartados por cola llena: " + (d - descartadosInformados)
+                        + " (total " + d + ")");
+                descartadosInformados = d;
+            }
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    private void tomar(List<RegistroAcceso> destino) {
+        RegistroAcceso r;
+        while (destino.size() < lote && (r = cola.poll()) != null) {
+            enCola.decrementAndGet();
+            destino.add(r);
+        }
+    }
+
+    /** @return true si el lote quedó resuelto (escrito o descartado); false si hay que reintentarlo. */
+    private boolean escribir(List<RegistroAcceso> rs) {
+        DiarioAccesos diario = DiarioAccesos.get(db);
+        if (diario != null && diario.bdCaida() && diario.anexar(rs)) return true;
+        try (Connection cn = db.getConnection()) {
+            try {
+                LogAccesoDAO.insertarLote(cn, rs);
+                escritos.add(rs.size());
+                return true;
+            } catch (SQLException e) {
+                if (!ErroresSql.esErrorDeDatos(e)) throw e;
+                for (RegistroAcceso r : rs) {
+                    try {
+                        LogAccesoDAO.insertarLote(cn, List.of(r));
+                        escritos.increment();
+                    } catch (SQLException fila) {
+                        if (!ErroresSql.esErrorDeDatos(fila)) throw fila;
+                        invalidos.increment();
+                        System.err.println("[LogAccesosWriteBehind] Registro descartado: " + fila.getMessage());
+                    }
+                }
+                return true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (diario != null && diario.anexar(rs)) {
+                diario.marcarCaida();
+                System.err.println("[LogAccesosWriteBehind] BD no disponible, " + rs.size() + " registros al diario: " + e.getMessage());
+                return true;
+            }
+            System.err.println("[LogAccesosWriteBehind] No se pudo escribir lote de " + rs.size()
+                    + " registros, se reintenta: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LogAccesosWriteBehind[enCola=" + enCola.get() + ", escritos=" + escritos.sum()
+                + ", descartados=" + descartados.sum() + ", invalidos=" + invalidos.sum() + "]";
+    }
+}
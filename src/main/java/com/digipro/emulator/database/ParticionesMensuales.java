@@ -0,0 +1,128 @@
+package com.digipro.emulator.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mantenimiento de una tabla particionada por rango mensual (PARTITION BY RANGE sobre una fecha).
+ *
+ * Convención: cada partición se llama {tabla}_pYYYYMM y cubre [YYYY-MM-01, YYYY-MM-01 + meses).
+ * Con meses > 1 las particiones se alinean al año (meses = 3: enero, abril, julio, octubre).
+ * Crea por adelantado las particiones de los próximos meses y retira (DROP o DETACH) las que
+ * terminaron antes de un límite: borrar un mes completo es O(1) y no deja filas muertas.
+ *
+ * Las particiones que no siguen la convención (p. ej. una DEFAULT) no se tocan.
+ */
+final class ParticionesMensuales {
+
+    private static final DateTimeFormatter SUFIJO = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final String tabla;
+    private final int meses;
+
+    ParticionesMensuales(String tabla) {
+        this(tabla, 1);
+    }
+
+    /** @param meses meses por partición; divisor de 12 (1, 2, 3, 4, 6 o 12) */
+    ParticionesMensuales(String tabla, int meses) {
+        if (meses <= 0 || 12 % meses != 0) throw new IllegalArgumentException("Meses por partición inválidos: " + meses);
+        this.tabla = tabla;
+        this.meses = meses;
+    }
+
+    /** true si la tabla existe y está particionada (relkind 'p'). */
+    boolean esParticionada(Connection cn) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "SELECT relkind FROM pg_class WHERE oid = to_regclass(?)")) {
+            ps.setString(1, tabla);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && "p".equals(rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Crea (si faltan) la partición actual y las {@code adelante} siguientes.
+     * @return particiones creadas
+     */
+    int asegurarFuturas(Connection cn, int adelante) throws SQLException {
+        List<String> existentes = particiones(cn);
+        YearMonth mes = inicio(YearMonth.now());
+        int creadas = 0;
+        for (int i = 0; i <= adelante; i++, mes = mes.plusMonths(meses)) {
+            String nombre = nombre(mes);
+            if (existentes.contains(nombre)) continue;
+            try (Statement st = cn.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS " + nombre + " PARTITION OF " + tabla +
+                        " FOR VALUES FROM ('" + mes.atDay(1) + "') TO ('" + mes.plusMonths(meses).atDay(1) + "')");
+            }
+            System.out.println("[ParticionesMensuales] Partición creada: " + nombre);
+            creadas++;
+        }
+        return creadas;
+    }
+
+    /**
+     * Retira las particiones que terminan en o antes de {@code limite}.
+     * @param soloDesprender true = DETACH (la tabla queda como histórico independiente), false = DROP
+     * @return nombres de las particiones retiradas
+     */
+    List<String> retirarAnteriores(Connection cn, LocalDate limite, boolean soloDesprender) throws SQLException {
+        List<String> retiradas = new ArrayList<>();
+        for (String nombre : particiones(cn)) {
+            YearMonth mes = mes(nombre);
+            if (mes == null || mes.plusMonths(meses).atDay(1).isAfter(limite)) continue;
+            try (Statement st = cn.createStatement()) {
+                st.execute(soloDesprender
+                        ? "ALTER TABLE " + tabla + " DETACH PARTITION " + nombre
+                        : "DROP TABLE " + nombre);
+            }
+            System.out.println("[ParticionesMensuales] Partición " + (soloDesprender ? "desprendida" : "eliminada") + ": " + nombre);
+            retiradas.add(nombre);
+        }
+        return retiradas;
+    }
+
+    /** Particiones actuales de la tabla. */
+    private List<String> particiones(Connection cn) throws SQLException {
+        List<String> out = new ArrayList<>();
+        try (PreparedStatement ps = cn.prepareStatement(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = to_regclass(?) ORDER BY c.relname")) {
+            ps.setString(1, tabla);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+        }
+        return out;
+    }
+
+    /** Primer mes de la partición que contiene a {@code mes}. */
+    YearMonth inicio(YearMonth mes) {
+        return mes.minusMonths((mes.getMonthValue() - 1) % meses);
+    }
+
+    String nombre(YearMonth mes) {
+        return tabla + "_p" + mes.format(SUFIJO);
+    }
+
+    /** Mes de una partición {tabla}_pYYYYMM, o null si el nombre no sigue la convención. */
+    YearMonth mes(String particion) {
+        String prefijo = tabla + "_p";
+        if (!particion.startsWith(prefijo) || particion.length() != prefijo.length() + 6) return null;
+        try {
+            return YearMonth.parse(particion.substring(prefijo.length()), SUFIJO);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.digipro.emulator.database;
+
+/** Fila de log_accesos pendiente de escribir (inmutable). fechaHora en ms, tomada al registrar. */
+final class RegistroAcceso {
+    final String idTicket;
+    final Integer idDocumento;
+    final String operacion;
+    final String llaveBusqueda;
+    final long fechaHora;
+    final String ipOrigen;
+    final boolean exitoso;
+    final String mensajeError;
+
+    RegistroAcceso(String idTicket, Integer idDocumento, String operacion, String llaveBusqueda,
+                   long fechaHora, String ipOrigen, boolean exitoso, String mensajeError) {
+        this.idTicket = idTicket;
+        this.idDocumento = idDocumento;
+        this.operacion = operacion;
+        this.llaveBusqueda = llaveBusqueda;
+        this.fechaHora = fechaHora;
+        this.ipOrigen = ipOrigen;
+        this.exitoso = exitoso;
+        this.mensajeError = mensajeError;
+    }
+}
@@ -0,0 +1,158 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enruta las consultas de solo lectura a réplicas de PostgreSQL.
+ *
+ * Cada réplica tiene su propio {@link ConnectionPool} (mismas claves db.pool.*, db.name, db.user, db.password,
+ * salvo la espera al prestar: db.replica.pool.timeout.ms). Un chequeo periódico mide el retraso de
+ * replicación; una réplica solo recibe lecturas si responde y su retraso es menor a db.replica.lag.max.ms.
+ * Si ninguna está disponible o todas tienen el pool lleno, getConnection() devuelve null y
+ * DatabaseManager usa el primario.
+ *
+ * database.properties (solo al arrancar):
+ *   db.replicas=replica1:5432,replica2:5432   (vacío = sin réplicas)
+ *   db.replica.lag.max.ms=5000
+ *   db.replica.chequeo.ms=5000
+ *   db.replica.pool.timeout.ms=0              (0 = no esperar: pool lleno → siguiente réplica o primario)
+ */
+final class ReplicaRouter {
+
+    /**
+     * Retraso en ms, o NULL si no se puede saber (réplica desconectada del primario o sin nada
+     * aplicado todavía) → fuera de rotación.
+     *
+     * "Todo lo recibido ya se aplicó" solo significa al día (0) si el walreceiver sigue recibiendo:
+     * una réplica desconectada también tiene receive = replay. Sin pg_read_all_stats (pg_monitor)
+     * las columnas de pg_stat_wal_receiver llegan null y solo se comprueba que el proceso exista.
+     * Si no es réplica (no está en recuperación) el retraso es 0.
+     */
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+                    "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver " +
+                    "WHERE COALESCE(status, 'streaming') = 'streaming') THEN NULL " +
+                    "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                    "ELSE EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000 END";
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger siguiente = new AtomicInteger();
+    private final long lagMaxMs;
+    private final ScheduledFuture<?> chequeo;
+
+    ReplicaRouter(String hosts, String dbName, String user, String password, Properties props, AppConfig cfg) {
+        this.lagMaxMs = cfg.dbReplicaLagMaxMs;
+        long chequeoMs = Math.max(1000, cfg.dbReplicaChequeoMs);
+
+        for (String h : hosts.split(",")) {
+            String hostPort = h.trim();
+            if (hostPort.isEmpty()) continue;
+            if (!hostPort.contains(":")) hostPort = hostPort + ":5432";
+            String url = "jdbc:postgresql://" + hostPort + "/" + dbName;
+            replicas.add(new Replica(hostPort, new ConnectionPool("replica-" + hostPort, url, user, password, props,
+                    cfg.dbReplicaPoolTimeoutMs)));
+        }
+
+        BackgroundTasks.submit("replicas-chequeo-inicio", this::chequear);
+        this.chequeo = BackgroundTasks.scheduleWithFixedDelay("replicas-chequeo", this::chequear, chequeoMs, TimeUnit.MILLISECONDS);
+        System.out.println("[ReplicaRouter] Réplicas de lectura configuradas: " + replicas.size()
+                + " (lag máximo " + lagMaxMs + "ms)");
+    }
+
+    boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Conexión de una réplica sana (round-robin), o null si ninguna está disponible.
+     * Una réplica con el pool lleno se salta; solo una falla de conexión la marca no disponible
+     * hasta el próximo chequeo.
+     */
+    Connection getConnection() {
+        int n = replicas.size();
+        if (n == 0) return null;
+        int inicio = Math.floorMod(siguiente.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((inicio + i) % n);
+            if (!r.disponible) continue;
+            try {
+                return r.pool.borrow();
+            } catch (SQLTimeoutException e) {
+                // saturada, no caída: se intenta la siguiente
+            } catch (SQLException e) {
+                r.disponible = false;
+                System.err.println("[ReplicaRouter] Réplica " + r.nombre + " no disponible: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    void close() {
+        chequeo.cancel(false);
+        for (Replica r : replicas) {
+            r.pool.close();
+        }
+    }
+
+    private void chequear() {
+        for (Replica r : replicas) {
+            boolean antes = r.disponible;
+            try {
+                r.lagMs = medirLag(r.pool);
+            } catch (SQLTimeoutException e) {
+                continue; // pool lleno: la réplica responde, se mide en el siguiente chequeo
+            } catch (SQLException e) {
+                r.lagMs = Long.MAX_VALUE;
+            }
+            r.disponible = r.lagMs <= lagMaxMs;
+            if (antes != r.disponible) {
+                System.out.println("[ReplicaRouter] Réplica " + r.nombre + (r.disponible ? " disponible" : " fuera de rotación")
+                        + " (lag=" + (r.lagMs == Long.MAX_VALUE ? "?" : r.lagMs + "ms") + ")");
+            }
+        }
+    }
+
+    /**
+     * Retraso de la réplica en ms (Long.MAX_VALUE si no se puede saber).
+     * @throws SQLTimeoutException solo si el pool está lleno
+     */
+    private static long medirLag(ConnectionPool pool) throws SQLException {
+        Connection cn = pool.borrow();
+        try (Connection c = cn;
+             Statement st = c.createStatement()) {
+            st.setQueryTimeout(5);
+            try (ResultSet rs = st.executeQuery(LAG_SQL)) {
+                if (!rs.next()) return Long.MAX_VALUE;
+                long lag = rs.getLong(1);
+                return rs.wasNull() ? Long.MAX_VALUE : lag; // sin conexión al primario
+            }
+        } catch (SQLTimeoutException e) {
+            throw new SQLException("Timeout midiendo el retraso: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Replica {
+        final String nombre;
+        final ConnectionPool pool;
+        volatile boolean disponible;
+        volatile long lagMs = Long.MAX_VALUE;
+
+        Replica(String nombre, ConnectionPool pool) {
+            this.nombre = nombre;
+            this.pool = pool;
+        }
+    }
+}
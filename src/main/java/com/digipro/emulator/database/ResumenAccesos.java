@@ -0,0 +1,227 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores por minuto de log_accesos: total, duración acumulada, máxima e histograma por
+ * operación, resultado y proyecto. Se alimentan de las mismas llamadas a LogAccesoDAO.registrar y
+ * se escriben cada intervalo.s en log_accesos_resumen (migración V4), una fila por combinación.
+ * Los tableros consultan el resumen en vez de agrupar log_accesos.
+ *
+ * Solo se escriben minutos ya cerrados (el actual sigue acumulando); al detener se escribe todo.
+ * Varios nodos suman sobre la misma fila (ON CONFLICT ... DO UPDATE). Cada pasada se escribe en una
+ * sola transacción: si falla no queda nada sumado y las filas se conservan para la siguiente pasada
+ * (hasta pendientes.max, después se descartan), sin contar dos veces las que ya habían entrado.
+ *
+ * Con el resumen activo, log.accesos.muestreo.exitosos.pct permite guardar en log_accesos solo
+ * una fracción de las filas exitosas (los errores siempre se guardan).
+ *
+ * database.properties:
+ *   log.accesos.resumen.habilitado=false   (requiere la tabla de la migración V4)
+ *   log.accesos.resumen.intervalo.s=60     (solo al arrancar)
+ *   log.accesos.muestreo.exitosos.pct=100
+ */
+final class ResumenAccesos {
+
+    /** Cubetas del histograma: [0] menos de 1 ms, [i] de 2^(i-1) a 2^i ms, [15] 16.4 s o más. */
+    static final int CUBETAS = 16;
+
+    /** Filas retenidas como máximo si la BD no acepta el resumen. */
+    private static final int PENDIENTES_MAX = 100_000;
+
+    private static final String SQL_UPSERT =
+            "INSERT INTO log_accesos_resumen AS r " +
+                    "(minuto, operacion, exitoso, proyecto, total, duracion_total_us, duracion_max_us, histograma) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (minuto, operacion, exitoso, proyecto) DO UPDATE SET " +
+                    "  total = r.total + EXCLUDED.total, " +
+                    "  duracion_total_us = r.duracion_total_us + EXCLUDED.duracion_total_us, " +
+                    "  duracion_max_us = GREATEST(r.duracion_max_us, EXCLUDED.duracion_max_us), " +
+                    "  histograma = ARRAY(SELECT a + b FROM unnest(r.histograma, EXCLUDED.histograma) AS h(a, b))";
+
+    private static volatile ResumenAccesos instance;
+    private static boolean detenido;
+
+    private final DatabaseManager db;
+    private final ConcurrentHashMap<Clave, Celda> celdas = new ConcurrentHashMap<>();
+    /** Filas tomadas que no se pudieron escribir. Solo se toca dentro de synchronized(this). */
+    private final List<Fila> pendientes = new ArrayList<>();
+    private final ScheduledFuture<?> tarea;
+    private final LongAdder descartadas = new LongAdder();
+
+    private ResumenAccesos(DatabaseManager db, AppConfig cfg) {
+        this.db = db;
+        this.tarea = BackgroundTasks.scheduleWithFixedDelay("log-accesos-resumen", () -> escribir(false),
+                cfg.logAccesosResumenIntervaloSeg, TimeUnit.SECONDS);
+        System.out.println("[ResumenAccesos] Resumen por minuto cada " + cfg.logAccesosResumenIntervaloSeg + "s"
+                + (cfg.logAccesosMuestreoExitososPct < 100 ? " (muestreo de exitosos: " + cfg.logAccesosMuestreoExitososPct + "%)" : ""));
+    }
+
+    /** Instancia activa, o null si el resumen está deshabilitado. */
+    static ResumenAccesos get(DatabaseManager db) {
+        ResumenAccesos r = instance;
+        if (r != null) return r;
+        AppConfig cfg = db.getConfig();
+        if (!cfg.logAccesosResumen) return null;
+        synchronized (ResumenAccesos.class) {
+            if (instance == null && !detenido) instance = new ResumenAccesos(db, cfg);
+            return instance;
+        }
+    }
+
+    /** Escribe todo lo acumulado, incluido el minuto en curso (undeploy). */
+    static synchronized void detener() {
+        detenido = true;
+        ResumenAccesos r = instance;
+        if (r != null) {
+            r.tarea.cancel(false);
+            r.escribir(true);
+            instance = null;
+        }
+    }
+
+    /**
+     * Cuenta una operación.
+     * @param duracionNanos duración de la petición, o negativo si no se midió (solo cuenta)
+     */
+    void registrar(String operacion, boolean exitoso, int proyecto, long fechaHora, long duracionNanos) {
+        Clave k = new Clave(fechaHora / 60_000L, operacion, exitoso, proyecto);
+        Celda c = celdas.computeIfAbsent(k, x -> new Celda());
+        c.total.increment();
+        if (duracionNanos >= 0) {
+            long us = duracionNanos / 1_000L;
+            c.duracionUs.add(us);
+            c.maxUs.accumulate(us);
+            c.histograma.incrementAndGet(cubeta(us / 1_000L));
+        }
+    }
+
+    static int cubeta(long ms) {
+        return Math.min(CUBETAS - 1, 64 - Long.numberOfLeadingZeros(ms));
+    }
+
+    private synchronized void escribir(boolean todo) {
+        long minutoActual = System.currentTimeMillis() / 60_000L;
+        for (Map.Entry<Clave, Celda> e : celdas.entrySet()) {
+            Clave k = e.getKey();
+            if (!todo && k.minuto >= minutoActual) continue;
+            // remove antes de leer: un registrar() que alcanzó la celda vieja puede perderse (a lo más
+            // unas cuantas peticiones en el cambio de minuto, que ya terminó hace un intervalo)
+            if (celdas.remove(k, e.getValue())) pendientes.add(new Fila(k, e.getValue()));
+        }
+        if (pendientes.isEmpty()) return;
+
+        try (Connection cn = db.getConnection()) {
+            upsert(cn, pendientes);
+            pendientes.clear();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("[ResumenAccesos] No se pudo escribir el resumen (" + pendientes.size() + " filas): " + e.getMessage());
+            if (pendientes.size() > PENDIENTES_MAX) {
+                int n = pendientes.size() - PENDIENTES_MAX;
+                pendientes.subList(0, n).clear(); // los minutos más viejos
+                descartadas.add(n);
+            }
+        }
+    }
+
+    /** Todas las filas o ninguna: un reintento tras un fallo no debe sumar dos veces. */
+    private static void upsert(Connection cn, List<Fila> filas) throws SQLException {
+        boolean autoCommit = cn.getAutoCommit();
+        cn.setAutoCommit(false);
+        try (PreparedStatement ps = cn.prepareStatement(SQL_UPSERT)) {
+            for (Fila f : filas) {
+                Array hist = cn.createArrayOf("bigint", f.histograma);
+                ps.setTimestamp(1, new Timestamp(f.clave.minuto * 60_000L));
+                ps.setString(2, f.clave.operacion);
+                ps.setBoolean(3, f.clave.exitoso);
+                ps.setInt(4, f.clave.proyecto);
+                ps.setLong(5, f.total);
+                ps.setLong(6, f.duracionUs);
+                ps.setLong(7, f.maxUs);
+                ps.setArray(8, hist);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            cn.commit();
+        } catch (SQLException | RuntimeException e) {
+            cn.rollback();
+            throw e;
+        } finally {
+            cn.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResumenAccesos[celdas=" + celdas.size() + ", descartadas=" + descartadas.sum() + "]";
+    }
+
+    private static final class Clave {
+        final long minuto;
+        final String operacion;
+        final boolean exitoso;
+        final int proyecto;
+        private final int hash;
+
+        Clave(long minuto, String operacion, boolean exitoso, int proyecto) {
+            this.minuto = minuto;
+            this.operacion = operacion == null ? "" : operacion;
+            this.exitoso = exitoso;
+            this.proyecto = proyecto;
+            this.hash = Objects.hash(minuto, this.operacion, exitoso, proyecto);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Clave)) return false;
+            Clave k = (Clave) o;
+            return minuto == k.minuto && exitoso == k.exitoso && proyecto == k.proyecto && operacion.equals(k.operacion);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Celda {
+        final LongAdder total = new LongAdder();
+        final LongAdder duracionUs = new LongAdder();
+        final LongAccumulator maxUs = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray histograma = new AtomicLongArray(CUBETAS);
+    }
+
+    /** Celda ya retirada del mapa, con sus valores fijos. */
+    private static final class Fila {
+        final Clave clave;
+        final long total;
+        final long duracionUs;
+        final long maxUs;
+        final Long[] histograma = new Long[CUBETAS];
+
+        Fila(Clave clave, Celda c) {
+            this.clave = clave;
+            this.total = c.total.sum();
+            this.duracionUs = c.duracionUs.sum();
+            this.maxUs = c.maxUs.get();
+            for (int i = 0; i < CUBETAS; i++) histograma[i] = c.histograma.get(i);
+        }
+    }
+}
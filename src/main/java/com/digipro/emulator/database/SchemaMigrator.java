@@ -0,0 +1,241 @@
+package com.digipro.emulator.database;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Migraciones versionadas del esquema (índices de las rutas de consulta).
+ *
+ * Los scripts viven en el classpath bajo db/migration/ con nombre V{n}__{descripcion}.sql y se
+ * registran en MIGRACIONES (un WAR no permite listar el directorio de forma confiable).
+ * Cada versión se aplica una sola vez, dentro de una transacción, y queda anotada en schema_version
+ * con el checksum del script. Un advisory lock evita que dos nodos migren a la vez: el que no lo
+ * obtiene no espera (una espera abierta bloquearía el CREATE INDEX CONCURRENTLY del otro nodo)
+ * y omite las migraciones en ese arranque.
+ *
+ * Los scripts deben ser idempotentes (IF NOT EXISTS) y las sentencias terminar en ';' al final de línea.
+ *
+ * Un script con la línea "-- migracion: sin-transaccion" se ejecuta sentencia por sentencia en
+ * autocommit (necesario para CREATE INDEX CONCURRENTLY, que no bloquea las escrituras de la tabla).
+ * Si falla a la mitad no queda anotado y se reintenta completo al siguiente arranque; un índice
+ * que quedó INVALID por un CONCURRENTLY interrumpido se elimina antes de volver a crearlo.
+ *
+ * database.properties:
+ *   db.migraciones.habilitadas=false  (se ejecutan en segundo plano al arrancar DatabaseManager)
+ */
+public final class SchemaMigrator {
+
+    /** En orden de versión. Agregar aquí cada script nuevo. */
+    private static final String[] MIGRACIONES = {
+            "V1__indices_busqueda.sql",
+            "V2__depuracion_tickets.sql",
+            "V3__ultimo_acceso_tickets.sql",
+            "V4__log_accesos_resumen.sql",
+    };
+
+    private static final String DIRECTORIO = "db/migration/";
+
+    /** Clave del advisory lock (arbitraria, fija para todos los nodos). */
+    private static final long LOCK_ID = 0x4449_4750_524FL;
+
+    private static final String CREAR_TABLA =
+            "CREATE TABLE IF NOT EXISTS schema_version (" +
+                    " version INTEGER PRIMARY KEY," +
+                    " descripcion VARCHAR(200) NOT NULL," +
+                    " checksum BIGINT NOT NULL," +
+                    " aplicada_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final String SIN_TRANSACCION = "-- migracion: sin-transaccion";
+
+    private static final Pattern INDICE_CONCURRENTE = Pattern.compile(
+            "(?i)^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+CONCURRENTLY\\s+IF\\s+NOT\\s+EXISTS\\s+(\\w+)");
+
+    private final DatabaseManager db;
+
+    SchemaMigrator(DatabaseManager db) {
+        this.db = db;
+    }
+
+    /**
+     * Aplica las versiones pendientes.
+     * @return número de versiones aplicadas, o -1 si otro nodo está migrando
+     */
+    public int migrar() throws SQLException {
+        try (Connection cn = db.getConnection()) {
+            try (Statement st = cn.createStatement()) {
+                st.execute(CREAR_TABLA);
+                try (ResultSet rs = st.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_ID + ")")) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        System.out.println("[SchemaMigrator] Otro nodo está aplicando migraciones; se omiten en este arranque");
+                        return -1;
+                    }
+                }
+            }
+            try {
+                return aplicarPendientes(cn);
+            } finally {
+                try (Statement st = cn.createStatement()) {
+                    st.execute("SELECT pg_advisory_unlock(" + LOCK_ID + ")");
+                }
+            }
+        }
+    }
+
+    private int aplicarPendientes(Connection cn) throws SQLException {
+        Map<Integer, Long> aplicadas = leerAplicadas(cn);
+        int n = 0;
+        for (String archivo : MIGRACIONES) {
+            int version = version(archivo);
+            String script = leer(archivo);
+            long checksum = checksum(script);
+
+            Long previo = aplicadas.get(version);
+            if (previo != null) {
+                if (previo != checksum) {
+                    System.err.println("[SchemaMigrator] El script " + archivo
+                            + " cambió después de aplicarse (checksum distinto); no se vuelve a ejecutar");
+                }
+                continue;
+            }
+
+            if (script.contains(SIN_TRANSACCION)) {
+                aplicarSinTransaccion(cn, archivo, script, version, checksum);
+                System.out.println("[SchemaMigrator] Migración aplicada: " + archivo);
+                n++;
+                continue;
+            }
+
+            boolean autoCommit = cn.getAutoCommit();
+            cn.setAutoCommit(false);
+            try (Statement st = cn.createStatement()) {
+                for (String sql : sentencias(script)) {
+                    st.execute(sql);
+                }
+                anotar(cn, archivo, version, checksum);
+                cn.commit();
+            } catch (SQLException e) {
+                cn.rollback();
+                throw new SQLException("Error aplicando migración " + archivo + ": " + e.getMessage(), e.getSQLState(), e);
+            } finally {
+                cn.setAutoCommit(autoCommit);
+            }
+            System.out.println("[SchemaMigrator] Migración aplicada: " + archivo);
+            n++;
+        }
+        return n;
+    }
+
+    /** Cada sentencia en su propia transacción implícita; se anota solo si todas terminan bien. */
+    private static void aplicarSinTransaccion(Connection cn, String archivo, String script,
+                                              int version, long checksum) throws SQLException {
+        boolean autoCommit = cn.getAutoCommit();
+        cn.setAutoCommit(true);
+        try (Statement st = cn.createStatement()) {
+            for (String sql : sentencias(script)) {
+                Matcher m = INDICE_CONCURRENTE.matcher(sql);
+                if (m.find()) eliminarSiInvalido(cn, m.group(1));
+                st.execute(sql);
+            }
+            anotar(cn, archivo, version, checksum);
+        } catch (SQLException e) {
+            throw new SQLException("Error aplicando migración " + archivo + ": " + e.getMessage(), e.getSQLState(), e);
+        } finally {
+            cn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** IF NOT EXISTS no distingue un índice INVALID (CONCURRENTLY interrumpido): se quita para rehacerlo. */
+    private static void eliminarSiInvalido(Connection cn, String indice) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "SELECT 1 FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid " +
+                        "WHERE c.relname = ? AND pg_table_is_visible(c.oid) AND NOT i.indisvalid")) {
+            ps.setString(1, indice.toLowerCase());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+            }
+        }
+        System.out.println("[SchemaMigrator] Índice " + indice + " inválido (creación interrumpida); se vuelve a crear");
+        try (Statement st = cn.createStatement()) {
+            st.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indice);
+        }
+    }
+
+    private static void anotar(Connection cn, String archivo, int version, long checksum) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "INSERT INTO schema_version (version, descripcion, checksum) VALUES (?, ?, ?)")) {
+            ps.setInt(1, version);
+            ps.setString(2, descripcion(archivo));
+            ps.setLong(3, checksum);
+            ps.executeUpdate();
+        }
+    }
+
+    private static Map<Integer, Long> leerAplicadas(Connection cn) throws SQLException {
+        Map<Integer, Long> aplicadas = new HashMap<>();
+        try (Statement st = cn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                aplicadas.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return aplicadas;
+    }
+
+    private static String leer(String archivo) {
+        try (InputStream is = SchemaMigrator.class.getClassLoader().getResourceAsStream(DIRECTORIO + archivo)) {
+            if (is == null) {
+                throw new IllegalStateException("No se encontró " + DIRECTORIO + archivo + " en el classpath");
+            }
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("No se pudo leer " + DIRECTORIO + archivo, e);
+        }
+    }
+
+    /** Separa el script en sentencias: sin comentarios de línea, cortando en ';' al final de línea. */
+    private static List<String> sentencias(String script) {
+        List<String> out = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        for (String linea : script.split("\r?\n")) {
+            String l = linea.trim();
+            if (l.isEmpty() || l.startsWith("--")) continue;
+            if (actual.length() > 0) actual.append('\n');
+            if (l.endsWith(";")) {
+                actual.append(l, 0, l.length() - 1);
+                out.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(l);
+            }
+        }
+        if (actual.length() > 0) out.add(actual.toString());
+        return out;
+    }
+
+    /** Checksum del script sin espacios finales ni diferencias de fin de línea. */
+    private static long checksum(String script) {
+        CRC32 crc = new CRC32();
+        crc.update(script.replace("\r\n", "\n").trim().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static int version(String archivo) {
+        return Integer.parseInt(archivo.substring(1, archivo.indexOf("__")));
+    }
+
+    private static String descripcion(String archivo) {
+        return archivo.substring(archivo.indexOf("__") + 2, archivo.length() - ".sql".length()).replace('_', ' ');
+    }
+}
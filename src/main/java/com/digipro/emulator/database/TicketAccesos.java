@@ -0,0 +1,130 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiración deslizante: acumula en memoria el último acceso de cada ticket y lo escribe en
+ * un solo UPDATE por intervalo (no una escritura por petición).
+ *
+ * Cada flush extiende fecha_expiracion a ultimo_acceso + ticket.tiempo.vida.minutos, sin pasar de
+ * fecha_creacion + ticket.deslizante.max.horas y sin revivir tickets ya vencidos o desactivados.
+ * Las expiraciones resultantes (RETURNING) se publican en TicketCache; entre flushes la caché local
+ * ya refleja la extensión (sin el tope), así que el exceso posible es de un intervalo.
+ *
+ * No aplica a tickets firmados: su expiración va dentro del token.
+ *
+ * database.properties:
+ *   ticket.expiracion.deslizante=false
+ *   ticket.deslizante.flush.ms=5000     (solo al arrancar)
+ *   ticket.deslizante.max.horas=12
+ */
+final class TicketAccesos {
+
+    private static final String SQL_EXTENDER =
+            "UPDATE tickets t " +
+                    "   SET fecha_ultimo_acceso = v.ultimo, " +
+                    "       fecha_expiracion = LEAST(t.fecha_creacion + make_interval(hours => ?), " +
+                    "                                GREATEST(t.fecha_expiracion, v.ultimo + make_interval(mins => ?))) " +
+                    "  FROM unnest(?::varchar[], ?::timestamp[]) AS v(id_ticket, ultimo) " +
+                    " WHERE t.id_ticket = v.id_ticket " +
+                    "   AND t.activo = true " +
+                    "   AND t.fecha_expiracion > v.ultimo " +
+                    "RETURNING t.id_ticket, t.fecha_expiracion, t.fecha_creacion";
+
+    private static volatile TicketAccesos instance;
+    private static boolean detenido;
+
+    private final DatabaseManager db;
+    /** token → último acceso (ms). Los toques repetidos del mismo ticket se funden en uno. */
+    private final ConcurrentHashMap<String, Long> toques = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> tarea;
+
+    private TicketAccesos(DatabaseManager db, AppConfig cfg) {
+        this.db = db;
+        this.tarea = BackgroundTasks.scheduleWithFixedDelay("tickets-accesos", this::escribir,
+                cfg.ticketDeslizanteFlushMs, TimeUnit.MILLISECONDS);
+        System.out.println("[TicketAccesos] Expiración deslizante activa (flush cada " + cfg.ticketDeslizanteFlushMs + "ms)");
+    }
+
+    /** Instancia activa, o null si la expiración deslizante está deshabilitada. */
+    static TicketAccesos get(DatabaseManager db) {
+        TicketAccesos ta = instance;
+        if (ta != null) return ta;
+        AppConfig cfg = db.getConfig();
+        if (!cfg.ticketExpiracionDeslizante) return null;
+        synchronized (TicketAccesos.class) {
+            if (instance == null && !detenido) instance = new TicketAccesos(db, cfg);
+            return instance;
+        }
+    }
+
+    /** Escribe los accesos pendientes y detiene el flush (undeploy). */
+    static synchronized void detener() {
+        detenido = true;
+        TicketAccesos ta = instance;
+        if (ta != null) {
+            ta.tarea.cancel(false);
+            ta.escribir();
+            instance = null;
+        }
+    }
+
+    void tocar(String token, long ahora) {
+        toques.merge(token, ahora, Math::max);
+    }
+
+    private synchronized void escribir() {
+        if (toques.isEmpty()) return;
+        Map<String, Long> lote = new HashMap<>();
+        for (String token : new ArrayList<>(toques.keySet())) {
+            Long ultimo = toques.remove(token);
+            if (ultimo != null) lote.put(token, ultimo);
+        }
+        if (lote.isEmpty()) return;
+
+        AppConfig cfg = db.getConfig();
+        List<String> tokens = new ArrayList<>(lote.keySet());
+        Timestamp[] ultimos = new Timestamp[tokens.size()];
+        for (int i = 0; i < ultimos.length; i++) ultimos[i] = new Timestamp(lote.get(tokens.get(i)));
+
+        TicketCache cache = TicketCache.getInstance();
+        try (Connection cn = db.getConnection();
+             PreparedStatement ps = cn.prepareStatement(SQL_EXTENDER)) {
+            Array aTokens = cn.createArrayOf("varchar", tokens.toArray());
+            Array aUltimos = cn.createArrayOf("timestamp", ultimos);
+            try {
+                ps.setInt(1, cfg.ticketDeslizanteMaxHoras);
+                ps.setInt(2, cfg.ticketTiempoVidaMinutos);
+                ps.setArray(3, aTokens);
+                ps.setArray(4, aUltimos);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        cache.putVigente(cfg, rs.getString(1), rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime());
+                    }
+                }
+            } finally {
+                aTokens.free();
+                aUltimos.free();
+            }
+        } catch (SQLException e) {
+            // Se devuelven a la cola: el siguiente flush los reintenta (fundidos con los toques nuevos)
+            lote.forEach((token, ultimo) -> toques.merge(token, ultimo, Math::max));
+            System.err.println("[TicketAccesos] No se pudieron registrar " + lote.size() + " accesos: " + e.getMessage());
+        }
+    }
+}
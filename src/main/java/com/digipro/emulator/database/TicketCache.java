@@ -0,0 +1,194 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché local de validación de tickets: token → fecha de expiración.
+ *
+ * - Positivos: se llenan al crear el ticket y en la primera consulta a BD. Valen hasta su
+ *   fecha_expiracion, pero se vuelven a confirmar en BD cada cache.tickets.revalidacion.s para que
+ *   una desactivación hecha en otro nodo se note en un tiempo acotado.
+ * - Negativos (no existe / inactivo / expirado): TTL corto, cache.tickets.negativo.ms.
+ * - TicketDAO.desactivar deja en este nodo una marca de desactivado por al menos una revalidación.
+ *   Mientras dure ninguna escritura la reemplaza: una validación que leyó el ticket activo justo
+ *   antes del logout (o de una réplica atrasada) no lo vuelve a dar por vigente.
+ * - Expiración deslizante: extender() aplica en la caché la misma regla que el UPDATE de
+ *   TicketAccesos, con tope fecha_creacion + ticket.deslizante.max.horas. Si no se conoce la
+ *   fecha de creación (entrada leída de BD) no se extiende aquí; llega con el siguiente flush.
+ * - Llena, cada alta revisa una muestra acotada de entradas: quita las vencidas o, si ninguna lo
+ *   está, la que se revalida primero. La revisión sigue donde quedó la anterior (como un reloj),
+ *   así que el costo por alta es fijo y con el tiempo se revisa todo el mapa.
+ *
+ * El llamador pasa la configuración vigente (una lectura de DatabaseManager.getConfig() por operación).
+ *
+ * database.properties:
+ *   cache.tickets.max=100000           (0 = deshabilitada)
+ *   cache.tickets.revalidacion.s=60
+ *   cache.tickets.negativo.ms=2000
+ */
+public final class TicketCache {
+
+    private static final TicketCache INSTANCE = new TicketCache();
+
+    /** Marca de entrada negativa en expiraEn. */
+    private static final long NEGATIVO = Long.MIN_VALUE;
+
+    /** Marca de ticket desactivado en este nodo (logout) en expiraEn. */
+    private static final long DESACTIVADO = Long.MIN_VALUE + 1;
+
+    /** Entradas revisadas por alta cuando la caché está llena. */
+    private static final int MUESTRA = 16;
+
+    private final ConcurrentHashMap<String, Entrada> mapa = new ConcurrentHashMap<>();
+
+    /** Posición de la revisión de desalojo; solo se usa dentro de synchronized(this). */
+    private Iterator<Map.Entry<String, Entrada>> reloj;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private TicketCache() {}
+
+    public static TicketCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return TRUE vigente, FALSE inválido (negativo reciente o ya expirado), null si hay que ir a BD.
+     */
+    Boolean consultar(AppConfig cfg, String token) {
+        if (cfg.cacheTicketsMax <= 0) return null;
+        Entrada e = mapa.get(token);
+        long ahora = System.currentTimeMillis();
+        if (e == null || ahora >= e.validaHasta) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (e.expiraEn == NEGATIVO || e.expiraEn == DESACTIVADO) return Boolean.FALSE;
+        // Expirado: es definitivo, no hace falta preguntar a la BD
+        return ahora < e.expiraEn ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Ticket vigente hasta expiraEnMillis (fecha_expiracion).
+     * @param creadoEnMillis fecha_creacion, o 0 si no se conoce (se conserva la de la entrada anterior).
+     */
+    void putVigente(AppConfig cfg, String token, long expiraEnMillis, long creadoEnMillis) {
+        long revalidar = System.currentTimeMillis() + cfg.cacheTicketsRevalidacionSeg * 1000L;
+        if (creadoEnMillis == 0 && token != null) {
+            Entrada anterior = mapa.get(token);
+            if (anterior != null) creadoEnMillis = anterior.creadoEn;
+        }
+        // Si expira antes de revalidar, consultar() responde FALSE sin ir a BD
+        put(token, new Entrada(expiraEnMillis, revalidar, creadoEnMillis), cfg.cacheTicketsMax);
+    }
+
+    /** Ticket inexistente, inactivo o expirado. */
+    void putNegativo(AppConfig cfg, String token) {
+        put(token, new Entrada(NEGATIVO, System.currentTimeMillis() + cfg.cacheTicketsNegativoMs, 0), cfg.cacheTicketsMax);
+    }
+
+    /** Ticket desactivado en este nodo: inválido por al menos revalidacion.s, sin que otra escritura lo reemplace. */
+    void putDesactivado(AppConfig cfg, String token) {
+        long dura = Math.max(cfg.cacheTicketsRevalidacionSeg * 1000L, cfg.cacheTicketsNegativoMs);
+        put(token, new Entrada(DESACTIVADO, System.currentTimeMillis() + dura, 0), cfg.cacheTicketsMax);
+    }
+
+    /**
+     * Adelanta la expiración de un ticket vigente ya en caché por un acceso en accesoMillis
+     * (expiración deslizante): LEAST(creación + max.horas, GREATEST(expiración, acceso + vida)).
+     */
+    void extender(AppConfig cfg, String token, long accesoMillis) {
+        long tope = cfg.ticketDeslizanteMaxHoras * 3_600_000L;
+        long deseada = accesoMillis + cfg.ticketTiempoVidaMinutos * 60_000L;
+        mapa.computeIfPresent(token, (k, e) -> {
+            if (e.expiraEn <= accesoMillis || e.creadoEn == 0) return e; // también NEGATIVO y DESACTIVADO
+            long nueva = Math.min(e.creadoEn + tope, deseada);
+            return nueva > e.expiraEn ? new Entrada(nueva, e.validaHasta, e.creadoEn) : e;
+        });
+    }
+
+    /** Expiración conocida (ms) de un ticket vigente en caché, o null. */
+    Long expiracion(String token) {
+        Entrada e = mapa.get(token);
+        return (e == null || e.expiraEn == NEGATIVO || e.expiraEn == DESACTIVADO
+                || System.currentTimeMillis() >= e.validaHasta) ? null : e.expiraEn;
+    }
+
+    public void invalidar(String token) {
+        if (token != null) mapa.remove(token);
+    }
+
+    public void invalidarTodo() {
+        mapa.clear();
+    }
+
+    // ===================== métricas =====================
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public int size() { return mapa.size(); }
+
+    @Override
+    public String toString() {
+        return "TicketCache[entradas=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    // ===================== internos =====================
+
+    private void put(String token, Entrada e, int max) {
+        if (max <= 0 || token == null) return;
+        if (mapa.size() >= max && !mapa.containsKey(token)) desalojarMuestra();
+        mapa.merge(token, e, TicketCache::reemplazo);
+    }
+
+    /** La nueva entrada, salvo que la anterior sea una marca de desactivado todavía vigente. */
+    private static Entrada reemplazo(Entrada anterior, Entrada nueva) {
+        boolean marca = anterior.expiraEn == DESACTIVADO && System.currentTimeMillis() < anterior.validaHasta;
+        return marca && nueva.expiraEn != DESACTIVADO ? anterior : nueva;
+    }
+
+    /** Quita las vencidas de las siguientes MUESTRA entradas; si no hay, la de validaHasta más próxima. */
+    private synchronized void desalojarMuestra() {
+        long ahora = System.currentTimeMillis();
+        Map.Entry<String, Entrada> candidata = null;
+        boolean quitada = false;
+        for (int i = 0; i < MUESTRA; i++) {
+            if (reloj == null || !reloj.hasNext()) {
+                reloj = mapa.entrySet().iterator();
+                if (!reloj.hasNext()) break;
+            }
+            Map.Entry<String, Entrada> m = reloj.next();
+            if (ahora >= m.getValue().validaHasta) {
+                reloj.remove();
+                quitada = true;
+            } else if (candidata == null || m.getValue().validaHasta < candidata.getValue().validaHasta) {
+                candidata = m;
+            }
+        }
+        if (!quitada && candidata != null) mapa.remove(candidata.getKey(), candidata.getValue());
+    }
+
+    private static final class Entrada {
+        /** fecha_expiracion en ms, NEGATIVO o DESACTIVADO. */
+        final long expiraEn;
+        /** Hasta cuándo se puede responder con esta entrada sin volver a BD. */
+        final long validaHasta;
+        /** fecha_creacion en ms (tope de la expiración deslizante), o 0 si no se conoce. */
+        final long creadoEn;
+
+        Entrada(long expiraEn, long validaHasta, long creadoEn) {
+            this.expiraEn = expiraEn;
+            this.validaHasta = validaHasta;
+            this.creadoEn = creadoEn;
+        }
+    }
+}
@@ -1,18 +1,32 @@
 package com.digipro.emulator.database;
 
+import com.digipro.emulator.config.AppConfig;
+
 import java.sql.Timestamp;
 import java.time.Instant;
 
 public class TicketDAO {
 
+    /** Validación de vigencia; cubierta por ix_tickets_vigentes (índice parcial, ver db/migration). */
+    static final String SQL_VIGENTE =
+            "SELECT fecha_expiracion " +
+                    "  FROM tickets " +
+                    " WHERE id_ticket = ? " +
+                    "   AND activo = true " +
+                    "   AND fecha_expiracion > CURRENT_TIMESTAMP";
+
     private final DatabaseManager db;
+    private final TicketCache cache;
 
     public TicketDAO() {
         this.db = DatabaseManager.getInstance();
+        this.cache = TicketCache.getInstance();
     }
 
     /**
      * Crea un registro de ticket vigente.
+     * Con tickets.writebehind.habilitado=true se encola y se escribe en segundo plano
+     * ({@link TicketWriteBehind}); si la cola está llena se inserta en línea.
      * @param tokenBase64 Base64 de los bytes del TicketID (20 bytes).
      * @param idUsuario   FK a usuarios.id_usuario.
      * @param ip          IP de origen.
@@ -23,7 +37,16 @@ public class TicketDAO {
                 "INSERT INTO tickets (id_ticket, id_usuario, fecha_creacion, fecha_expiracion, ip_origen, activo) " +
                         "VALUES (?, ?, CURRENT_TIMESTAMP, ?, ?, true)";
 
-        Instant exp = Instant.now().plusSeconds(segundosVida);
+        long creado = System.currentTimeMillis();
+        Instant exp = Instant.ofEpochMilli(creado).plusSeconds(segundosVida);
+        AppConfig cfg = db.getConfig();
+
+        TicketWriteBehind wb = TicketWriteBehind.get(db);
+        if (wb != null && wb.encolar(tokenBase64, idUsuario, ip, creado, exp.toEpochMilli())) {
+            cache.putVigente(cfg, tokenBase64, exp.toEpochMilli(), creado);
+            return;
+        }
+
         try (var cn = db.getConnection();
              var ps = cn.prepareStatement(sql)) {
             ps.setString(1, tokenBase64);
@@ -31,6 +54,7 @@ public class TicketDAO {
             ps.setTimestamp(3, Timestamp.from(exp));
             ps.setString(4, ip);
             ps.executeUpdate();
+            cache.putVigente(cfg, tokenBase64, exp.toEpochMilli(), creado);
         } catch (Exception e) {
             throw new RuntimeException("Error creando ticket", e);
         }
@@ -38,39 +62,87 @@ public class TicketDAO {
 
     /**
      * Valida que el ticket esté activo y no expirado.
+     * Responde desde {@link TicketCache} si puede; si no, consulta primero una réplica de lectura y,
+     * si ahí no aparece, confirma en el primario, porque un ticket recién creado puede no haberse
+     * replicado todavía. El resultado queda en caché (los negativos con TTL corto).
      * @param tokenBase64 Base64 del TicketID (lo que guardamos en tickets.id_ticket).
      */
     public boolean validarVigente(String tokenBase64) {
-        final String sql =
-                "SELECT 1 " +
-                        "  FROM tickets " +
-                        " WHERE id_ticket = ? " +
-                        "   AND activo = true " +
-                        "   AND fecha_expiracion > CURRENT_TIMESTAMP";
+        AppConfig cfg = db.getConfig();
+        Boolean enCache = cache.consultar(cfg, tokenBase64);
+        if (enCache != null) return enCache;
 
-        try (var cn = db.getConnection();
-             var ps = cn.prepareStatement(sql)) {
-            ps.setString(1, tokenBase64);
-            try (var rs = ps.executeQuery()) {
-                return rs.next();
+        TicketWriteBehind wb = TicketWriteBehind.get(db);
+        Long pendiente = wb != null ? wb.expiracionPendiente(tokenBase64) : null;
+        if (pendiente != null) return System.currentTimeMillis() < pendiente;
+
+        try {
+            Timestamp exp = expiracionVigente(tokenBase64, true);
+            if (exp == null && db.hasReadReplicas()) exp = expiracionVigente(tokenBase64, false);
+            if (exp == null) {
+                cache.putNegativo(cfg, tokenBase64);
+                return false;
             }
+            // Sin fecha_creacion (el índice es index-only solo con fecha_expiracion)
+            cache.putVigente(cfg, tokenBase64, exp.getTime(), 0);
+            return true;
         } catch (Exception e) {
-            // No propagues excepción en validación; devuelve false
+            // No propagues excepción en validación; devuelve false (sin cachear: fue la BD, no el ticket)
             return false;
         }
     }
 
     /**
-     * Opcional: desactiva un ticket (logout).
+     * Registra un acceso al ticket (expiración deslizante, ticket.expiracion.deslizante=true).
+     * Sin I/O: extiende la vigencia en la caché local, con el mismo tope de ticket.deslizante.max.horas
+     * que el UPDATE, que se hace agrupado en segundo plano.
+     */
+    public void registrarAcceso(String tokenBase64) {
+        TicketAccesos accesos = TicketAccesos.get(db);
+        if (accesos == null || tokenBase64 == null) return;
+        long ahora = System.currentTimeMillis();
+        accesos.tocar(tokenBase64, ahora);
+        cache.extender(db.getConfig(), tokenBase64, ahora);
+    }
+
+    /** Expiración vigente conocida en este nodo (ms), sin ir a BD; null si no se conoce. */
+    public Long expiracionConocida(String tokenBase64) {
+        Long exp = cache.expiracion(tokenBase64);
+        if (exp != null) return exp;
+        TicketWriteBehind wb = TicketWriteBehind.get(db);
+        return wb != null ? wb.expiracionPendiente(tokenBase64) : null;
+    }
+
+    /** fecha_expiracion si el ticket está activo y vigente, o null. */
+    private Timestamp expiracionVigente(String tokenBase64, boolean lectura) throws Exception {
+        try (var cn = lectura ? db.getReadConnection() : db.getConnection();
+             var ps = cn.prepareStatement(SQL_VIGENTE)) {
+            ps.setString(1, tokenBase64);
+            try (var rs = ps.executeQuery()) {
+                return rs.next() ? rs.getTimestamp(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Opcional: desactiva un ticket (logout). En este nodo la caché lo da por inválido desde ya,
+     * aunque una validación en curso lo haya leído activo; los demás nodos lo notan al revalidar.
      */
     public void desactivar(String tokenBase64) {
         final String sql = "UPDATE tickets SET activo = false WHERE id_ticket = ?";
+
+        // Si aún no llegó a la BD, escribirlo primero para que el UPDATE lo encuentre
+        TicketWriteBehind wb = TicketWriteBehind.get(db);
+        if (wb != null && wb.expiracionPendiente(tokenBase64) != null) wb.vaciar();
+
         try (var cn = db.getConnection();
              var ps = cn.prepareStatement(sql)) {
             ps.setString(1, tokenBase64);
             ps.executeUpdate();
         } catch (Exception e) {
             System.out.println("[TicketDAO] No se pudo desactivar ticket: " + e.getMessage());
+        } finally {
+            cache.putDesactivado(db.getConfig(), tokenBase64);
         }
     }
 }
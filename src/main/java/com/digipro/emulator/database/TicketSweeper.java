@@ -0,0 +1,130 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Depuración periódica de tickets expirados.
+ *
+ * - Tabla normal: borra (o mueve a tickets_historico) los tickets con fecha_expiracion anterior a
+ *   ahora - retención, en lotes acotados por ctid para no sostener locks largos ni generar un
+ *   DELETE gigante. Usa ix_tickets_fecha_expiracion (migración V2).
+ * - Tabla particionada por mes sobre fecha_expiracion (script db/opcional/tickets_particionado.sql):
+ *   crea las particiones de los próximos meses y retira (DROP o DETACH) los meses ya vencidos.
+ *
+ * Solo un nodo depura a la vez (pg_try_advisory_lock). Si log_accesos tiene FK a tickets el
+ * borrado falla y se informa en el log: en ese caso usar archivar o quitar la FK.
+ *
+ * Corre en el pool compartido de BackgroundTasks: cada ejecución deja de tomar lotes al agotar
+ * presupuesto.s (o lotes.max) y lo que falte queda para la siguiente, para no acaparar un hilo
+ * ni una conexión mientras la BD está lenta.
+ *
+ * database.properties:
+ *   tickets.purga.habilitada=false
+ *   tickets.purga.intervalo.s=300     (solo al arrancar)
+ *   tickets.purga.retencion.h=24
+ *   tickets.purga.archivar=false
+ *   tickets.purga.lote=5000
+ *   tickets.purga.lotes.max=100       (por ejecución)
+ *   tickets.purga.presupuesto.s=30    (por ejecución)
+ */
+final class TicketSweeper {
+
+    private static final long LOCK_ID = 0x5449_434B_4554L;
+
+    /** Meses de particiones que se crean por adelantado. */
+    private static final int MESES_ADELANTE = 3;
+
+    private static final String SQL_BORRAR =
+            "DELETE FROM tickets WHERE ctid = ANY(ARRAY(" +
+                    "SELECT ctid FROM tickets WHERE fecha_expiracion < ? LIMIT ?))";
+
+    private static final String SQL_ARCHIVAR =
+            "WITH borrados AS (" +
+                    "DELETE FROM tickets WHERE ctid = ANY(ARRAY(" +
+                    "SELECT ctid FROM tickets WHERE fecha_expiracion < ? LIMIT ?)) RETURNING *) " +
+                    "INSERT INTO tickets_historico SELECT * FROM borrados";
+
+    private final DatabaseManager db;
+    private final ParticionesMensuales particiones = new ParticionesMensuales("tickets");
+
+    private TicketSweeper(DatabaseManager db) {
+        this.db = db;
+    }
+
+    /** Programa la depuración si está habilitada. */
+    static void iniciar(DatabaseManager db) {
+        AppConfig cfg = db.getConfig();
+        if (!cfg.ticketsPurgaHabilitada) {
+            System.out.println("[TicketSweeper] Depuración de tickets deshabilitada");
+            return;
+        }
+        TicketSweeper s = new TicketSweeper(db);
+        BackgroundTasks.scheduleWithFixedDelay("tickets-purga", s::ejecutar, cfg.ticketsPurgaIntervaloSeg, TimeUnit.SECONDS);
+        System.out.println("[TicketSweeper] Depuración de tickets cada " + cfg.ticketsPurgaIntervaloSeg + "s");
+    }
+
+    void ejecutar() {
+        AppConfig cfg = db.getConfig();
+        if (!cfg.ticketsPurgaHabilitada) return;
+        try (Connection cn = db.getConnection()) {
+            if (!intentarLock(cn)) return; // otro nodo está depurando
+            try {
+                long limite = System.currentTimeMillis() - cfg.ticketsPurgaRetencionHoras * 3_600_000L;
+                if (particiones.esParticionada(cn)) {
+                    particiones.asegurarFuturas(cn, MESES_ADELANTE);
+                    LocalDate dia = new Timestamp(limite).toLocalDateTime().toLocalDate();
+                    particiones.retirarAnteriores(cn, dia, cfg.ticketsPurgaArchivar);
+                } else {
+                    purgarPorLotes(cn, cfg, limite);
+                }
+            } finally {
+                try (Statement st = cn.createStatement()) {
+                    st.execute("SELECT pg_advisory_unlock(" + LOCK_ID + ")");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[TicketSweeper] Error depurando tickets: " + e.getMessage());
+        }
+    }
+
+    private void purgarPorLotes(Connection cn, AppConfig cfg, long limite) throws SQLException {
+        String sql = cfg.ticketsPurgaArchivar ? SQL_ARCHIVAR : SQL_BORRAR;
+        long fin = System.nanoTime() + cfg.ticketsPurgaPresupuestoSeg * 1_000_000_000L;
+        int total = 0;
+        boolean agotado = false;
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setTimestamp(1, new Timestamp(limite));
+            ps.setInt(2, cfg.ticketsPurgaLote);
+            for (int i = 0; i < cfg.ticketsPurgaLotesMax; i++) {
+                if (System.nanoTime() - fin >= 0) {
+                    agotado = true;
+                    break;
+                }
+                int n = ps.executeUpdate(); // autocommit: cada lote es su propia transacción
+                total += n;
+                if (n < cfg.ticketsPurgaLote) break;
+            }
+        }
+        if (total > 0) {
+            System.out.println("[TicketSweeper] Tickets expirados " + (cfg.ticketsPurgaArchivar ? "archivados" : "eliminados") + ": " + total
+                    + (agotado ? " (presupuesto de " + cfg.ticketsPurgaPresupuestoSeg + "s agotado; continúa en la siguiente ejecución)" : ""));
+        }
+    }
+
+    private static boolean intentarLock(Connection cn) throws SQLException {
+        try (Statement st = cn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_ID + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.BackgroundTasks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritura diferida (write-behind) de tickets nuevos.
+ *
+ * crearTicket encola el ticket y responde; un flusher en segundo plano lo inserta en lotes JDBC.
+ * Mientras está en cola el ticket se considera vigente para TicketDAO.validarVigente (mapa de
+ * pendientes), así que en este nodo no hay ventana en que parezca inexistente.
+ *
+ * - Cola acotada: si está llena, crearTicket inserta en línea (sin perder el ticket).
+ * - Un lote fallido por error de conexión se reintenta completo en la siguiente pasada; uno
+ *   fallido por un dato (SQLState 23xxx) se reintenta fila por fila y se descartan solo las filas malas.
+ * - INSERT ... ON CONFLICT DO NOTHING: reintentar un lote que sí alcanzó a confirmarse es inocuo.
+ *
+ * Ojo con varios nodos: otro nodo no ve el ticket hasta que se escribe (intervalo.ms). Usar con
+ * afinidad de sesión o con tickets firmados (ticket.firmado=true), que no dependen de la BD.
+ *
+ * database.properties (solo al arrancar):
+ *   tickets.writebehind.habilitado=false
+ *   tickets.writebehind.cola=10000
+ *   tickets.writebehind.lote=500
+ *   tickets.writebehind.intervalo.ms=200
+ */
+final class TicketWriteBehind {
+
+    private static final String SQL_INSERT =
+            "INSERT INTO tickets (id_ticket, id_usuario, fecha_creacion, fecha_expiracion, ip_origen, activo) " +
+                    "VALUES (?, ?, ?, ?, ?, true) ON CONFLICT DO NOTHING";
+
+    private static volatile TicketWriteBehind instance;
+    private static boolean detenido;
+
+    private final DatabaseManager db;
+    private final ArrayBlockingQueue<Pendiente> cola;
+    private final ConcurrentHashMap<String, Pendiente> pendientes = new ConcurrentHashMap<>();
+    /** Lote que falló y se reintenta antes de tomar más de la cola. Solo se toca con 'escritura' tomado. */
+    private final List<Pendiente> reintento = new ArrayList<>();
+    private final ReentrantLock escritura = new ReentrantLock();
+    private final int lote;
+    private final ScheduledFuture<?> tarea;
+
+    private final LongAdder escritos = new LongAdder();
+    private final LongAdder enLinea = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+
+    private TicketWriteBehind(DatabaseManager db, AppConfig cfg) {
+        this.db = db;
+        this.cola = new ArrayBlockingQueue<>(cfg.ticketsWriteBehindCola);
+        this.lote = cfg.ticketsWriteBehindLote;
+        this.tarea = BackgroundTasks.scheduleWithFixedDelay("tickets-writebehind", this::vaciar,
+                cfg.ticketsWriteBehindIntervaloMs, TimeUnit.MILLISECONDS);
+        System.out.println("[TicketWriteBehind] Escritura diferida de tickets activa (cola=" + cfg.ticketsWriteBehindCola
+                + ", lote=" + lote + ", intervalo=" + cfg.ticketsWriteBehindIntervaloMs + "ms)");
+    }
+
+    /** Instancia activa, o null si el modo está deshabilitado (o ya se detuvo: se escribe en línea). */
+    static TicketWriteBehind get(DatabaseManager db) {
+        TicketWriteBehind wb = instance;
+        if (wb != null) return wb;
+        AppConfig cfg = db.getConfig();
+        if (!cfg.ticketsWriteBehind) return null;
+        synchronized (TicketWriteBehind.class) {
+            if (instance == null && !detenido) instance = new TicketWriteBehind(db, cfg);
+            return instance;
+        }
+    }
+
+    /** Escribe lo pendiente y detiene el flusher (undeploy). */
+    static synchronized void detener() {
+        detenido = true;
+        TicketWriteBehind wb = instance;
+        if (wb != null) {
+            wb.tarea.cancel(false);
+            wb.vaciar();
+            System.out.println("[TicketWriteBehind] Detenido. " + wb);
+            instance = null;
+        }
+    }
+
+    /**
+     * Encola el ticket.
+     * @return false si la cola está llena (el llamador debe insertarlo en línea)
+     */
+    boolean encolar(String token, int idUsuario, String ip, long creadoEn, long expiraEn) {
+        Pendiente p = new Pendiente(token, idUsuario, ip, creadoEn, expiraEn);
+        pendientes.put(token, p);
+        if (cola.offer(p)) return true;
+        pendientes.remove(token, p);
+        enLinea.increment();
+        return false;
+    }
+
+    /** Expiración (ms) del ticket si sigue en cola, o null. */
+    Long expiracionPendiente(String token) {
+        Pendiente p = pendientes.get(token);
+        return p == null ? null : p.expiraEn;
+    }
+
+    /** Escribe ya todo lo pendiente (p. ej. antes de desactivar un ticket que aún no llega a la BD). */
+    void vaciar() {
+        escritura.lock();
+        try {
+            while (true) {
+                if (reintento.isEmpty()) cola.drainTo(reintento, lote);
+                if (reintento.isEmpty()) return;
+                if (!escribir(reintento)) return; // BD no disponible: siguiente pasada
+                reintento.clear();
+            }
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    /** @return true si el lote quedó resuelto (escrito o descartado); false si hay que reintentarlo. */
+    private boolean escribir(List<Pendiente> ps) {
+        try (Connection cn = db.getConnection()) {
+            try {
+                insertar(cn, ps);
+                confirmados(ps);
+                return true;
+            } catch (SQLException e) {
+                if (!ErroresSql.esErrorDeDatos(e)) throw e;
+                // Una fila mala no debe bloquear el lote: fila por fila
+                for (Pendiente p : ps) {
+                    try {
+                        insertar(cn, List.of(p));
+                        confirmados(List.of(p));
+                    } catch (SQLException fila) {
+                        if (!ErroresSql.esErrorDeDatos(fila)) throw fila;
+                        pendientes.remove(p.token, p);
+                        descartados.increment();
+                        System.err.println("[TicketWriteBehind] Ticket descartado: " + fila.getMessage());
+                    }
+                }
+                return true;
+            }
+        } catch (SQLException e) {
+            System.err.println("[TicketWriteBehind] No se pudo escribir lote de " + ps.size()
+                    + " tickets, se reintenta: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void insertar(Connection cn, List<Pendiente> ps) throws SQLException {
+        boolean autoCommit = cn.getAutoCommit();
+        cn.setAutoCommit(false);
+        try (PreparedStatement st = cn.prepareStatement(SQL_INSERT)) {
+            for (Pendiente p : ps) {
+                st.setString(1, p.token);
+                st.setInt(2, p.idUsuario);
+                st.setTimestamp(3, new Timestamp(p.creadoEn));
+                st.setTimestamp(4, new Timestamp(p.expiraEn));
+                st.setString(5, p.ip);
+                st.addBatch();
+            }
+            st.executeBatch();
+            cn.commit();
+        } catch (SQLException e) {
+            cn.rollback();
+            throw e;
+        } finally {
+            cn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void confirmados(List<Pendiente> ps) {
+        for (Pendiente p : ps) pendientes.remove(p.token, p);
+        escritos.add(ps.size());
+    }
+
+    @Override
+    public String toString() {
+        return "TicketWriteBehind[pendientes=" + pendientes.size() + ", escritos=" + escritos.sum()
+                + ", enLinea=" + enLinea.sum() + ", descartados=" + descartados.sum() + "]";
+    }
+
+    private static final class Pendiente {
+        final String token;
+        final int idUsuario;
+        final String ip;
+        final long creadoEn;
+        final long expiraEn;
+
+        Pendiente(String token, int idUsuario, String ip, long creadoEn, long expiraEn) {
+            this.token = token;
+            this.idUsuario = idUsuario;
+            this.ip = ip;
+            this.creadoEn = creadoEn;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
@@ -1,7 +1,17 @@
 package com.digipro.emulator.database;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 public class UsuarioDAO {
 
+    /** Login; cubierto por ix_usuarios_username_activos (ver db/migration). */
+    static final String SQL_VALIDAR =
+            "SELECT id_usuario, username, nombre_completo, email, rol, activo, " +
+                    "grupo_admin_id, cliente_id, perfil_usuario_id, no_identidad " +
+                    "FROM usuarios " +
+                    "WHERE username = ? AND password = ? AND activo = true";
+
     private final DatabaseManager db;
 
     public UsuarioDAO() {
@@ -11,34 +21,29 @@ public class UsuarioDAO {
     /**
      * Valida usuario y contraseña.
      * Contraseña en TEXTO PLANO (sin conversión).
+     * Primero contra la copia en memoria (DirectorioUsuarios); si no decide, contra BD.
      */
     public UsuarioDTO validar(String username, String password) {
-        final String sql =
-                "SELECT id_usuario, username, nombre_completo, email, rol, activo, " +
-                        "grupo_admin_id, cliente_id, perfil_usuario_id, no_identidad " +
-                        "FROM usuarios " +
-                        "WHERE username = ? AND password = ? AND activo = true";
+        DirectorioUsuarios dir = DirectorioUsuarios.get(db);
+        if (dir != null) {
+            UsuarioDTO u = dir.validar(username, password);
+            if (u != null) return u;
+        }
+        UsuarioDTO u = validarEnBd(username, password);
+        if (u != null && dir != null) dir.aceptado(u, password);
+        return u;
+    }
 
+    private UsuarioDTO validarEnBd(String username, String password) {
         try (var cn = db.getConnection();
-             var ps = cn.prepareStatement(sql)) {
+             var ps = cn.prepareStatement(SQL_VALIDAR)) {
 
             ps.setString(1, username);
             ps.setString(2, password);
 
             try (var rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    UsuarioDTO u = new UsuarioDTO();
-                    u.idUsuario         = rs.getInt("id_usuario");
-                    u.username          = rs.getString("username");
-                    u.nombreCompleto    = rs.getString("nombre_completo");
-                    u.email             = rs.getString("email");
-                    u.rol               = rs.getString("rol");
-                    u.activo            = rs.getBoolean("activo");
-                    u.grupoAdminId      = rs.getInt("grupo_admin_id");
-                    u.clienteId         = rs.getInt("cliente_id");
-                    u.perfilUsuarioId   = rs.getInt("perfil_usuario_id");
-                    u.noIdentidad       = rs.getInt("no_identidad");
-                    return u;
+                    return leer(rs);
                 }
             }
         } catch (Exception e) {
@@ -46,4 +51,20 @@ public class UsuarioDAO {
         }
         return null;
     }
+
+    /** Fila de usuarios → DTO (sin la contraseña). */
+    static UsuarioDTO leer(ResultSet rs) throws SQLException {
+        UsuarioDTO u = new UsuarioDTO();
+        u.idUsuario         = rs.getInt("id_usuario");
+        u.username          = rs.getString("username");
+        u.nombreCompleto    = rs.getString("nombre_completo");
+        u.email             = rs.getString("email");
+        u.rol               = rs.getString("rol");
+        u.activo            = rs.getBoolean("activo");
+        u.grupoAdminId      = rs.getInt("grupo_admin_id");
+        u.clienteId         = rs.getInt("cliente_id");
+        u.perfilUsuarioId   = rs.getInt("perfil_usuario_id");
+        u.noIdentidad       = rs.getInt("no_identidad");
+        return u;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.digipro.emulator.service;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.database.DatabaseManager;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Fuente de bytes aleatorios para TicketID y nonces de tickets firmados.
+ *
+ * Un solo SecureRandom compartido serializa los logins concurrentes (sus métodos son
+ * synchronized) y, según el algoritmo por defecto de la plataforma, puede bloquear esperando
+ * entropía. Aquí el algoritmo se elige explícitamente y las instancias no se comparten:
+ *   - porhilo:    un SecureRandom por hilo (sin contención; default)
+ *   - rayado:     N instancias (potencia de 2 >= 2 x núcleos), el hilo elige por su id
+ *   - compartido: una sola instancia (comportamiento anterior)
+ *
+ * Algoritmo (ticket.generador.algoritmo): DRBG (default, NIST SP 800-90A, disponible en todas las
+ * plataformas y no bloqueante una vez sembrado) o NativePRNGNonBlocking (/dev/urandom, solo Unix).
+ * Si no está disponible se usa DRBG. La fuerza y longitud de los tokens no cambian: siguen siendo
+ * ticket.longitud.bytes aleatorios de un CSPRNG.
+ *
+ * database.properties (solo al arrancar):
+ *   ticket.generador=porhilo
+ *   ticket.generador.algoritmo=DRBG
+ */
+public abstract class GeneradorTokens {
+
+    private static volatile GeneradorTokens instance;
+
+    /** Llena el arreglo con bytes aleatorios. Seguro para uso concurrente. */
+    public abstract void nextBytes(byte[] destino);
+
+    /** Generador configurado del proceso. */
+    public static GeneradorTokens getInstance() {
+        GeneradorTokens g = instance;
+        if (g == null) {
+            synchronized (GeneradorTokens.class) {
+                if (instance == null) {
+                    AppConfig cfg = DatabaseManager.getInstance().getConfig();
+                    instance = crear(cfg.ticketGenerador, cfg.ticketGeneradorAlgoritmo);
+                    System.out.println("[GeneradorTokens] " + instance);
+                }
+                g = instance;
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param modo      porhilo | rayado | compartido
+     * @param algoritmo algoritmo de SecureRandom (DRBG, NativePRNGNonBlocking, ...)
+     */
+    public static GeneradorTokens crear(String modo, String algoritmo) {
+        switch (modo) {
+            case "porhilo":    return new PorHilo(algoritmo);
+            case "rayado":     return new Rayado(algoritmo);
+            case "compartido": return new Compartido(algoritmo);
+            default: throw new IllegalArgumentException("Generador de tokens desconocido: " + modo);
+        }
+    }
+
+    /** Nueva instancia del algoritmo pedido, o DRBG si no existe en esta plataforma. */
+    static SecureRandom nuevo(String algoritmo) {
+        try {
+            return SecureRandom.getInstance(algoritmo);
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException sinDrbg) {
+                return new SecureRandom();
+            }
+        }
+    }
+
+    private static final class PorHilo extends GeneradorTokens {
+        private final String algoritmo;
+        private final ThreadLocal<SecureRandom> local;
+
+        PorHilo(String algoritmo) {
+            this.algoritmo = nuevo(algoritmo).getAlgorithm();
+            this.local = ThreadLocal.withInitial(() -> nuevo(algoritmo));
+        }
+
+        @Override
+        public void nextBytes(byte[] destino) {
+            local.get().nextBytes(destino);
+        }
+
+        @Override
+        public String toString() {
+            return "porhilo(" + algoritmo + ")";
+        }
+    }
+
+    private static final class Rayado extends GeneradorTokens {
+        private final SecureRandom[] franjas;
+        private final int mascara;
+
+        Rayado(String algoritmo) {
+            int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+            this.franjas = new SecureRandom[n];
+            for (int i = 0; i < n; i++) franjas[i] = nuevo(algoritmo);
+            this.mascara = n - 1;
+        }
+
+        @Override
+        public void nextBytes(byte[] destino) {
+            franjas[(int) Thread.currentThread().getId() & mascara].nextBytes(destino);
+        }
+
+        @Override
+        public String toString() {
+            return "rayado(" + franjas[0].getAlgorithm() + " x" + franjas.length + ")";
+        }
+    }
+
+    private static final class Compartido extends GeneradorTokens {
+        private final SecureRandom rnd;
+
+        Compartido(String algoritmo) {
+            this.rnd = nuevo(algoritmo);
+        }
+
+        @Override
+        public void nextBytes(byte[] destino) {
+            rnd.nextBytes(destino);
+        }
+
+        @Override
+        public String toString() {
+            return "compartido(" + rnd.getAlgorithm() + ")";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.digipro.emulator.service;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.database.DatabaseManager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Límite de intentos de ObtenLogin por usuario y por IP (token bucket).
+ *
+ * Memoria fija: cada dimensión es un AtomicLongArray de login.limite.franjas cubetas y cada clave
+ * cae en una por hash. Una cubeta es un long: últimos 24 bits = milésimas de ficha disponibles,
+ * el resto = último relleno en ms. Se actualiza con CAS, sin locks. Dos claves que caen en la
+ * misma cubeta la comparten (con 65536 franjas la probabilidad es baja y solo adelanta el límite).
+ *
+ * Cada intento consume una ficha de la IP. La IP es el parámetro IP de ObtenLogin, declarado por el
+ * cliente y no verificado: sirve para repartir la carga entre clientes bien portados, no como
+ * protección contra un atacante (que puede mandar cualquier valor). Sin IP no se limita por IP.
+ *
+ * La cubeta del usuario solo se cobra en los intentos fallidos (credenciales inválidas): limita la
+ * adivinación de contraseñas de una cuenta sin frenar a un usuario legítimo que inicia sesión
+ * seguido. Sin fichas se rechaza antes de tocar BD.
+ *
+ * database.properties (0 por minuto = sin límite en esa dimensión):
+ *   login.limite.usuario.por.min=0     (fallidos por usuario)
+ *   login.limite.usuario.rafaga=20
+ *   login.limite.ip.por.min=0          (por IP declarada)
+ *   login.limite.ip.rafaga=100
+ *   login.limite.franjas=65536       (solo al arrancar)
+ */
+final class LimitadorLogin {
+
+    private static final int BITS_FICHAS = 24;
+    private static final long MASCARA_FICHAS = (1L << BITS_FICHAS) - 1;
+    private static final long MIL = 1000;
+
+    /** Base de tiempo: los ms se cuentan desde aquí para que quepan en 40 bits. */
+    private static final long ORIGEN_NS = System.nanoTime();
+
+    private final AtomicLongArray usuarios;
+    private final AtomicLongArray ips;
+    private final int mascara;
+    private final LongAdder rechazados = new LongAdder();
+
+    static LimitadorLogin getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /** Package-private para pruebas; el proceso usa getInstance(). */
+    LimitadorLogin(AppConfig cfg) {
+        int n = Integer.highestOneBit(Math.max(2, cfg.loginLimiteFranjas) - 1) << 1;
+        this.usuarios = new AtomicLongArray(n);
+        this.ips = new AtomicLongArray(n);
+        this.mascara = n - 1;
+    }
+
+    /**
+     * true si el intento puede seguir; false si la IP excedió su límite o el usuario agotó sus
+     * intentos fallidos. Consume la ficha de la IP; la del usuario solo se revisa.
+     * @param ip IP declarada por el cliente, o null si no la mandó (sin límite por IP)
+     */
+    boolean permitir(AppConfig cfg, String userID, String ip) {
+        long ahora = ahora();
+        if (userID != null && !disponible(usuarios, userID, ahora, cfg.loginLimiteUsuarioPorMin, cfg.loginLimiteUsuarioRafaga)
+                || ip != null && !consumir(ips, ip, ahora, cfg.loginLimiteIpPorMin, cfg.loginLimiteIpRafaga)) {
+            rechazados.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /** Cobra un intento fallido (credenciales inválidas) a la cubeta del usuario. */
+    void fallido(AppConfig cfg, String userID) {
+        if (userID != null) consumir(usuarios, userID, ahora(), cfg.loginLimiteUsuarioPorMin, cfg.loginLimiteUsuarioRafaga);
+    }
+
+    long rechazados() {
+        return rechazados.sum();
+    }
+
+    private static long ahora() {
+        return (System.nanoTime() - ORIGEN_NS) / 1_000_000L + 1; // 0 = cubeta sin usar
+    }
+
+    private boolean consumir(AtomicLongArray cubetas, String clave, long ahora, int porMin, int rafaga) {
+        if (porMin == 0) return true;
+        int i = indice(clave);
+        while (true) {
+            long v = cubetas.get(i);
+            long fichas = fichas(v, ahora, porMin, rafaga);
+            if (fichas < MIL) return false;
+            if (cubetas.compareAndSet(i, v, ahora << BITS_FICHAS | (fichas - MIL))) return true;
+        }
+    }
+
+    /** true si la cubeta tiene al menos una ficha, sin consumirla. */
+    private boolean disponible(AtomicLongArray cubetas, String clave, long ahora, int porMin, int rafaga) {
+        return porMin == 0 || fichas(cubetas.get(indice(clave)), ahora, porMin, rafaga) >= MIL;
+    }
+
+    /** Milésimas de ficha en la cubeta {@code v} al instante {@code ahora}, con el relleno aplicado. */
+    static long fichas(long v, long ahora, int porMin, int rafaga) {
+        long capacidad = rafaga * MIL;
+        if (v == 0) return capacidad;
+        long transcurrido = Math.max(0, ahora - (v >>> BITS_FICHAS));
+        // porMin fichas/min = porMin/60 milésimas por ms
+        return Math.min(capacidad, (v & MASCARA_FICHAS) + transcurrido * porMin / 60);
+    }
+
+    private int indice(String clave) {
+        int h = clave.hashCode() * 0x9E3779B9;
+        return (h ^ h >>> 16) & mascara;
+    }
+
+    /** Se crea en el primer getInstance(), no al cargar la clase. */
+    private static final class Holder {
+        static final LimitadorLogin INSTANCE = new LimitadorLogin(DatabaseManager.getInstance().getConfig());
+    }
+}
@@ -0,0 +1,330 @@
+package com.digipro.emulator.service;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.util.TiempoMx;
+import com.digipro.emulator.ws.usuarios.IDTicket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ObtenLoginResult RAW (QA) precompilado.
+ *
+ * Todo lo que depende solo de la configuración (namespaces, TiempoVida, campos opcionales, valores
+ * fijos de QA) se compila una vez en segmentos UTF-8 constantes; por login solo se escriben los
+ * huecos: token, usuario, IP, proyecto, fecha/hora y nombres. Se arma en un búfer por hilo y se
+ * escribe de una vez al OutputStream de la respuesta. Si cambia la configuración (recarga), la
+ * plantilla se recompila en la siguiente llamada.
+ *
+ * La salida es idéntica, byte por byte, a la concatenación anterior (sin escapar los valores).
+ */
+final class LoginXmlTemplate {
+
+    private static final String NS_USR = " xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\"";
+
+    private static final int TOKEN = 0, USR = 1, IP = 2, PROYECTO = 3, AHORA = 4, NOMBRE_COMPLETO = 5, NOMBRE_USUARIO = 6;
+
+    /** Búfer se conserva por hilo mientras no pase de este tamaño. */
+    private static final int BUFER_MAX = 16 * 1024;
+
+    /** Alfabeto Base64 estándar en ASCII (también para la respuesta RAW de expedientes). */
+    static final byte[] B64 = utf8("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+
+    private static final ThreadLocal<Bufer> BUFER = ThreadLocal.withInitial(Bufer::new);
+
+    /** Getters del IDTicket generado, resueltos una vez por clase (null si el stub no los tiene). */
+    private static final ClassValue<Lector> LECTORES = new ClassValue<Lector>() {
+        @Override
+        protected Lector computeValue(Class<?> type) {
+            return new Lector(type);
+        }
+    };
+
+    private static volatile LoginXmlTemplate actual;
+
+    private final AppConfig cfg;
+    private final byte[][] segmentos;
+    private final int[] huecos;
+    private final byte[] envelopeInicio;
+    private final byte[] envelopeFin;
+
+    private final byte[] tokenDefault;
+    private final String usrDefault;
+    private final int proyectoDefault;
+    private final String ipDefault;
+
+    /** Plantilla de la configuración vigente; se recompila si la configuración cambió. */
+    static LoginXmlTemplate para(AppConfig cfg) {
+        LoginXmlTemplate t = actual;
+        if (t == null || t.cfg != cfg) {
+            t = new LoginXmlTemplate(cfg);
+            actual = t;
+        }
+        return t;
+    }
+
+    private LoginXmlTemplate(AppConfig cfg) {
+        this.cfg = cfg;
+        this.tokenDefault = utf8(AppConfig.or(cfg.qaSampleTicketBase64, "njpX1uy6JtU0Bm6CS4LtmwtGvKM="));
+        this.usrDefault = AppConfig.or(cfg.qaSampleUsr, "actinverWS");
+        this.proyectoDefault = AppConfig.or(cfg.qaSampleProyecto, 3);
+        this.ipDefault = AppConfig.or(cfg.qaSampleIp, "192.168.1.100");
+
+        int tv = AppConfig.or(cfg.qaTiempoVida, 1000);
+
+        Compilador c = new Compilador();
+        c.texto("<ObtenLoginResult>");
+        c.elemento("TicketID", TOKEN);
+        c.elemento("UsrID", USR);
+        if (cfg.rawIncludeIp) c.elemento("IP", IP);
+        c.elemento("ProyectoID", PROYECTO);
+        c.fijo("VersionAplicacionID", AppConfig.or(cfg.qaVersionAplicacionId, 1));
+        c.elemento("FechaHoraInicio", AHORA);
+        c.elemento("FechaHoraUltimoAcceso", AHORA);
+        c.fijo("TiempoVida", tv);
+        c.fijo("TiempoRestante", tv);
+        if (cfg.rawIncludeNombreCompleto) c.elemento("NombreCompleto", NOMBRE_COMPLETO);
+        if (cfg.rawIncludeNombreUsuario) c.elemento("NombreUsuario", NOMBRE_USUARIO);
+        c.fijo("GrupoAdminID", 3);
+        c.fijo("ClienteID", 1);
+        c.fijo("PerfilUsuarioID", 9);
+        c.fijo("TiempoVidaPwd", AppConfig.or(cfg.qaTiempoVidaPwd, 228));
+        c.fijo("TiempoActualizoPwd", AppConfig.or(cfg.qaTiempoActualizoPwd, 16129));
+        c.fijo("NoIdentidad", 10);
+        c.fijo("FechaUltLogin", TiempoMx.FECHA_DEFAULT_XML);
+        c.fijo("DuracionDias", 0);
+        c.fijo("AvisoCaducidadPwdDias", 0);
+        c.fijo("FechaCreacionPwd", TiempoMx.FECHA_DEFAULT_XML);
+        c.texto("</ObtenLoginResult>");
+        c.cerrar();
+        this.segmentos = c.segmentos.toArray(new byte[0][]);
+        this.huecos = c.huecos.stream().mapToInt(Integer::intValue).toArray();
+
+        this.envelopeInicio = utf8(
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                        + "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" "
+                        + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
+                        + "  <soap:Body>"
+                        + "    <ObtenLoginResponse xmlns=\"http://Digipro.servicios/WsImagenes/WsImagenes\">");
+        this.envelopeFin = utf8(
+                "      <rRespuesta>"
+                        + "        <RespuestaID" + NS_USR + ">0</RespuestaID>"
+                        + "        <Categoria" + NS_USR + ">4000</Categoria>"
+                        + "        <DescripcionCategoria" + NS_USR + ">Información</DescripcionCategoria>"
+                        + "        <DescripcionRespuesta" + NS_USR + ">(0). </DescripcionRespuesta>"
+                        + "        <RespuestaToString" + NS_USR + ">[Información]: (0). </RespuestaToString>"
+                        + "      </rRespuesta>"
+                        + "    </ObtenLoginResponse>"
+                        + "  </soap:Body>"
+                        + "</soap:Envelope>");
+    }
+
+    /** Envelope SOAP 1.2 completo de ObtenLogin exitoso, escrito en una sola operación. */
+    void escribirEnvelope(IDTicket t, OutputStream out) throws IOException {
+        Bufer b = BUFER.get();
+        b.n = 0;
+        b.bytes(envelopeInicio);
+        llenar(t, b);
+        b.bytes(envelopeFin);
+        out.write(b.buf, 0, b.n);
+        b.recortar();
+    }
+
+    /** Solo el nodo ObtenLoginResult, como String. */
+    String fragmento(IDTicket t) {
+        Bufer b = BUFER.get();
+        b.n = 0;
+        llenar(t, b);
+        String s = new String(b.buf, 0, b.n, StandardCharsets.UTF_8);
+        b.recortar();
+        return s;
+    }
+
+    private void llenar(IDTicket t, Bufer b) {
+        Lector l = LECTORES.get(t.getClass());
+        String usr = null;
+        String ahora = null;
+        for (int i = 0; i < huecos.length; i++) {
+            b.bytes(segmentos[i]);
+            switch (huecos[i]) {
+                case TOKEN:
+                    byte[] id = t.getTicketID();
+                    if (id == null || id.length == 0) b.bytes(tokenDefault);
+                    else b.base64(id);
+                    break;
+                case USR:
+                    if (usr == null) usr = l.texto(t, l.usrID, usrDefault);
+                    b.texto(usr);
+                    break;
+                case IP:
+                    b.texto(l.texto(t, l.ip, ipDefault));
+                    break;
+                case PROYECTO:
+                    b.entero(l.entero(t, l.proyectoID, proyectoDefault));
+                    break;
+                case AHORA:
+                    if (ahora == null) ahora = TiempoMx.ahoraXml();
+                    b.texto(ahora);
+                    break;
+                case NOMBRE_COMPLETO:
+                    if (usr == null) usr = l.texto(t, l.usrID, usrDefault);
+                    b.texto(l.texto(t, l.nombreCompleto, usr + " " + usr + ", " + usr));
+                    break;
+                case NOMBRE_USUARIO:
+                    if (usr == null) usr = l.texto(t, l.usrID, usrDefault);
+                    b.texto(l.texto(t, l.nombreUsuario, usr));
+                    break;
+                default:
+                    throw new IllegalStateException("Hueco desconocido: " + huecos[i]);
+            }
+        }
+        b.bytes(segmentos[huecos.length]);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Arma la secuencia segmento, hueco, segmento, ..., segmento. */
+    private static final class Compilador {
+        final List<byte[]> segmentos = new ArrayList<>();
+        final List<Integer> huecos = new ArrayList<>();
+        private final StringBuilder actual = new StringBuilder();
+
+        void texto(String s) {
+            actual.append(s);
+        }
+
+        void elemento(String nombre, int hueco) {
+            actual.append('<').append(nombre).append(NS_USR).append('>');
+            segmentos.add(utf8(actual.toString()));
+            huecos.add(hueco);
+            actual.setLength(0);
+            actual.append("</").append(nombre).append('>');
+        }
+
+        void fijo(String nombre, Object valor) {
+            actual.append('<').append(nombre).append(NS_USR).append('>').append(valor).append("</").append(nombre).append('>');
+        }
+
+        void cerrar() {
+            segmentos.add(utf8(actual.toString()));
+        }
+    }
+
+    /** Métodos del IDTicket generado; el stub puede no tener todos. */
+    private static final class Lector {
+        final Method usrID, proyectoID, ip, nombreCompleto, nombreUsuario;
+
+        Lector(Class<?> type) {
+            usrID = metodo(type, "getUsrID");
+            proyectoID = metodo(type, "getProyectoID");
+            ip = metodo(type, "getIP");
+            nombreCompleto = metodo(type, "getNombreCompleto");
+            nombreUsuario = metodo(type, "getNombreUsuario");
+        }
+
+        private static Method metodo(Class<?> type, String nombre) {
+            try {
+                return type.getMethod(nombre);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        String texto(Object bean, Method m, String def) {
+            if (m == null) return def;
+            try {
+                Object v = m.invoke(bean);
+                return (v instanceof String && !((String) v).isEmpty()) ? (String) v : def;
+            } catch (Exception e) {
+                return def;
+            }
+        }
+
+        int entero(Object bean, Method m, int def) {
+            if (m == null) return def;
+            try {
+                Object v = m.invoke(bean);
+                return (v instanceof Number) ? ((Number) v).intValue() : def;
+            } catch (Exception e) {
+                return def;
+            }
+        }
+    }
+
+    /** Búfer de bytes reutilizable con escritura directa de texto, enteros y Base64. */
+    private static final class Bufer {
+        byte[] buf = new byte[4096];
+        int n;
+
+        private void asegurar(int extra) {
+            if (n + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, n + extra));
+        }
+
+        void bytes(byte[] b) {
+            asegurar(b.length);
+            System.arraycopy(b, 0, buf, n, b.length);
+            n += b.length;
+        }
+
+        /** ASCII byte a byte; si hay otros caracteres se codifica el String completo en UTF-8. */
+        void texto(String s) {
+            int len = s.length();
+            asegurar(len);
+            for (int i = 0; i < len; i++) {
+                char ch = s.charAt(i);
+                if (ch >= 0x80) {
+                    bytes(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buf[n++] = (byte) ch;
+            }
+        }
+
+        void entero(int v) {
+            if (v < 0) {
+                // raro (proyecto negativo); se deja a Integer.toString
+                texto(Integer.toString(v));
+                return;
+            }
+            int digitos = 1;
+            for (int x = v; x >= 10; x /= 10) digitos++;
+            asegurar(digitos);
+            for (int i = n + digitos - 1; i >= n; i--, v /= 10) buf[i] = (byte) ('0' + v % 10);
+            n += digitos;
+        }
+
+        /** Base64 estándar con relleno (igual que Base64.getEncoder()), directo al búfer. */
+        void base64(byte[] src) {
+            asegurar(4 * ((src.length + 2) / 3));
+            int i = 0;
+            for (; i + 2 < src.length; i += 3) {
+                int v = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+                buf[n++] = B64[v >>> 18];
+                buf[n++] = B64[(v >>> 12) & 0x3f];
+                buf[n++] = B64[(v >>> 6) & 0x3f];
+                buf[n++] = B64[v & 0x3f];
+            }
+            int resto = src.length - i;
+            if (resto > 0) {
+                int v = (src[i] & 0xff) << 16 | (resto == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+                buf[n++] = B64[v >>> 18];
+                buf[n++] = B64[(v >>> 12) & 0x3f];
+                buf[n++] = resto == 2 ? B64[(v >>> 6) & 0x3f] : (byte) '=';
+                buf[n++] = '=';
+            }
+        }
+
+        /** No retiene búferes grandes entre peticiones. */
+        void recortar() {
+            if (buf.length > BUFER_MAX) buf = new byte[4096];
+            n = 0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.digipro.emulator.service;
+
+import com.digipro.emulator.config.AppConfig;
+import com.digipro.emulator.database.DatabaseManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Formato de ticket autocontenido y firmado (modo ticket.firmado=true).
+ *
+ * Cabe en los 20 bytes de IDTicket.TicketID:
+ *   [0]      versión (0x01)
+ *   [1..4]   id_usuario
+ *   [5..8]   expiración, segundos epoch (sin signo)
+ *   [9..11]  nonce aleatorio (dos tickets del mismo usuario/segundo no coinciden)
+ *   [12..19] HMAC-SHA256(clave, bytes 0..11) truncado a 8 bytes
+ *
+ * Validar es solo calcular el HMAC: distingue vigente / expirado / inválido sin BD, así que
+ * varios nodos con la misma clave validan los tickets de cualquiera. La clave anterior
+ * (ticket.firma.clave.anterior) se sigue aceptando para rotar sin invalidar sesiones.
+ *
+ * La revocación (logout) es una lista local token → expiración; se purga sola al expirar
+ * los tickets y no se comparte entre nodos ni sobrevive a un reinicio.
+ */
+public final class TicketFirmado {
+
+    public enum Estado { VIGENTE, EXPIRADO, INVALIDO, NO_FIRMADO }
+
+    public static final int LONGITUD = 20;
+
+    private static final byte VERSION = 0x01;
+    private static final int DATOS = 12;
+    private static final int MAC_BYTES = 8;
+
+    private final Supplier<AppConfig> config;
+    private final GeneradorTokens rnd;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 no disponible", e);
+        }
+    });
+
+    /** token Base64 → expiración (ms). */
+    private final ConcurrentHashMap<String, Long> revocados = new ConcurrentHashMap<>();
+
+    private TicketFirmado() {
+        this(DatabaseManager.getInstance()::getConfig, GeneradorTokens.getInstance());
+    }
+
+    /** Package-private para pruebas: configuración y generador propios, sin DatabaseManager. */
+    TicketFirmado(Supplier<AppConfig> config, GeneradorTokens rnd) {
+        this.config = config;
+        this.rnd = rnd;
+    }
+
+    public static TicketFirmado getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /** Emite un ticket firmado con la clave actual. */
+    public byte[] emitir(int idUsuario, long expiraEnSegundos) {
+        byte[] t = new byte[LONGITUD];
+        ByteBuffer bb = ByteBuffer.wrap(t);
+        bb.put(VERSION);
+        bb.putInt(idUsuario);
+        bb.putInt((int) expiraEnSegundos);
+        byte[] nonce = new byte[3];
+        rnd.nextBytes(nonce);
+        bb.put(nonce);
+        System.arraycopy(mac(claveActual(), t), 0, t, DATOS, MAC_BYTES);
+        return t;
+    }
+
+    /**
+     * Estado de un TicketID. NO_FIRMADO si el modo firmado está apagado o los bytes no son
+     * un ticket firmado por ninguna de las claves (p. ej. un ticket aleatorio anterior).
+     */
+    public Estado estado(byte[] t) {
+        AppConfig cfg = config.get();
+        if (!cfg.ticketFirmado || t == null || t.length != LONGITUD || t[0] != VERSION) {
+            return Estado.NO_FIRMADO;
+        }
+        if (!firmaValida(cfg.ticketFirmaClave, t) && !firmaValida(cfg.ticketFirmaClaveAnterior, t)) {
+            return Estado.NO_FIRMADO;
+        }
+        long expiraMs = expiraEnSegundos(t) * 1000L;
+        if (System.currentTimeMillis() >= expiraMs) return Estado.EXPIRADO;
+        if (!revocados.isEmpty() && revocados.containsKey(Base64.getEncoder().encodeToString(t))) {
+            return Estado.INVALIDO;
+        }
+        return Estado.VIGENTE;
+    }
+
+    /** Agrega el ticket a la lista de revocados hasta que expire. No hace nada si no es firmado. */
+    public void revocar(byte[] t) {
+        if (estado(t) != Estado.VIGENTE) return;
+        long ahora = System.currentTimeMillis();
+        revocados.values().removeIf(exp -> exp <= ahora);
+        revocados.put(Base64.getEncoder().encodeToString(t), expiraEnSegundos(t) * 1000L);
+    }
+
+    public static int idUsuario(byte[] t) {
+        return ByteBuffer.wrap(t, 1, 4).getInt();
+    }
+
+    public static long expiraEnSegundos(byte[] t) {
+        return ByteBuffer.wrap(t, 5, 4).getInt() & 0xFFFFFFFFL;
+    }
+
+    // ===================== internos =====================
+
+    private byte[] claveActual() {
+        byte[] k = config.get().ticketFirmaClave;
+        if (k == null) throw new IllegalStateException("ticket.firmado=true requiere ticket.firma.clave");
+        return k;
+    }
+
+    private boolean firmaValida(byte[] clave, byte[] t) {
+        if (clave == null) return false;
+        byte[] esperado = mac(clave, t);
+        byte[] recibido = new byte[MAC_BYTES];
+        System.arraycopy(t, DATOS, recibido, 0, MAC_BYTES);
+        byte[] truncado = new byte[MAC_BYTES];
+        System.arraycopy(esperado, 0, truncado, 0, MAC_BYTES);
+        return MessageDigest.isEqual(truncado, recibido); // tiempo constante
+    }
+
+    private byte[] mac(byte[] clave, byte[] t) {
+        try {
+            Mac m = macs.get();
+            m.init(new SecretKeySpec(clave, "HmacSHA256"));
+            m.update(t, 0, DATOS);
+            return m.doFinal();
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo calcular HMAC de ticket", e);
+        }
+    }
+
+    /** Se crea en el primer getInstance(), no al cargar la clase. */
+    private static final class Holder {
+        static final TicketFirmado INSTANCE = new TicketFirmado();
+    }
+}
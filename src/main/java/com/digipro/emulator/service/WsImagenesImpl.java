@@ -8,7 +8,9 @@ import com.digipro.emulator.database.LogAccesoDAO;
 import com.digipro.emulator.database.UsuarioDAO;
 import com.digipro.emulator.database.UsuarioDTO;
 import com.digipro.emulator.service.orquestador.OrquestadorEstadosCuenta; // << NUEVO
+import com.digipro.emulator.util.BackgroundTasks;
 import com.digipro.emulator.util.ResponseBuilder;
+import com.digipro.emulator.util.TiempoMx;
 import com.digipro.emulator.util.TokenUtils;
 import com.digipro.emulator.ws.generated.ArrayOfClsFileHSM;
 import com.digipro.emulator.ws.generated.ClsFileHSM;
@@ -18,6 +20,7 @@ import com.digipro.emulator.ws.generated.WsImagenesSoap;
 import com.digipro.emulator.ws.usuarios.IDTicket;
 import com.digipro.emulator.ws.usuarios.Respuesta;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.jws.WebMethod;
 import javax.jws.WebParam;
@@ -26,13 +29,13 @@ import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.ws.Holder;
 import javax.xml.ws.WebServiceContext;
 import javax.xml.ws.handler.MessageContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.List;
 
 /**
  * - ContestaExpedientexLlave: valida ticket y luego delega en el ORQUESTADOR para decidir
@@ -52,6 +55,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
     private final DocumentoDAO documentoDAO = new DocumentoDAO();
     private final LogAccesoDAO logDAO = new LogAccesoDAO();
     private final TicketManager ticketManager = new TicketManager();
+    private final LimitadorLogin limitadorLogin = LimitadorLogin.getInstance();
     private final FileSystemAdapter fileAdapter = new FileSystemAdapter();
 
     // << NUEVO: orquestador (usa documentoDAO + fileAdapter por dentro)
@@ -68,6 +72,16 @@ public class WsImagenesImpl implements WsImagenesSoap {
         System.out.println("[WsImagenesImpl] Servicio inicializado");
     }
 
+    /** Undeploy: detiene tareas en segundo plano y cierra el pool de conexiones. */
+    @PreDestroy
+    public void destroy() {
+        System.out.println("[WsImagenesImpl] Deteniendo servicio (logins rechazados por límite: " + limitadorLogin.rechazados() + ")");
+        String cache = FileSystemAdapter.estadisticasCache();
+        if (cache != null) System.out.println("[WsImagenesImpl] " + cache);
+        BackgroundTasks.shutdown();
+        db.shutdown();
+    }
+
     // ======================= ObtenLogin =======================
     @WebMethod(operationName = "ObtenLogin")
     @Override
@@ -80,84 +94,89 @@ public class WsImagenesImpl implements WsImagenesSoap {
             @WebParam(name = "rRespuesta", mode = WebParam.Mode.INOUT) Holder<Respuesta> rRespuesta,
             @WebParam(name = "ObtenLoginResult", mode = WebParam.Mode.OUT) Holder<IDTicket> obtenLoginResult) {
 
+        final long inicio = System.nanoTime();
         final String ipFinal = (IP == null || IP.isEmpty()) ? "127.0.0.1" : IP;
 
         System.out.println("[ObtenLogin] Intento de autenticación - Usuario: " + userID + ", ProyID: " + proyectoID);
 
         try {
+            // Límite por usuario/IP: se responde como credenciales inválidas sin consultar usuarios.
+            // La IP es la que declara el cliente; si no la manda no se limita por IP (no compartir una cubeta)
+            String ipDeclarada = (IP == null || IP.isEmpty()) ? null : IP;
+            if (!limitadorLogin.permitir(db.getConfig(), userID, ipDeclarada)) {
+                responderCredencialesInvalidas(rRespuesta);
+                obtenLoginResult.value = null;
+                logDAO.registrar(null, null, "ObtenLogin", null, ipFinal, false, "Límite de intentos excedido", proyectoID, inicio);
+                return;
+            }
+
             UsuarioDTO u = usuarioDAO.validar(userID, strPwd);
             if (u == null) {
-                // EXACTO mensaje de QA para credenciales inválidas
-                if (propBool("ws.qa.force.raw.login.credenciales", true)) {
-                    String body =
-                            "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
-                                    + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" "
-                                    + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
-                                    + "<soap:Body>"
-                                    + "  <ObtenLoginResponse xmlns=\"http://Digipro.servicios/WsImagenes/WsImagenes\">"
-                                    + "    <rRespuesta>"
-                                    + "      <RespuestaID xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">2002</RespuestaID>"
-                                    + "      <Categoria xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">4000</Categoria>"
-                                    + "      <DescripcionCategoria xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">Información</DescripcionCategoria>"
-                                    + "      <DescripcionRespuesta xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">(2002). Usuario o contraseña incorrecta</DescripcionRespuesta>"
-                                    + "      <RespuestaToString xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">[Información]: (2002). Usuario o contraseña incorrecta</RespuestaToString>"
-                                    + "    </rRespuesta>"
-                                    + "  </ObtenLoginResponse>"
-                                    + "</soap:Body>"
-                                    + "</soap:Envelope>";
-                    writeRawSoap(body);
-                } else {
-                    rRespuesta.value = ResponseBuilder.credencialesInvalidas();
-                }
+                limitadorLogin.fallido(db.getConfig(), userID);
+                responderCredencialesInvalidas(rRespuesta);
                 obtenLoginResult.value = null;
-                logDAO.registrar(null, null, "ObtenLogin", null, ipFinal, false, "Credenciales inválidas");
+                logDAO.registrar(null, null, "ObtenLogin", null, ipFinal, false, "Credenciales inválidas", proyectoID, inicio);
                 return;
             }
 
             IDTicket ticket = ticketManager.generarTicket(u, proyectoID, ipFinal, (strOrigen != null ? strOrigen : "ws"));
 
-            boolean forceRaw = propBool("ws.qa.force.raw", false);
+            boolean forceRaw = db.getConfig().forceRawLogin;
             if (forceRaw || ticketStubIncompleto(ticket)) {
                 System.out.println("[ObtenLogin] Modo SOAP crudo QA activado (forceRaw=" + forceRaw + ")");
-                String resultFragment = ticketManager.buildTicketXmlFragment(ticket);
-
-                String body =
-                        "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
-                                + "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" "
-                                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
-                                + "  <soap:Body>"
-                                + "    <ObtenLoginResponse xmlns=\"http://Digipro.servicios/WsImagenes/WsImagenes\">"
-                                +          resultFragment
-                                + "      <rRespuesta>"
-                                + "        <RespuestaID xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">0</RespuestaID>"
-                                + "        <Categoria xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">4000</Categoria>"
-                                + "        <DescripcionCategoria xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">Información</DescripcionCategoria>"
-                                + "        <DescripcionRespuesta xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">(0). </DescripcionRespuesta>"
-                                + "        <RespuestaToString xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">[Información]: (0). </RespuestaToString>"
-                                + "      </rRespuesta>"
-                                + "    </ObtenLoginResponse>"
-                                + "  </soap:Body>"
-                                + "</soap:Envelope>";
-
-                writeRawSoap(body);
-                logDAO.registrar(TokenUtils.tokenFrom(ticket), null, "ObtenLogin", null, ipFinal, true, null);
+                OutputStream out = openRawStream();
+                ticketManager.writeLoginEnvelope(ticket, out);
+                out.flush();
+                logDAO.registrar(TokenUtils.tokenFrom(ticket), null, "ObtenLogin", null, ipFinal, true, null, proyectoID, inicio);
                 return;
             }
 
             System.out.println("[ObtenLogin] Autenticación exitosa - Usuario: " + userID + " (modo JAXB)");
             rRespuesta.value = ResponseBuilder.authOk();
             obtenLoginResult.value = ticket;
-            logDAO.registrar(TokenUtils.tokenFrom(ticket), null, "ObtenLogin", null, ipFinal, true, null);
+            logDAO.registrar(TokenUtils.tokenFrom(ticket), null, "ObtenLogin", null, ipFinal, true, null, proyectoID, inicio);
 
         } catch (Exception e) {
             System.err.println("[ObtenLogin] Error: " + e.getMessage());
             e.printStackTrace();
             rRespuesta.value = ResponseBuilder.error("500", "ERROR", e.getMessage());
             obtenLoginResult.value = null;
-            logDAO.registrar(null, null, "ObtenLogin", null, ipFinal, false, e.getMessage());
+            logDAO.registrar(null, null, "ObtenLogin", null, ipFinal, false, e.getMessage(), proyectoID, inicio);
+        }
+    }
+
+    /** EXACTO mensaje de QA para credenciales inválidas (2002), RAW o JAXB según configuración. */
+    private void responderCredencialesInvalidas(Holder<Respuesta> rRespuesta) {
+        if (!db.getConfig().forceRawLoginCredenciales) {
+            rRespuesta.value = ResponseBuilder.credencialesInvalidas();
+            return;
+        }
+        try {
+            OutputStream out = openRawStream();
+            out.write(LOGIN_2002_RAW);
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("No se pudo escribir SOAP crudo", ex);
         }
     }
 
+    private static final byte[] LOGIN_2002_RAW = (
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                    + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+                    + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
+                    + "<soap:Body>"
+                    + "  <ObtenLoginResponse xmlns=\"http://Digipro.servicios/WsImagenes/WsImagenes\">"
+                    + "    <rRespuesta>"
+                    + "      <RespuestaID xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">2002</RespuestaID>"
+                    + "      <Categoria xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">4000</Categoria>"
+                    + "      <DescripcionCategoria xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">Información</DescripcionCategoria>"
+                    + "      <DescripcionRespuesta xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">(2002). Usuario o contraseña incorrecta</DescripcionRespuesta>"
+                    + "      <RespuestaToString xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">[Información]: (2002). Usuario o contraseña incorrecta</RespuestaToString>"
+                    + "    </rRespuesta>"
+                    + "  </ObtenLoginResponse>"
+                    + "</soap:Body>"
+                    + "</soap:Envelope>").getBytes(StandardCharsets.UTF_8);
+
     // ============== ContestaExpedientexLlave ===================
     @WebMethod(operationName = "ContestaExpedientexLlave")
     @Override
@@ -170,6 +189,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
             @WebParam(name = "rRespuesta", mode = WebParam.Mode.INOUT) Holder<Respuesta> rRespuesta,
             @WebParam(name = "ContestaExpedientexLlaveResult", mode = WebParam.Mode.OUT) Holder<ArrayOfClsFileHSM> contestaExpedientexLlaveResult) {
 
+        final long inicio = System.nanoTime();
         String valorBusqueda = null;
 
         try {
@@ -197,7 +217,8 @@ public class WsImagenesImpl implements WsImagenesSoap {
                         null,
                         resolveIP(ticket != null ? ticket.value : null),
                         false,
-                        (tstate == TicketState.EXPIRED ? "Ticket expirado (2052)" : "Ticket inválido (2053)"));
+                        (tstate == TicketState.EXPIRED ? "Ticket expirado (2052)" : "Ticket inválido (2053)"),
+                        proyID, inicio);
                 return;
             }
 
@@ -207,24 +228,33 @@ public class WsImagenesImpl implements WsImagenesSoap {
                 rRespuesta.value = ResponseBuilder.error("400", "LLAVE_VACIA", "La llave no contiene valor");
                 contestaExpedientexLlaveResult.value = null;
                 logDAO.registrar(tokenSafe(ticket.value), null, "ContestaExpedientexLlave",
-                        null, resolveIP(ticket.value), false, "Llave vacía");
+                        null, resolveIP(ticket.value), false, "Llave vacía", proyID, inicio);
                 return;
             }
 
             // ====== 3) ORQUESTADOR: resolver fuente (RECENTE/HISTÓRICO) ======
+            boolean forceRawContesta = db.getConfig().forceRawContesta;
+            if (forceRawContesta) {
+                // RAW en streaming: cada documento se escribe en la respuesta en cuanto se lee su archivo.
+                // El envelope se abre con el primer documento; si no hay ninguno se responde el 7001.
+                RawContestaStream stream = new RawContestaStream();
+                int total = orquestadorEC.resolverContenido(valorBusqueda, tipoDocID, stream::agregar);
+                if (total == 0) {
+                    responderNoExpediente(ticket, proyID, expedienteID, valorBusqueda, rRespuesta, contestaExpedientexLlaveResult, inicio);
+                    return;
+                }
+                stream.cerrar(/*respuesta OK*/ "0", "4000", "Información", "Expediente Obtenido correctamente");
+                rRespuesta.value = ResponseBuilder.okExpediente();
+                logDAO.registrar(tokenSafe(ticket.value), stream.primerDocID, "ContestaExpedientexLlave",
+                        valorBusqueda, resolveIP(ticket.value), true, null, proyID, inicio);
+                return;
+            }
+
             ArrayOfClsFileHSM array = orquestadorEC.resolver(valorBusqueda, tipoDocID);
 
             // ====== 4) Sin resultados → devolver mensaje QA (7001 + texto largo) ======
             if (array == null || array.getClsFileHSM().isEmpty()) {
-                String xmlNoExp = buildNoExpedienteEnvelope(
-                        ticket.value, proyID, expedienteID, valorBusqueda);
-                writeRawSoap(xmlNoExp);
-
-                rRespuesta.value = ResponseBuilder.errorExpedienteNoEncontrado(proyID, expedienteID, valorBusqueda);
-                contestaExpedientexLlaveResult.value = null;
-
-                logDAO.registrar(tokenSafe(ticket.value), null, "ContestaExpedientexLlave",
-                        valorBusqueda, resolveIP(ticket.value), false, "No se encontró el expediente");
+                responderNoExpediente(ticket, proyID, expedienteID, valorBusqueda, rRespuesta, contestaExpedientexLlaveResult, inicio);
                 return;
             }
 
@@ -232,51 +262,11 @@ public class WsImagenesImpl implements WsImagenesSoap {
             Long primerId = getLong(array.getClsFileHSM().get(0), "getDocID", 0L);
             Integer primerDocID = (primerId != null ? primerId.intValue() : null);
 
-            // ====== 5) Responder RAW o JAXB como antes ======
-            boolean forceRawContesta = propBool("ws.qa.force.raw.contesta", true);
-            if (forceRawContesta) {
-                List<String> rawItems = new ArrayList<>();
-                int idx = 1;
-                for (ClsFileHSM f : array.getClsFileHSM()) {
-                    long docId = getLong(f, "getDocID", 0L);
-                    int tipo = getInt(f, "getTipoDocID", 0);
-                    String ext = str(getStr(f, "getExt"), "");
-                    if (!ext.isEmpty() && !ext.startsWith(".")) ext = "." + ext;
-                    String fechaDig = str(getStr(f, "getFechaDigitalizacion"), "");
-                    byte[] bytes = getBytesHSM(f);
-
-                    String itemXml =
-                            "        <clsFileHSM>\n" +
-                                    "          <DocID>" + docId + "</DocID>\n" +
-                                    "          <DocPID>0</DocPID>\n" +
-                                    "          <TipoDocID>" + tipo + "</TipoDocID>\n" +
-                                    "          <TipoDocIdGrupo>0</TipoDocIdGrupo>\n" +
-                                    "          <Descripcion>Documento</Descripcion>\n" +
-                                    "          <Consecutivo>" + (getInt(f, "getConsecutivo", idx)) + "</Consecutivo>\n" +
-                                    "          <Separador>false</Separador>\n" +
-                                    "          <Ext>" + escapeXml(ext.toUpperCase()) + "</Ext>\n" +
-                                    "          <FechaDigitalizacion>" + escapeXml(fechaDig) + "</FechaDigitalizacion>\n" +
-                                    "          <ArrayFile>" + Base64.getEncoder().encodeToString(bytes != null ? bytes : new byte[0]) + "</ArrayFile>\n" +
-                                    "          <CreatedBy>0</CreatedBy>\n" +
-                                    "        </clsFileHSM>\n";
-                    rawItems.add(itemXml);
-                    idx++;
-                }
-
-                String body = buildContestaLlaveRawEnvelope(rawItems,
-                        /*respuesta OK*/ "0", "4000", "Información", "Expediente Obtenido correctamente");
-                writeRawSoap(body);
-                rRespuesta.value = ResponseBuilder.okExpediente();
-                logDAO.registrar(tokenSafe(ticket.value), primerDocID, "ContestaExpedientexLlave",
-                        valorBusqueda, resolveIP(ticket.value), true, null);
-                return;
-            }
-
-            // JAXB normal
+            // ====== 5) JAXB normal ======
             rRespuesta.value = ResponseBuilder.okExpediente();
             contestaExpedientexLlaveResult.value = array;
             logDAO.registrar(tokenSafe(ticket.value), primerDocID, "ContestaExpedientexLlave",
-                    valorBusqueda, resolveIP(ticket.value), true, null);
+                    valorBusqueda, resolveIP(ticket.value), true, null, proyID, inicio);
 
         } catch (Exception e) {
             System.err.println("[ContestaExpedientexLlave] ERROR: " + e.getMessage());
@@ -284,10 +274,24 @@ public class WsImagenesImpl implements WsImagenesSoap {
             rRespuesta.value = ResponseBuilder.errorProcesoContesta(e.getMessage());
             contestaExpedientexLlaveResult.value = null;
             logDAO.registrar(tokenSafe(ticket != null ? ticket.value : null), null, "ContestaExpedientexLlave",
-                    valorBusqueda, resolveIP(ticket != null ? ticket.value : null), false, e.getMessage());
+                    valorBusqueda, resolveIP(ticket != null ? ticket.value : null), false, e.getMessage(), proyID, inicio);
         }
     }
 
+    /** Sin resultados → mensaje QA (7001 + texto largo). */
+    private void responderNoExpediente(Holder<IDTicket> ticket, short proyID, short expedienteID, String valorBusqueda,
+                                       Holder<Respuesta> rRespuesta, Holder<ArrayOfClsFileHSM> result, long inicio) {
+        String xmlNoExp = buildNoExpedienteEnvelope(
+                ticket.value, proyID, expedienteID, valorBusqueda);
+        writeRawSoap(xmlNoExp);
+
+        rRespuesta.value = ResponseBuilder.errorExpedienteNoEncontrado(proyID, expedienteID, valorBusqueda);
+        result.value = null;
+
+        logDAO.registrar(tokenSafe(ticket.value), null, "ContestaExpedientexLlave",
+                valorBusqueda, resolveIP(ticket.value), false, "No se encontró el expediente", proyID, inicio);
+    }
+
     // =================== ContestaFileHSM (por DocID) ===================
     @WebMethod(operationName = "ContestaFileHSM")
     @Override
@@ -299,6 +303,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
             @WebParam(name = "rRespuesta", mode = WebParam.Mode.INOUT) Holder<Respuesta> rRespuesta,
             @WebParam(name = "ContestaFileHSMResult", mode = WebParam.Mode.OUT) Holder<ClsFileHSM> contestaFileHSMResult) {
 
+        final long inicio = System.nanoTime();
         System.out.println("[ContestaFileHSM] Inicio - DocID: " + docID);
 
         try {
@@ -309,7 +314,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
                 rRespuesta.value = ResponseBuilder.ticketInvalido();
                 contestaFileHSMResult.value = null;
                 logDAO.registrar(tokenSafe(ticket.value), null, "ContestaFileHSM",
-                        null, resolveIP(ticket.value), false, "Ticket inválido (2053)");
+                        null, resolveIP(ticket.value), false, "Ticket inválido (2053)", proyID, inicio);
                 return;
             }
 
@@ -318,7 +323,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
                 rRespuesta.value = ResponseBuilder.okSinResultados();
                 contestaFileHSMResult.value = null;
                 logDAO.registrar(tokenSafe(ticket.value), null, "ContestaFileHSM",
-                        null, resolveIP(ticket.value), false, "DocID no encontrado");
+                        null, resolveIP(ticket.value), false, "DocID no encontrado", proyID, inicio);
                 return;
             }
 
@@ -327,7 +332,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
                 rRespuesta.value = ResponseBuilder.error("404", "ARCHIVO_NO_ENCONTRADO", d.rutaRelativa);
                 contestaFileHSMResult.value = null;
                 logDAO.registrar(tokenSafe(ticket.value), d.idDocumento, "ContestaFileHSM",
-                        null, resolveIP(ticket.value), false, "Archivo no encontrado en disco");
+                        null, resolveIP(ticket.value), false, "Archivo no encontrado en disco", proyID, inicio);
                 return;
             }
 
@@ -336,7 +341,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
             contestaFileHSMResult.value = f;
 
             logDAO.registrar(tokenSafe(ticket.value), d.idDocumento, "ContestaFileHSM",
-                    null, resolveIP(ticket.value), true, null);
+                    null, resolveIP(ticket.value), true, null, proyID, inicio);
 
         } catch (Exception e) {
             System.err.println("[ContestaFileHSM] ERROR: " + e.getMessage());
@@ -344,7 +349,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
             rRespuesta.value = ResponseBuilder.error("7002", "ContestaFileHSM", e.getMessage());
             contestaFileHSMResult.value = null;
             logDAO.registrar(tokenSafe(ticket.value), null, "ContestaFileHSM",
-                    null, resolveIP(ticket.value), false, e.getMessage());
+                    null, resolveIP(ticket.value), false, e.getMessage(), proyID, inicio);
         }
     }
 
@@ -357,15 +362,21 @@ public class WsImagenesImpl implements WsImagenesSoap {
         try {
             if (t == null) return TicketState.INVALID;
 
+            // 0) Ticket firmado: la firma decide sin ir a BD
+            switch (ticketManager.estadoFirmado(t)) {
+                case VIGENTE:  return TicketState.OK;
+                case EXPIRADO: return TicketState.EXPIRED;
+                case INVALIDO: return TicketState.INVALID;
+                default:       break; // NO_FIRMADO: validación por BD
+            }
+
             // 1) Si validar() dice vigente => OK
             if (ticketManager.validar(t)) return TicketState.OK;
 
             // 2) Si tenemos FechaExpiracion en el ticket, comparamos
             XMLGregorianCalendar xexp = getXmlCal(t, "getFechaExpiracion");
             if (xexp != null) {
-                ZonedDateTime exp = xexp.toGregorianCalendar().toZonedDateTime();
-                ZonedDateTime now = ZonedDateTime.now(ZoneId.of("America/Mexico_City"));
-                if (now.isAfter(exp)) return TicketState.EXPIRED;
+                if (System.currentTimeMillis() > xexp.toGregorianCalendar().getTimeInMillis()) return TicketState.EXPIRED;
             }
 
             // 3) Si no podemos saber, lo marcamos inválido/corrupto
@@ -379,16 +390,6 @@ public class WsImagenesImpl implements WsImagenesSoap {
         try { return TokenUtils.tokenFrom(t); } catch (Exception e) { return null; }
     }
 
-    private boolean propBool(String key, boolean def) {
-        try {
-            String v = db.getProperty(key);
-            if (v == null) return def;
-            return "true".equalsIgnoreCase(v.trim());
-        } catch (Exception e) {
-            return def;
-        }
-    }
-
     private static boolean hasSetter(Object target, String method, Class<?> type) {
         try {
             target.getClass().getMethod(method, type);
@@ -421,41 +422,194 @@ public class WsImagenesImpl implements WsImagenesSoap {
 
     private void writeRawSoap(String soapXml) {
         try {
-            MessageContext mc = wsContext.getMessageContext();
-            Object resp = mc.get(MessageContext.SERVLET_RESPONSE);
-            if (resp == null) throw new IllegalStateException("No HttpServletResponse in MessageContext");
-
-            Class<?> respCls = resp.getClass();
-            Method setStatus = respCls.getMethod("setStatus", int.class);
-            Method setContentType = respCls.getMethod("setContentType", String.class);
-            Method getWriter = respCls.getMethod("getWriter");
-
-            setStatus.invoke(resp, 200);
-            setContentType.invoke(resp, "application/soap+xml; charset=utf-8"); // SOAP 1.2
-            Object writer = getWriter.invoke(resp);
-
-            Class<?> writerCls = writer.getClass(); // PrintWriter
-            Method write = writerCls.getMethod("write", String.class);
-            Method flush = writerCls.getMethod("flush");
-            write.invoke(writer, soapXml);
-            flush.invoke(writer);
+            Writer writer = openRawWriter();
+            writer.write(soapXml);
+            writer.flush();
+        } catch (Exception ex) {
+            throw new RuntimeException("No se pudo escribir SOAP crudo", ex);
+        }
+    }
+
+    /** Prepara la respuesta HTTP (200, SOAP 1.2) y devuelve su writer. Reflexión: sin dependencia de servlet-api. */
+    private Writer openRawWriter() {
+        try {
+            Object resp = rawResponse();
+            return (Writer) RAW_RESPONSE.get(resp.getClass()).getWriter.invoke(resp); // PrintWriter
+        } catch (Exception ex) {
+            throw new RuntimeException("No se pudo escribir SOAP crudo", ex);
+        }
+    }
+
+    /** Igual que openRawWriter pero en bytes: para contenido ya codificado en UTF-8. */
+    private OutputStream openRawStream() {
+        try {
+            Object resp = rawResponse();
+            return (OutputStream) RAW_RESPONSE.get(resp.getClass()).getOutputStream.invoke(resp); // ServletOutputStream
         } catch (Exception ex) {
             throw new RuntimeException("No se pudo escribir SOAP crudo", ex);
         }
     }
 
-    /** Envelope RAW para éxito de ContestaExpedientexLlave. */
-    private String buildContestaLlaveRawEnvelope(List<String> rawItems,
-                                                 String respuestaID, String categoria,
-                                                 String descCategoria, String descRespuesta) {
-        StringBuilder sb = new StringBuilder(4096);
-        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
-                .append("<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" ")
-                .append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">")
-                .append("<soap:Body>")
-                .append("<ContestaExpedientexLlaveResponse xmlns=\"http://Digipro.servicios/WsImagenes/WsImagenes\">")
-                .append("<ContestaExpedientexLlaveResult>\n");
-        for (String it : rawItems) sb.append(it);
+    /** HttpServletResponse de la petición actual con status 200 y content type SOAP 1.2. */
+    private Object rawResponse() throws Exception {
+        MessageContext mc = wsContext.getMessageContext();
+        Object resp = mc.get(MessageContext.SERVLET_RESPONSE);
+        if (resp == null) throw new IllegalStateException("No HttpServletResponse in MessageContext");
+
+        RawResponseMethods m = RAW_RESPONSE.get(resp.getClass());
+        m.setStatus.invoke(resp, 200);
+        m.setContentType.invoke(resp, "application/soap+xml; charset=utf-8"); // SOAP 1.2
+        return resp;
+    }
+
+    /** Métodos de HttpServletResponse resueltos una vez por clase del contenedor. */
+    private static final ClassValue<RawResponseMethods> RAW_RESPONSE = new ClassValue<RawResponseMethods>() {
+        @Override
+        protected RawResponseMethods computeValue(Class<?> type) {
+            return new RawResponseMethods(type);
+        }
+    };
+
+    private static final class RawResponseMethods {
+        final Method setStatus, setContentType, getWriter, getOutputStream;
+
+        RawResponseMethods(Class<?> respCls) {
+            try {
+                setStatus = respCls.getMethod("setStatus", int.class);
+                setContentType = respCls.getMethod("setContentType", String.class);
+                getWriter = respCls.getMethod("getWriter");
+                getOutputStream = respCls.getMethod("getOutputStream");
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("SERVLET_RESPONSE no es un HttpServletResponse: " + respCls.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Envelope RAW de éxito de ContestaExpedientexLlave escrito por partes: cabecera con el primer
+     * documento, un clsFileHSM por documento y el rRespuesta al cerrar. Solo se retiene un documento a la vez.
+     * Si algo falla después de abrir, la respuesta ya enviada queda incompleta (el cliente la descarta).
+     */
+    private final class RawContestaStream {
+        private OutputStream out;
+        private int idx = 1;
+        Integer primerDocID;
+        // Tramos para codificar el archivo a Base64 por partes (entrada múltiplo de 3, salida = 4/3)
+        private byte[] entrada;
+        private byte[] salida;
+
+        /**
+         * @param contenido archivo del documento (solo válido durante la llamada), o null para tomar
+         *                  el byte[] del ClsFileHSM
+         */
+        void agregar(ClsFileHSM f, FileSystemAdapter.Contenido contenido) {
+            try {
+                if (out == null) {
+                    Long primerId = getLong(f, "getDocID", 0L);
+                    primerDocID = (primerId != null ? primerId.intValue() : null);
+                    out = openRawStream();
+                    out.write(contestaLlaveRawHead().getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(rawItemHead(f, idx++).getBytes(StandardCharsets.UTF_8));
+                if (contenido != null) {
+                    escribirBase64(contenido);
+                } else {
+                    byte[] bytes = getBytesHSM(f);
+                    if (bytes != null) escribirBase64(bytes);
+                }
+                out.write(RAW_ITEM_FOOT);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo escribir SOAP crudo", e);
+            }
+        }
+
+        /** Base64 estándar (igual que Base64.getEncoder()) del archivo, por tramos y sin copiarlo entero al heap. */
+        private void escribirBase64(FileSystemAdapter.Contenido src) throws IOException {
+            if (entrada == null) entrada = new byte[3 * 16 * 1024];
+            int len;
+            while ((len = src.leer(entrada, 0, entrada.length)) > 0) {
+                codificarTramo(entrada, 0, len);
+            }
+        }
+
+        private void escribirBase64(byte[] src) throws IOException {
+            for (int i = 0; i < src.length; i += 3 * 16 * 1024) {
+                codificarTramo(src, i, Math.min(src.length - i, 3 * 16 * 1024));
+            }
+        }
+
+        /** Escribe el Base64 de un tramo; len no múltiplo de 3 (con relleno '=') solo en el último. */
+        private void codificarTramo(byte[] src, int desde, int len) throws IOException {
+            if (salida == null) salida = new byte[4 * 16 * 1024];
+            byte[] a = LoginXmlTemplate.B64;
+            int i = desde, n = 0;
+            for (int fin = desde + len - len % 3; i < fin; i += 3) {
+                int v = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+                salida[n++] = a[v >>> 18];
+                salida[n++] = a[(v >>> 12) & 0x3f];
+                salida[n++] = a[(v >>> 6) & 0x3f];
+                salida[n++] = a[v & 0x3f];
+            }
+            if (i < desde + len) {
+                int resto = desde + len - i;
+                int v = (src[i] & 0xff) << 16 | (resto == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+                salida[n++] = a[v >>> 18];
+                salida[n++] = a[(v >>> 12) & 0x3f];
+                salida[n++] = resto == 2 ? a[(v >>> 6) & 0x3f] : (byte) '=';
+                salida[n++] = '=';
+            }
+            out.write(salida, 0, n);
+        }
+
+        void cerrar(String respuestaID, String categoria, String descCategoria, String descRespuesta) {
+            try {
+                out.write(contestaLlaveRawFoot(respuestaID, categoria, descCategoria, descRespuesta).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo escribir SOAP crudo", e);
+            }
+        }
+    }
+
+    /** Nodo clsFileHSM del envelope RAW hasta abrir ArrayFile (el archivo y RAW_ITEM_FOOT van aparte). */
+    private static String rawItemHead(ClsFileHSM f, int idx) {
+        long docId = getLong(f, "getDocID", 0L);
+        int tipo = getInt(f, "getTipoDocID", 0);
+        String ext = str(getStr(f, "getExt"), "");
+        if (!ext.isEmpty() && !ext.startsWith(".")) ext = "." + ext;
+        String fechaDig = str(getStr(f, "getFechaDigitalizacion"), "");
+
+        return "        <clsFileHSM>\n" +
+                "          <DocID>" + docId + "</DocID>\n" +
+                "          <DocPID>0</DocPID>\n" +
+                "          <TipoDocID>" + tipo + "</TipoDocID>\n" +
+                "          <TipoDocIdGrupo>0</TipoDocIdGrupo>\n" +
+                "          <Descripcion>Documento</Descripcion>\n" +
+                "          <Consecutivo>" + (getInt(f, "getConsecutivo", idx)) + "</Consecutivo>\n" +
+                "          <Separador>false</Separador>\n" +
+                "          <Ext>" + escapeXml(ext.toUpperCase()) + "</Ext>\n" +
+                "          <FechaDigitalizacion>" + escapeXml(fechaDig) + "</FechaDigitalizacion>\n" +
+                "          <ArrayFile>";
+    }
+
+    private static final byte[] RAW_ITEM_FOOT = ("</ArrayFile>\n" +
+            "          <CreatedBy>0</CreatedBy>\n" +
+            "        </clsFileHSM>\n").getBytes(StandardCharsets.UTF_8);
+
+    /** Inicio del envelope RAW de éxito de ContestaExpedientexLlave (hasta abrir ContestaExpedientexLlaveResult). */
+    private static String contestaLlaveRawHead() {
+        return "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">"
+                + "<soap:Body>"
+                + "<ContestaExpedientexLlaveResponse xmlns=\"http://Digipro.servicios/WsImagenes/WsImagenes\">"
+                + "<ContestaExpedientexLlaveResult>\n";
+    }
+
+    /** Cierre del envelope RAW de éxito: fin de ContestaExpedientexLlaveResult + rRespuesta. */
+    private static String contestaLlaveRawFoot(String respuestaID, String categoria,
+                                               String descCategoria, String descRespuesta) {
+        StringBuilder sb = new StringBuilder(1024);
         sb.append("</ContestaExpedientexLlaveResult>")
                 .append("<rRespuesta>")
                 .append("<RespuestaID xmlns=\"http://Digipro.servicios/WsUsuarios/WsUsuarios\">").append(escapeXml(respuestaID)).append("</RespuestaID>")
@@ -540,7 +694,7 @@ public class WsImagenesImpl implements WsImagenesSoap {
 
         XMLGregorianCalendar xinicio = getXmlCal(t, "getFechaHoraInicio");
         XMLGregorianCalendar xultimo = getXmlCal(t, "getFechaHoraUltimoAcceso");
-        String sInicio = xinicio != null ? xinicio.toXMLFormat() : nowXml();
+        String sInicio = xinicio != null ? xinicio.toXMLFormat() : TiempoMx.ahoraXml();
         String sUltimo = xultimo != null ? xultimo.toXMLFormat() : sInicio;
 
         int tv  = getInt(t, "getTiempoVida", 1000);
@@ -559,12 +713,12 @@ public class WsImagenesImpl implements WsImagenesSoap {
         int noIdentidad       = getInt(t, "getNoIdentidad", 10);
 
         XMLGregorianCalendar xUltLogin = getXmlCal(t, "getFechaUltLogin");
-        String sUltLogin = xUltLogin != null ? xUltLogin.toXMLFormat() : "0001-01-01T00:00:00";
+        String sUltLogin = xUltLogin != null ? xUltLogin.toXMLFormat() : TiempoMx.FECHA_DEFAULT_XML;
         int durDias      = getInt(t, "getDuracionDias", 0);
         int avisoPwdDias = getInt(t, "getAvisoCaducidadPwdDias", 0);
 
         XMLGregorianCalendar xCrePwd = getXmlCal(t, "getFechaCreacionPwd");
-        String sCrePwd = xCrePwd != null ? xCrePwd.toXMLFormat() : "0001-01-01T00:00:00";
+        String sCrePwd = xCrePwd != null ? xCrePwd.toXMLFormat() : TiempoMx.FECHA_DEFAULT_XML;
 
         return "  <Ticket>\n" +
                 "    <TicketID xmlns=\"" + ns + "\">" + escapeXml(str(token, "")) + "</TicketID>\n" +
@@ -651,26 +805,16 @@ public class WsImagenesImpl implements WsImagenesSoap {
         } catch (Throwable ignore) { return null; }
     }
 
-    private static String nowXml() {
+    private int calcTiempoRestante(IDTicket t) {
         try {
-            ZoneId tzMx = ZoneId.of("America/Mexico_City");
-            var zdt = ZonedDateTime.now(tzMx);
-            var gc = java.util.GregorianCalendar.from(zdt);
-            var x = javax.xml.datatype.DatatypeFactory.newInstance().newXMLGregorianCalendar(gc);
-            return x.toXMLFormat();
-        } catch (Exception e) {
-            return "0001-01-01T00:00:00";
-        }
-    }
+            // Lo que sabe el servidor manda (p. ej. vigencia extendida por expiración deslizante)
+            Integer servidor = ticketManager.segundosRestantes(t);
+            if (servidor != null) return servidor;
 
-    private static int calcTiempoRestante(IDTicket t) {
-        try {
             XMLGregorianCalendar xExp = getXmlCal(t, "getFechaExpiracion");
             if (xExp == null) return getInt(t, "getTiempoRestante", 1000);
-            ZonedDateTime exp = xExp.toGregorianCalendar().toZonedDateTime();
-            ZonedDateTime now = ZonedDateTime.now(ZoneId.of("America/Mexico_City"));
-            long secs = java.time.Duration.between(now, exp).getSeconds();
-            return (int) secs; // puede ser negativo si expiró
+            long ms = xExp.toGregorianCalendar().getTimeInMillis() - System.currentTimeMillis();
+            return (int) Math.floorDiv(ms, 1000L); // puede ser negativo si expiró
         } catch (Exception e) {
             return getInt(t, "getTiempoRestante", -1);
         }
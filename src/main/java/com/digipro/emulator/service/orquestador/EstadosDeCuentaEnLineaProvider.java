@@ -1,5 +1,6 @@
 package com.digipro.emulator.service.orquestador;
 
+import com.digipro.emulator.config.AppConfig;
 import com.digipro.emulator.database.DatabaseManager;
 import com.digipro.emulator.ws.generated.ArrayOfClsFileHSM;
 import com.digipro.emulator.ws.generated.ClsFileHSM;
@@ -19,14 +20,12 @@ public class EstadosDeCuentaEnLineaProvider {
 
     /** Retorna null si falla y routing.fallback.habilitado=true (para que el orquestador caiga a HISTÓRICO). */
     public ArrayOfClsFileHSM obtenerSimulado(String llave, int anio, int mes, String contrato) throws Exception {
-        String pdfPath = db.getProperty("estadoscuenta.simulado.pdf");
-
-        // DatabaseManager.getProperty solo acepta 1 parámetro → calculamos fallback manualmente
-        String fb = db.getProperty("routing.fallback.habilitado");
-        boolean fallback = (fb == null || fb.isBlank()) ? true : Boolean.parseBoolean(fb.trim());
+        AppConfig cfg = db.getConfig();
+        String pdfPath = cfg.estadosCuentaSimuladoPdf;
+        boolean fallback = cfg.routingFallbackHabilitado;
 
         try {
-            if (pdfPath == null || pdfPath.isBlank()) {
+            if (pdfPath == null) {
                 throw new IllegalStateException("estadoscuenta.simulado.pdf no configurado");
             }
             Path p = Paths.get(pdfPath);
@@ -7,8 +7,9 @@ import com.digipro.emulator.ws.generated.ArrayOfClsFileHSM;
 import com.digipro.emulator.ws.generated.ClsFileHSM;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Encapsula tu lógica ACTUAL (DAO + lectura de archivos).
@@ -34,43 +35,104 @@ public class HistoricoIDPortalProvider {
         if (docs == null || docs.isEmpty()) return arr;
 
         int consecutivo = 1;
-        for (DocumentoDTO d : new ArrayList<>(docs)) {
+        for (DocumentoDTO d : docs) {
             try {
                 byte[] contenido = fileAdapter.readFile(d.rutaRelativa);
                 if (contenido == null) continue;
 
                 d.consecutivo = consecutivo++;
+                arr.getClsFileHSM().add(toClsFileHSM(d, contenido));
 
-                ClsFileHSM f = new ClsFileHSM();
-                f.setDocID(d.idDocumento != null ? d.idDocumento.longValue() : 0L);
+            } catch (Exception ex) {
+                System.err.println("[HistoricoIDPortal] No se pudo leer " + d.rutaRelativa + " -> " + ex.getMessage());
+            }
+        }
+        return arr;
+    }
 
-                // setters tolerantes (según stub generado):
-                HsmSetterUtil.setArchivo(f, contenido);
-                HsmSetterUtil.setLlave(f, d.llaveBusqueda);
-                HsmSetterUtil.setTipoDocId(f, d.tipoDocId != null ? d.tipoDocId : 0);
+    /**
+     * Igual que obtener(), pero entrega cada documento en cuanto se lee su archivo:
+     * DAO (páginas por keyset) → lectura de archivo → destino, uno a la vez, sin acumular el expediente en memoria.
+     * Los documentos cuyo archivo no se puede leer se omiten.
+     *
+     * @return número de documentos entregados
+     */
+    public int recorrer(String llave, int tipoDocID, Consumer<ClsFileHSM> destino) {
+        int[] consecutivo = {1};
+        documentoDAO.recorrerPorLlave(llave, tipoDocID, d -> {
+            ClsFileHSM f;
+            try {
+                byte[] contenido = fileAdapter.readFile(d.rutaRelativa);
+                if (contenido == null) return;
 
-                String ext = d.extension;
-                if (ext != null && !ext.isEmpty() && !ext.startsWith(".")) ext = "." + ext;
-                String extFinal = (ext == null ? "" : ext.toUpperCase());
-                HsmSetterUtil.setExt(f, extFinal);
+                d.consecutivo = consecutivo[0]++;
+                f = toClsFileHSM(d, contenido);
 
-                if (d.fechaCreacion != null) {
-                    try {
-                        f.getClass().getMethod("setFechaDigitalizacion", String.class)
-                                .invoke(f, sdf.format(d.fechaCreacion));
-                    } catch (Throwable ignore) {}
-                }
-                HsmSetterUtil.setNombreArchivo(f, d.getNombreArchivo());
+            } catch (Exception ex) {
+                System.err.println("[HistoricoIDPortal] No se pudo leer " + d.rutaRelativa + " -> " + ex.getMessage());
+                return;
+            }
+            // Fuera del try: un fallo del destino (p. ej. escritura de la respuesta) sí debe propagarse
+            destino.accept(f);
+        });
+        return consecutivo[0] - 1;
+    }
 
-                // consecutivo (opcional si existe el setter)
-                try { f.getClass().getMethod("setConsecutivo", int.class).invoke(f, d.getConsecutivo()); } catch (Throwable ignore) {}
+    /**
+     * Igual que recorrer(), pero el archivo no se copia al ClsFileHSM: se entrega aparte abierto
+     * (FileSystemAdapter.abrir), válido solo durante la llamada al destino.
+     *
+     * @return número de documentos entregados
+     */
+    public int recorrerContenido(String llave, int tipoDocID, BiConsumer<ClsFileHSM, FileSystemAdapter.Contenido> destino) {
+        int[] consecutivo = {1};
+        documentoDAO.recorrerPorLlave(llave, tipoDocID, d -> {
+            FileSystemAdapter.Contenido contenido = null;
+            ClsFileHSM f;
+            try {
+                contenido = fileAdapter.abrir(d.rutaRelativa);
+                if (contenido == null) return;
 
-                arr.getClsFileHSM().add(f);
+                d.consecutivo = consecutivo[0]++;
+                f = toClsFileHSM(d, null);
 
             } catch (Exception ex) {
+                if (contenido != null) contenido.close();
                 System.err.println("[HistoricoIDPortal] No se pudo leer " + d.rutaRelativa + " -> " + ex.getMessage());
+                return;
+            }
+            try (FileSystemAdapter.Contenido c = contenido) {
+                destino.accept(f, c);
             }
+        });
+        return consecutivo[0] - 1;
+    }
+
+    /** @param contenido null = sin archivo (se entrega aparte) */
+    private ClsFileHSM toClsFileHSM(DocumentoDTO d, byte[] contenido) {
+        ClsFileHSM f = new ClsFileHSM();
+        f.setDocID(d.idDocumento != null ? d.idDocumento.longValue() : 0L);
+
+        // setters tolerantes (según stub generado):
+        if (contenido != null) HsmSetterUtil.setArchivo(f, contenido);
+        HsmSetterUtil.setLlave(f, d.llaveBusqueda);
+        HsmSetterUtil.setTipoDocId(f, d.tipoDocId != null ? d.tipoDocId : 0);
+
+        String ext = d.extension;
+        if (ext != null && !ext.isEmpty() && !ext.startsWith(".")) ext = "." + ext;
+        String extFinal = (ext == null ? "" : ext.toUpperCase());
+        HsmSetterUtil.setExt(f, extFinal);
+
+        if (d.fechaCreacion != null) {
+            try {
+                f.getClass().getMethod("setFechaDigitalizacion", String.class)
+                        .invoke(f, sdf.format(d.fechaCreacion));
+            } catch (Throwable ignore) {}
         }
-        return arr;
+        HsmSetterUtil.setNombreArchivo(f, d.getNombreArchivo());
+
+        // consecutivo (opcional si existe el setter)
+        try { f.getClass().getMethod("setConsecutivo", int.class).invoke(f, d.getConsecutivo()); } catch (Throwable ignore) {}
+        return f;
     }
 }
@@ -4,6 +4,11 @@ import com.digipro.emulator.adapter.FileSystemAdapter;
 import com.digipro.emulator.database.DatabaseManager;
 import com.digipro.emulator.database.DocumentoDAO;
 import com.digipro.emulator.ws.generated.ArrayOfClsFileHSM;
+import com.digipro.emulator.ws.generated.ClsFileHSM;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 /**
  * Orquestador FASE 1
@@ -52,8 +57,39 @@ public class OrquestadorEstadosCuenta {
 
     /** Decide la fuente según el periodo MMYYYY derivado de la llave (sin modificar la llave ni el WSDL). */
     public ArrayOfClsFileHSM resolver(String llave, int tipoDocID) throws Exception {
+        ArrayOfClsFileHSM arr = new ArrayOfClsFileHSM();
+        resolver(llave, arr.getClsFileHSM()::add, () -> {
+            ArrayOfClsFileHSM hist = historicoProvider.obtener(llave, tipoDocID);
+            arr.getClsFileHSM().addAll(hist.getClsFileHSM());
+            return hist.getClsFileHSM().size();
+        });
+        return arr;
+    }
+
+    /**
+     * Igual que resolver(llave, tipoDocID), pero entrega los documentos al destino uno a uno
+     * (el histórico se recorre por páginas, sin juntar el expediente en memoria).
+     *
+     * @return número de documentos entregados (0 = expediente no encontrado)
+     */
+    public int resolver(String llave, int tipoDocID, Consumer<ClsFileHSM> destino) throws Exception {
+        return resolver(llave, destino, () -> historicoProvider.recorrer(llave, tipoDocID, destino));
+    }
+
+    /**
+     * Igual que resolver(llave, tipoDocID, destino), pero los archivos del histórico llegan abiertos
+     * aparte (válidos solo durante la llamada) en vez de byte[] dentro del ClsFileHSM.
+     * Los documentos de la fuente reciente traen su archivo en el ClsFileHSM y llegan con null.
+     *
+     * @return número de documentos entregados (0 = expediente no encontrado)
+     */
+    public int resolverContenido(String llave, int tipoDocID, BiConsumer<ClsFileHSM, FileSystemAdapter.Contenido> destino) throws Exception {
+        return resolver(llave, f -> destino.accept(f, null), () -> historicoProvider.recorrerContenido(llave, tipoDocID, destino));
+    }
+
+    private int resolver(String llave, Consumer<ClsFileHSM> destinoReciente, IntSupplier historico) throws Exception {
         if (llave == null || llave.isBlank()) {
-            return historicoProvider.obtener(llave, tipoDocID);
+            return historico.getAsInt();
         }
 
         // 1) Parseo robusto: acepta mes 1 o 2 dígitos al inicio (ej. 2/2025 o 02/2025)
@@ -62,8 +98,8 @@ public class OrquestadorEstadosCuenta {
         // 2) MMYYYY interno (como entero) para comparar: mes*10000 + anio
         int periodoLlaveMMYYYY = toPeriodoMMYYYY(k.mes, k.anio);
 
-        // 3) Lee y normaliza el corte desde properties a MMYYYY (entero)
-        int periodoCorteMMYYYY = parseCorteToMMYYYY(db.getProperty("routing.fecha.corte"), /*def*/ 102025);
+        // 3) Corte ya normalizado a MMYYYY (entero) en el snapshot de configuración
+        int periodoCorteMMYYYY = db.getConfig().routingCorteMMYYYY;
 
         // Log informativo (no afecta contrato)
         System.out.println("[ORQUESTADOR] llave=" + llave
@@ -76,54 +112,19 @@ public class OrquestadorEstadosCuenta {
             System.out.println("[ORQUESTADOR] Fuente: RECIENTE (ESTADOS DE CUENTA EN LÍNEA)");
             ArrayOfClsFileHSM sim = onlineProvider.obtenerSimulado(llave, k.anio, k.mes, k.contrato);
             if (sim != null && !sim.getClsFileHSM().isEmpty()) {
-                return sim; // Simulado OK
+                sim.getClsFileHSM().forEach(destinoReciente); // Simulado OK
+                return sim.getClsFileHSM().size();
             }
             System.out.println("[ORQUESTADOR] Fallback → Fuente: HISTÓRICO IDPORTAL");
-            return historicoProvider.obtener(llave, tipoDocID);
+            return historico.getAsInt();
         } else {
             System.out.println("[ORQUESTADOR] Fuente: HISTÓRICO IDPORTAL");
-            return historicoProvider.obtener(llave, tipoDocID);
+            return historico.getAsInt();
         }
     }
 
-
-
     /** Convierte (mes, año) a entero MMYYYY (ej. 10/2025 -> 102025 ; 2/2025 -> 22025). */
     private static int toPeriodoMMYYYY(int mes, int anio) {
         return (mes * 10000) + anio;
     }
-
-    /**
-     * Normaliza un texto de corte a entero MMYYYY.
-     * Acepta:
-     *   - "MMYYYY" (p.ej. 102025) -> 102025
-     *   - "YYYYMM" (p.ej. 202510) -> 102025
-     * Si no reconoce el formato, usa 'def'.
-     */
-    private static int parseCorteToMMYYYY(String prop, int def) {
-        try {
-            if (prop == null) return def;
-            String v = prop.trim();
-            if (v.length() == 6) {
-                // Intento como MMYYYY
-                int mm = Integer.parseInt(v.substring(0, 2));
-                int yyyy = Integer.parseInt(v.substring(2, 6));
-                if (isValidYearMonth(yyyy, mm)) return toPeriodoMMYYYY(mm, yyyy);
-
-                // Intento como YYYYMM
-                int yyyy2 = Integer.parseInt(v.substring(0, 4));
-                int mm2 = Integer.parseInt(v.substring(4, 6));
-                if (isValidYearMonth(yyyy2, mm2)) return toPeriodoMMYYYY(mm2, yyyy2);
-            }
-
-            // Fallback: si viene como entero "crudo" (ej. 22025 para 02/2025), úsalo
-            return Integer.parseInt(v);
-        } catch (Exception e) {
-            return def;
-        }
-    }
-
-    private static boolean isValidYearMonth(int year, int month) {
-        return (year >= 1900 && year <= 2100) && (month >= 1 && month <= 12);
-    }
 }
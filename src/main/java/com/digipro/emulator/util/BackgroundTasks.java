@@ -0,0 +1,61 @@
+package com.digipro.emulator.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Planificador compartido para tareas de mantenimiento en segundo plano
+ * (depuración del pool de conexiones, recarga de configuración, etc.).
+ *
+ * Los hilos son daemon para no impedir el undeploy; cada tarea se envuelve para que
+ * una excepción no cancele sus ejecuciones siguientes.
+ */
+public final class BackgroundTasks {
+
+    private static final AtomicInteger SEQ = new AtomicInteger();
+    private static ScheduledExecutorService executor;
+
+    private BackgroundTasks() {}
+
+    private static synchronized ScheduledExecutorService executor() {
+        if (executor == null || executor.isShutdown()) {
+            executor = Executors.newScheduledThreadPool(2, r -> {
+                Thread t = new Thread(r, "emulator-bg-" + SEQ.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    /** Ejecuta la tarea periódicamente con retardo fijo entre ejecuciones. */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(String nombre, Runnable tarea, long periodo, TimeUnit unidad) {
+        return executor().scheduleWithFixedDelay(guarded(nombre, tarea), periodo, periodo, unidad);
+    }
+
+    /** Ejecuta la tarea una sola vez en segundo plano. */
+    public static void submit(String nombre, Runnable tarea) {
+        executor().execute(guarded(nombre, tarea));
+    }
+
+    /** Detiene el planificador (undeploy). Las tareas en curso terminan; no se programan más. */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static Runnable guarded(String nombre, Runnable tarea) {
+        return () -> {
+            try {
+                tarea.run();
+            } catch (Throwable t) {
+                System.err.println("[BackgroundTasks] Error en tarea '" + nombre + "': " + t.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.digipro.emulator.util;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Fechas de las respuestas SOAP en hora de México (como QA).
+ *
+ * Resuelve una sola vez la zona y el DatatypeFactory (newInstance() hace una búsqueda de
+ * service loader en cada llamada) y arma los XMLGregorianCalendar campo por campo, sin pasar por
+ * GregorianCalendar. La cadena ISO de "ahora" se reutiliza mientras no cambie el milisegundo.
+ */
+public final class TiempoMx {
+
+    public static final ZoneId ZONA = ZoneId.of("America/Mexico_City");
+
+    /** Fecha "vacía" de QA: 0001-01-01T00:00:00 sin zona. */
+    public static final String FECHA_DEFAULT_XML = "0001-01-01T00:00:00";
+
+    /** Mismo formato que XMLGregorianCalendar.toXMLFormat() con milisegundos y zona. */
+    private static final DateTimeFormatter ISO_MS = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSSXXX");
+
+    private static final DatatypeFactory FACTORY;
+    private static final XMLGregorianCalendar FECHA_DEFAULT;
+
+    static {
+        try {
+            FACTORY = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        FECHA_DEFAULT = FACTORY.newXMLGregorianCalendar(1, 1, 1, 0, 0, 0,
+                DatatypeConstants.FIELD_UNDEFINED, DatatypeConstants.FIELD_UNDEFINED);
+    }
+
+    private static volatile Ahora ahora = new Ahora(Long.MIN_VALUE, null);
+
+    private TiempoMx() {}
+
+    public static ZonedDateTime ahora() {
+        return ZonedDateTime.now(ZONA);
+    }
+
+    /** "Ahora" en formato xsd:dateTime con milisegundos y zona; una instancia por milisegundo. */
+    public static String ahoraXml() {
+        long ms = System.currentTimeMillis();
+        Ahora a = ahora;
+        if (a.ms != ms) {
+            a = new Ahora(ms, ISO_MS.format(Instant.ofEpochMilli(ms).atZone(ZONA)));
+            ahora = a;
+        }
+        return a.xml;
+    }
+
+    /** ZonedDateTime → XMLGregorianCalendar con milisegundos y zona. */
+    public static XMLGregorianCalendar xmlCal(ZonedDateTime zdt) {
+        return FACTORY.newXMLGregorianCalendar(zdt.getYear(), zdt.getMonthValue(), zdt.getDayOfMonth(),
+                zdt.getHour(), zdt.getMinute(), zdt.getSecond(), zdt.getNano() / 1_000_000,
+                zdt.getOffset().getTotalSeconds() / 60);
+    }
+
+    /** 0001-01-01T00:00:00 sin zona. Copia nueva: XMLGregorianCalendar es mutable. */
+    public static XMLGregorianCalendar fechaDefault() {
+        return (XMLGregorianCalendar) FECHA_DEFAULT.clone();
+    }
+
+    private static final class Ahora {
+        final long ms;
+        final String xml;
+
+        Ahora(long ms, String xml) {
+            this.ms = ms;
+            this.xml = xml;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+-- =====================================================================
+-- V1: índices para las consultas calientes de DocumentoDAO, TicketDAO y UsuarioDAO.
+-- Idempotente (IF NOT EXISTS): se puede aplicar sobre una BD que ya los tenga.
+-- Requiere PostgreSQL 11+ (INCLUDE).
+--
+-- CONCURRENTLY: las tablas siguen recibiendo escrituras mientras se construye cada índice.
+-- No puede ir dentro de una transacción, por eso el script se ejecuta sentencia por sentencia:
+-- migracion: sin-transaccion
+-- =====================================================================
+
+-- DocumentoDAO: WHERE llave_busqueda = ? [AND tipo_doc_id = ?] ORDER BY tipo_doc_id, id_documento
+-- y llave_busqueda = ANY(?) ORDER BY llave_busqueda, tipo_doc_id, id_documento.
+-- El orden de columnas evita el Sort; id_archivo incluido para el JOIN con archivos_fisicos.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_documentos_llave_tipo
+    ON documentos (llave_busqueda, tipo_doc_id, id_documento)
+    INCLUDE (id_archivo);
+
+-- TicketDAO.validarVigente: WHERE id_ticket = ? AND activo = true AND fecha_expiracion > now
+-- Parcial sobre los tickets activos (los desactivados no ocupan espacio en el índice) y con
+-- fecha_expiracion incluida: se resuelve con index-only scan.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_tickets_vigentes
+    ON tickets (id_ticket)
+    INCLUDE (fecha_expiracion)
+    WHERE activo = true;
+
+-- UsuarioDAO.validar: WHERE username = ? AND password = ? AND activo = true
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_usuarios_username_activos
+    ON usuarios (username)
+    WHERE activo = true;
+
+-- log_accesos es de solo inserción: un BRIN sobre fecha_hora casi no cuesta en cada INSERT
+-- y sirve para consultas por rango de fechas (reportes, depuración).
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_log_accesos_fecha_brin
+    ON log_accesos USING brin (fecha_hora);
+
+ANALYZE documentos;
+ANALYZE tickets;
+ANALYZE usuarios;
@@ -0,0 +1,15 @@
+-- =====================================================================
+-- V2: soporte para la depuración de tickets expirados (TicketSweeper).
+-- Índices con CONCURRENTLY (no bloquean las escrituras a tickets); sentencia por sentencia:
+-- migracion: sin-transaccion
+-- =====================================================================
+
+-- El barrido busca por fecha_expiracion < límite; sin este índice cada lote recorre la tabla.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_tickets_fecha_expiracion
+    ON tickets (fecha_expiracion);
+
+-- Destino de tickets.purga.archivar=true. Mismas columnas y orden que tickets.
+CREATE TABLE IF NOT EXISTS tickets_historico (LIKE tickets INCLUDING DEFAULTS);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_tickets_historico_id
+    ON tickets_historico (id_ticket);
@@ -0,0 +1,9 @@
+-- =====================================================================
+-- V3: expiración deslizante de tickets (TicketAccesos).
+-- =====================================================================
+
+-- Último acceso registrado; lo escribe el flush periódico, no cada petición.
+ALTER TABLE tickets ADD COLUMN IF NOT EXISTS fecha_ultimo_acceso TIMESTAMP;
+
+-- tickets_historico debe conservar las mismas columnas (el archivado hace INSERT ... SELECT *).
+ALTER TABLE tickets_historico ADD COLUMN IF NOT EXISTS fecha_ultimo_acceso TIMESTAMP;
@@ -0,0 +1,17 @@
+-- =====================================================================
+-- V4: resumen por minuto de log_accesos (ResumenAccesos).
+-- =====================================================================
+
+-- Una fila por minuto, operación, resultado y proyecto. Varios nodos suman sobre la misma fila.
+-- histograma (16 cubetas): [1] = menos de 1 ms, [i] = de 2^(i-2) a 2^(i-1) ms, [16] = 16.4 s o más.
+CREATE TABLE IF NOT EXISTS log_accesos_resumen (
+    minuto             TIMESTAMP    NOT NULL,
+    operacion          VARCHAR(100) NOT NULL,
+    exitoso            BOOLEAN      NOT NULL,
+    proyecto           INTEGER      NOT NULL,
+    total              BIGINT       NOT NULL,
+    duracion_total_us  BIGINT       NOT NULL,
+    duracion_max_us    BIGINT       NOT NULL,
+    histograma         BIGINT[]     NOT NULL,
+    PRIMARY KEY (minuto, operacion, exitoso, proyecto)
+);
@@ -0,0 +1,63 @@
+-- =====================================================================
+-- OPCIONAL: convierte log_accesos en tabla particionada por rango de fecha_hora.
+-- NO lo aplica SchemaMigrator: ejecutar a mano (psql) en ventana de mantenimiento.
+--
+-- Después, LogAccesosParticiones crea las particiones futuras y elimina (o desprende, con
+-- log.accesos.retencion.archivar=true) las que quedan fuera de log.accesos.retencion.meses
+-- (por defecto 0: no se retira nada hasta configurarlo).
+-- Los INSERT de LogAccesoDAO no cambian: cada fila va a su partición, y cada partición tiene
+-- índices chicos que caben en memoria.
+--
+-- Requisitos / efectos:
+--   - PostgreSQL 11+. id_log SERIAL: su secuencia pasa a la tabla nueva.
+--   - La PK pasa a ser (id_log, fecha_hora). Las FK y los índices propios de la tabla vieja no se
+--     copian (solo la PK y el BRIN de V1); recrearlos sobre la tabla nueva si se necesitan.
+--   - Ajustar 'meses' abajo al valor de log.accesos.particion.meses.
+--   - Solo se copian los registros desde la partición anterior; el resto queda en
+--     log_accesos_sin_particionar (borrarla o archivarla cuando ya no se necesite).
+-- =====================================================================
+
+BEGIN;
+
+ALTER TABLE log_accesos RENAME TO log_accesos_sin_particionar;
+ALTER INDEX IF EXISTS ix_log_accesos_fecha_brin RENAME TO ix_log_accesos_fecha_brin_sin_particionar;
+
+CREATE TABLE log_accesos (LIKE log_accesos_sin_particionar INCLUDING DEFAULTS)
+    PARTITION BY RANGE (fecha_hora);
+
+ALTER TABLE log_accesos ADD PRIMARY KEY (id_log, fecha_hora);
+
+DO $$
+DECLARE
+    s text := pg_get_serial_sequence('log_accesos_sin_particionar', 'id_log');
+BEGIN
+    IF s IS NOT NULL THEN
+        EXECUTE format('ALTER SEQUENCE %s OWNED BY log_accesos.id_log', s);
+    END IF;
+END $$;
+
+CREATE INDEX ix_log_accesos_fecha_brin
+    ON log_accesos USING brin (fecha_hora);
+
+-- Partición anterior, actual y tres siguientes (LogAccesosParticiones mantiene las futuras después)
+DO $$
+DECLARE
+    meses int := 1;  -- = log.accesos.particion.meses
+    desde date := date_trunc('year', now())
+                  + make_interval(months => ((extract(month FROM now())::int - 1) / meses - 1) * meses);
+    ini   date := desde;
+BEGIN
+    FOR i IN 0..4 LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF log_accesos FOR VALUES FROM (%L) TO (%L)',
+                       'log_accesos_p' || to_char(ini, 'YYYYMM'), ini, ini + make_interval(months => meses));
+        ini := ini + make_interval(months => meses);
+    END LOOP;
+
+    INSERT INTO log_accesos
+    SELECT * FROM log_accesos_sin_particionar
+     WHERE fecha_hora >= desde;
+END $$;
+
+COMMIT;
+
+ANALYZE log_accesos;
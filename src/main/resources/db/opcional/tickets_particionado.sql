@@ -0,0 +1,54 @@
+-- =====================================================================
+-- OPCIONAL: convierte tickets en tabla particionada por mes sobre fecha_expiracion.
+-- NO lo aplica SchemaMigrator: ejecutar a mano (psql) en ventana de mantenimiento.
+--
+-- Después, TicketSweeper detecta la tabla particionada y en lugar de borrar por lotes
+-- crea las particiones de los próximos meses y elimina (o desprende, con
+-- tickets.purga.archivar=true) los meses vencidos: O(1) sin importar cuántos tickets haya.
+--
+-- Requisitos / efectos:
+--   - PostgreSQL 11+.
+--   - La PK pasa a ser (id_ticket, fecha_expiracion): una FK de log_accesos a tickets(id_ticket)
+--     no puede apuntar a la tabla particionada; eliminarla antes.
+--   - Solo se copian los tickets que expiran desde el mes anterior; el resto queda en
+--     tickets_sin_particionar (borrarla cuando ya no se necesite).
+-- =====================================================================
+
+BEGIN;
+
+ALTER TABLE tickets RENAME TO tickets_sin_particionar;
+ALTER INDEX IF EXISTS ix_tickets_vigentes RENAME TO ix_tickets_vigentes_sin_particionar;
+ALTER INDEX IF EXISTS ix_tickets_fecha_expiracion RENAME TO ix_tickets_fecha_expiracion_sin_particionar;
+
+CREATE TABLE tickets (LIKE tickets_sin_particionar INCLUDING DEFAULTS)
+    PARTITION BY RANGE (fecha_expiracion);
+
+ALTER TABLE tickets ADD PRIMARY KEY (id_ticket, fecha_expiracion);
+
+-- Mes anterior, actual y tres siguientes (TicketSweeper mantiene los futuros después)
+DO $$
+DECLARE
+    mes date := date_trunc('month', now() - interval '1 month');
+BEGIN
+    FOR i IN 0..4 LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF tickets FOR VALUES FROM (%L) TO (%L)',
+                       'tickets_p' || to_char(mes, 'YYYYMM'), mes, mes + interval '1 month');
+        mes := mes + interval '1 month';
+    END LOOP;
+END $$;
+
+CREATE INDEX ix_tickets_vigentes
+    ON tickets (id_ticket)
+    INCLUDE (fecha_expiracion)
+    WHERE activo = true;
+
+CREATE INDEX ix_tickets_fecha_expiracion
+    ON tickets (fecha_expiracion);
+
+INSERT INTO tickets
+SELECT * FROM tickets_sin_particionar
+ WHERE fecha_expiracion >= date_trunc('month', now() - interval '1 month');
+
+COMMIT;
+
+ANALYZE tickets;
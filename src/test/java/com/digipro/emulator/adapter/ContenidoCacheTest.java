@@ -0,0 +1,146 @@
+package com.digipro.emulator.adapter;
+
+import com.digipro.emulator.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Caché de 1 MB: ventana de ~10 KB y región principal de ~1 MB. */
+class ContenidoCacheTest {
+
+    private static final int KB = 1024;
+    private static final long MTIME = 1_700_000_000_000L;
+    /** Región principal: presupuesto menos la ventana (1%). */
+    private static final int PRINCIPAL = 1024 * KB - 1024 * KB / 100;
+
+    private static ContenidoCache cache(String almacen) {
+        Properties p = new Properties();
+        p.setProperty("cache.contenido.max.mb", "1");
+        p.setProperty("cache.contenido.almacen", almacen);
+        return ContenidoCache.crear(AppConfig.from(p));
+    }
+
+    private static ByteBuffer contenido(int tamano, int semilla) {
+        byte[] b = new byte[tamano];
+        for (int i = 0; i < tamano; i++) b[i] = (byte) (i * 31 + semilla);
+        return ByteBuffer.wrap(b);
+    }
+
+    /** Lo que hace FileSystemAdapter: pide (cuenta el acceso) y, si falta, guarda. */
+    private static void leer(ContenidoCache c, String clave, int tamano) {
+        if (c.get(clave, MTIME, tamano) == null && c.admitiria(clave, tamano)) {
+            c.put(clave, MTIME, c.almacenable(contenido(tamano, clave.hashCode()), true));
+        }
+    }
+
+    private static boolean guardado(ContenidoCache c, String clave, int tamano) {
+        return c.get(clave, MTIME, tamano) != null;
+    }
+
+    @Test
+    void deshabilitadaConCeroMb() {
+        assertNull(ContenidoCache.crear(AppConfig.from(new Properties())));
+    }
+
+    @Test
+    void devuelveElMismoContenido() {
+        for (String almacen : new String[]{"heap", "directo"}) {
+            ContenidoCache c = cache(almacen);
+            ByteBuffer original = contenido(4 * KB, 7);
+            c.put("/a", MTIME, c.almacenable(original, false));
+            ByteBuffer b = c.get("/a", MTIME, 4 * KB);
+            assertNotNull(b, almacen);
+            assertEquals(0, b.position());
+            assertArrayEquals(original.array(), ContenidoCache.arreglo(b));
+        }
+    }
+
+    @Test
+    void archivoCambiadoNoSeSirve() {
+        ContenidoCache c = cache("heap");
+        c.put("/a", MTIME, c.almacenable(contenido(4 * KB, 1), true));
+        assertNull(c.get("/a", MTIME + 1, 4 * KB));
+        // la entrada vieja se quitó: aun con el mtime original ya no está
+        assertNull(c.get("/a", MTIME, 4 * KB));
+
+        c.put("/b", MTIME, c.almacenable(contenido(4 * KB, 1), true));
+        assertNull(c.get("/b", MTIME, 4 * KB + 1));
+    }
+
+    @Test
+    void archivoMasGrandeQueElPresupuestoNoEntra() {
+        ContenidoCache c = cache("heap");
+        assertFalse(c.admitiria("/grande", 2 * KB * KB));
+        c.put("/grande", MTIME, contenido(2 * KB * KB, 0));
+        assertNull(c.get("/grande", MTIME, 2 * KB * KB));
+    }
+
+    @Test
+    void conLugarLosGrandesEntranDirectoALaPrincipal() {
+        ContenidoCache c = cache("heap");
+        assertTrue(c.admitiria("/a", 300 * KB));
+        leer(c, "/a", 300 * KB);
+        assertTrue(guardado(c, "/a", 300 * KB));
+    }
+
+    @Test
+    void unArchivoPedidoUnaVezNoDesplazaALosFrecuentes() {
+        ContenidoCache c = cache("heap");
+        for (String k : new String[]{"/h1", "/h2", "/h3"}) {
+            for (int i = 0; i < 3; i++) leer(c, k, 300 * KB);
+        }
+        assertFalse(c.admitiria("/nuevo", 300 * KB));
+
+        c.put("/nuevo", MTIME, contenido(300 * KB, 0)); // aun si llega a put, se rechaza
+        assertFalse(guardado(c, "/nuevo", 300 * KB));
+        assertTrue(guardado(c, "/h1", 300 * KB));
+        assertTrue(guardado(c, "/h2", 300 * KB));
+        assertTrue(guardado(c, "/h3", 300 * KB));
+    }
+
+    @Test
+    void unArchivoMasPedidoDesplazaAlMenosReciente() {
+        ContenidoCache c = cache("heap");
+        leer(c, "/viejo", 300 * KB);
+        leer(c, "/medio", 300 * KB);
+        leer(c, "/reciente", 300 * KB);
+        for (int i = 0; i < 5; i++) c.get("/popular", MTIME, 300 * KB);
+
+        assertTrue(c.admitiria("/popular", 300 * KB));
+        leer(c, "/popular", 300 * KB);
+        assertTrue(guardado(c, "/popular", 300 * KB));
+        assertFalse(guardado(c, "/viejo", 300 * KB));
+        assertTrue(guardado(c, "/medio", 300 * KB));
+        assertTrue(guardado(c, "/reciente", 300 * KB));
+    }
+
+    @Test
+    void alSalirDeLaVentanaPasaALaPrincipalSiHayLugar() {
+        ContenidoCache c = cache("heap");
+        leer(c, "/a", 6 * KB);
+        leer(c, "/b", 6 * KB); // la ventana (~10 KB) se desborda: /a pasa a la principal
+        assertTrue(guardado(c, "/a", 6 * KB));
+        assertTrue(guardado(c, "/b", 6 * KB));
+    }
+
+    @Test
+    void alSalirDeLaVentanaSinHistorialSeDescarta() {
+        ContenidoCache c = cache("heap");
+        // región principal llena con un archivo pedido varias veces
+        for (int i = 0; i < 3; i++) leer(c, "/h", PRINCIPAL);
+        assertTrue(guardado(c, "/h", PRINCIPAL));
+        leer(c, "/a", 6 * KB);
+        leer(c, "/b", 6 * KB); // /a sale de la ventana y pierde contra el frecuente
+        assertFalse(guardado(c, "/a", 6 * KB));
+        assertTrue(guardado(c, "/b", 6 * KB));
+        assertTrue(guardado(c, "/h", PRINCIPAL));
+    }
+}
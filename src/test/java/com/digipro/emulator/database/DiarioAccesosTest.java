@@ -0,0 +1,94 @@
+package com.digipro.emulator.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Formato de los segmentos del diario: [int longitud][int CRC32][datos]. */
+class DiarioAccesosTest {
+
+    @TempDir
+    Path dir;
+
+    private static final RegistroAcceso A =
+            new RegistroAcceso("tk-1", 10, "ObtenDocumento", "llave-ñ", 1_700_000_000_000L, "10.0.0.1", true, null);
+    private static final RegistroAcceso B =
+            new RegistroAcceso(null, null, "ObtenLogin", null, 1_700_000_000_001L, null, false, "Credenciales inválidas");
+    private static final RegistroAcceso C =
+            new RegistroAcceso("tk-3", 30, "ObtenDocumento", "llave-3", 1_700_000_000_002L, "10.0.0.3", true, null);
+
+    private static byte[] marco(RegistroAcceso r) {
+        byte[] c = DiarioAccesos.cuerpo(r);
+        CRC32 crc = new CRC32();
+        crc.update(c);
+        return ByteBuffer.allocate(8 + c.length).putInt(c.length).putInt((int) crc.getValue()).put(c).array();
+    }
+
+    private Path segmento(byte[]... marcos) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] m : marcos) out.write(m);
+        return Files.write(dir.resolve("accesos-0000000000000000001.jnl"), out.toByteArray());
+    }
+
+    private static void assertMismo(RegistroAcceso esperado, RegistroAcceso r) {
+        assertEquals(esperado.idTicket, r.idTicket);
+        assertEquals(esperado.idDocumento, r.idDocumento);
+        assertEquals(esperado.operacion, r.operacion);
+        assertEquals(esperado.llaveBusqueda, r.llaveBusqueda);
+        assertEquals(esperado.fechaHora, r.fechaHora);
+        assertEquals(esperado.ipOrigen, r.ipOrigen);
+        assertEquals(esperado.exitoso, r.exitoso);
+        assertEquals(esperado.mensajeError, r.mensajeError);
+    }
+
+    @Test
+    void idaYVueltaConservaNulosYUtf8() throws Exception {
+        List<RegistroAcceso> rs = DiarioAccesos.leer(segmento(marco(A), marco(B)));
+        assertEquals(2, rs.size());
+        assertMismo(A, rs.get(0));
+        assertMismo(B, rs.get(1));
+        assertNull(rs.get(1).idDocumento);
+    }
+
+    @Test
+    void segmentoVacio() throws Exception {
+        assertEquals(0, DiarioAccesos.leer(segmento()).size());
+    }
+
+    @Test
+    void colaTruncadaSeDescarta() throws Exception {
+        byte[] c = marco(C);
+        for (int corte : new int[]{3, 8, c.length - 1}) {
+            List<RegistroAcceso> rs = DiarioAccesos.leer(segmento(marco(A), marco(B), Arrays.copyOf(c, corte)));
+            assertEquals(2, rs.size(), "corte en " + corte);
+            assertMismo(B, rs.get(1));
+        }
+    }
+
+    @Test
+    void crcInvalidoDescartaDesdeAhi() throws Exception {
+        byte[] b = marco(B);
+        b[b.length - 1] ^= 1;
+        List<RegistroAcceso> rs = DiarioAccesos.leer(segmento(marco(A), b, marco(C)));
+        assertEquals(1, rs.size());
+        assertMismo(A, rs.get(0));
+    }
+
+    @Test
+    void longitudImposibleEsEncabezadoCorrupto() throws Exception {
+        byte[] basura = ByteBuffer.allocate(16).putInt(-5).putInt(0).array();
+        byte[] enorme = ByteBuffer.allocate(16).putInt(Integer.MAX_VALUE).putInt(0).array();
+        assertEquals(1, DiarioAccesos.leer(segmento(marco(A), basura)).size());
+        assertEquals(1, DiarioAccesos.leer(segmento(marco(A), enorme)).size());
+    }
+}
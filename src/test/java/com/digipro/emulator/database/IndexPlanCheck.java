@@ -0,0 +1,84 @@
+package com.digipro.emulator.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifica contra una BD local que las consultas calientes usan índice.
+ * Herramienta de desarrollo, no forma parte del WAR (vive en src/test/java).
+ *
+ * Ejecuta EXPLAIN del mismo SQL que usan los DAO con enable_seqscan=off: así, aun con tablas de
+ * desarrollo casi vacías, el planificador elige el índice si existe uno utilizable, y un
+ * "Seq Scan" en el plan significa que falta (o no aplica) el índice.
+ *
+ * Uso (con database.properties en el classpath; aplica antes las migraciones si están habilitadas):
+ *   java -cp target/classes:target/test-classes com.digipro.emulator.database.IndexPlanCheck
+ * Código de salida: 0 = todas usan índice, 1 = alguna cae en Seq Scan, 2 = error.
+ */
+public final class IndexPlanCheck {
+
+    private IndexPlanCheck() {}
+
+    public static void main(String[] args) {
+        int codigo;
+        try {
+            codigo = verificar(DatabaseManager.getInstance()) ? 0 : 1;
+        } catch (Exception e) {
+            System.err.println("[IndexPlanCheck] ERROR: " + e.getMessage());
+            codigo = 2;
+        }
+        DatabaseManager.getInstance().shutdown();
+        System.exit(codigo);
+    }
+
+    /** @return true si ninguna consulta caliente usa Seq Scan */
+    static boolean verificar(DatabaseManager db) throws SQLException {
+        boolean ok = true;
+        try (Connection cn = db.getConnection()) {
+            cn.setAutoCommit(false);
+            try (Statement st = cn.createStatement()) {
+                st.execute("SET LOCAL enable_seqscan = off");
+            }
+            ok &= explicar(cn, "DocumentoDAO.porLlave", DocumentoDAO.SQL_POR_LLAVE, "LLAVE");
+            ok &= explicar(cn, "DocumentoDAO.porLlaveYTipo", DocumentoDAO.SQL_POR_LLAVE_Y_TIPO, "LLAVE", 1);
+            ok &= explicar(cn, "DocumentoDAO.paginaPorLlave", DocumentoDAO.SQL_PAGINA_POR_LLAVE, "LLAVE", 1, 1, 50);
+            ok &= explicar(cn, "DocumentoDAO.paginaPorLlaveYTipo", DocumentoDAO.SQL_PAGINA_POR_LLAVE_Y_TIPO, "LLAVE", 1, 1, 50);
+            ok &= explicar(cn, "DocumentoDAO.porLlaves", DocumentoDAO.SQL_POR_LLAVES,
+                    cn.createArrayOf("varchar", new Object[]{"LLAVE1", "LLAVE2"}));
+            ok &= explicar(cn, "DocumentoDAO.porLlavesYTipo", DocumentoDAO.SQL_POR_LLAVES_Y_TIPO,
+                    cn.createArrayOf("varchar", new Object[]{"LLAVE1", "LLAVE2"}), 1);
+            ok &= explicar(cn, "DocumentoDAO.porId", DocumentoDAO.SQL_POR_ID, 1L);
+            ok &= explicar(cn, "TicketDAO.vigente", TicketDAO.SQL_VIGENTE, "TICKET");
+            ok &= explicar(cn, "UsuarioDAO.validar", UsuarioDAO.SQL_VALIDAR, "usuario", "password");
+            cn.rollback();
+        }
+        System.out.println("[IndexPlanCheck] " + (ok ? "OK: todas las consultas usan índice" : "FALLA: hay consultas con Seq Scan"));
+        return ok;
+    }
+
+    private static boolean explicar(Connection cn, String nombre, String sql, Object... params) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement ps = cn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) plan.add(rs.getString(1));
+            }
+        }
+        boolean seqScan = false;
+        for (String linea : plan) {
+            if (linea.contains("Seq Scan")) seqScan = true;
+        }
+        System.out.println("[IndexPlanCheck] " + (seqScan ? "SEQ SCAN " : "OK       ") + nombre);
+        if (seqScan) {
+            for (String linea : plan) System.out.println("    " + linea);
+        }
+        return !seqScan;
+    }
+}
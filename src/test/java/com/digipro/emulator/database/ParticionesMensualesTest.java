@@ -0,0 +1,152 @@
+package com.digipro.emulator.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParticionesMensualesTest {
+
+    @Test
+    void nombreYMesSonInversos() {
+        ParticionesMensuales p = new ParticionesMensuales("tickets");
+        assertEquals("tickets_p202403", p.nombre(YearMonth.of(2024, 3)));
+        assertEquals(YearMonth.of(2024, 3), p.mes("tickets_p202403"));
+    }
+
+    @Test
+    void nombresFueraDeLaConvencionNoTienenMes() {
+        ParticionesMensuales p = new ParticionesMensuales("tickets");
+        assertNull(p.mes("tickets_default"));
+        assertNull(p.mes("tickets_p2024031"));
+        assertNull(p.mes("tickets_p202413"));
+        assertNull(p.mes("log_accesos_p202403"));
+    }
+
+    @Test
+    void mensualNoMueveElInicio() {
+        ParticionesMensuales p = new ParticionesMensuales("t");
+        for (int m = 1; m <= 12; m++) {
+            assertEquals(YearMonth.of(2024, m), p.inicio(YearMonth.of(2024, m)));
+        }
+    }
+
+    @Test
+    void variosMesesSeAlineanAlAnio() {
+        ParticionesMensuales trimestral = new ParticionesMensuales("t", 3);
+        assertEquals(YearMonth.of(2024, 1), trimestral.inicio(YearMonth.of(2024, 3)));
+        assertEquals(YearMonth.of(2024, 4), trimestral.inicio(YearMonth.of(2024, 4)));
+        assertEquals(YearMonth.of(2024, 4), trimestral.inicio(YearMonth.of(2024, 6)));
+        assertEquals(YearMonth.of(2024, 10), trimestral.inicio(YearMonth.of(2024, 12)));
+
+        ParticionesMensuales anual = new ParticionesMensuales("t", 12);
+        assertEquals(YearMonth.of(2024, 1), anual.inicio(YearMonth.of(2024, 11)));
+    }
+
+    @Test
+    void mesesQueNoDividenAlAnioSeRechazan() {
+        assertThrows(IllegalArgumentException.class, () -> new ParticionesMensuales("t", 5));
+        assertThrows(IllegalArgumentException.class, () -> new ParticionesMensuales("t", 0));
+    }
+
+    @Test
+    void creaLaActualYLasSiguientesAlineadas() throws Exception {
+        Bd bd = new Bd();
+        ParticionesMensuales p = new ParticionesMensuales("t", 3);
+        YearMonth actual = p.inicio(YearMonth.now());
+        bd.particiones.add(p.nombre(actual)); // ya existe: no se vuelve a crear
+
+        assertEquals(2, p.asegurarFuturas(bd.conexion(), 2));
+        YearMonth sig = actual.plusMonths(3);
+        assertEquals(Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS " + p.nombre(sig) + " PARTITION OF t FOR VALUES FROM ('"
+                        + sig.atDay(1) + "') TO ('" + sig.plusMonths(3).atDay(1) + "')",
+                "CREATE TABLE IF NOT EXISTS " + p.nombre(sig.plusMonths(3)) + " PARTITION OF t FOR VALUES FROM ('"
+                        + sig.plusMonths(3).atDay(1) + "') TO ('" + sig.plusMonths(6).atDay(1) + "')"),
+                bd.ejecutadas);
+    }
+
+    @Test
+    void retiraSoloLasQueTerminanAntesDelLimite() throws Exception {
+        Bd bd = new Bd();
+        bd.particiones.addAll(Arrays.asList("t_p202401", "t_p202402", "t_p202403", "t_default"));
+        ParticionesMensuales p = new ParticionesMensuales("t");
+
+        // t_p202402 termina el 2024-03-01: entra justo en el límite
+        List<String> retiradas = p.retirarAnteriores(bd.conexion(), LocalDate.of(2024, 3, 1), false);
+        assertEquals(Arrays.asList("t_p202401", "t_p202402"), retiradas);
+        assertEquals(Arrays.asList("DROP TABLE t_p202401", "DROP TABLE t_p202402"), bd.ejecutadas);
+    }
+
+    @Test
+    void desprenderEnVezDeBorrar() throws Exception {
+        Bd bd = new Bd();
+        bd.particiones.add("t_p202401");
+        new ParticionesMensuales("t").retirarAnteriores(bd.conexion(), LocalDate.of(2024, 6, 1), true);
+        assertEquals(Arrays.asList("ALTER TABLE t DETACH PARTITION t_p202401"), bd.ejecutadas);
+    }
+
+    /** Conexión falsa: la consulta de particiones devuelve {@code particiones}; las sentencias se registran. */
+    private static final class Bd {
+        final List<String> particiones = new ArrayList<>();
+        final List<String> ejecutadas = new ArrayList<>();
+
+        Connection conexion() {
+            return proxy(Connection.class, (m, a) -> {
+                switch (m) {
+                    case "prepareStatement": return consulta();
+                    case "createStatement":  return sentencia();
+                    default: return null;
+                }
+            });
+        }
+
+        private PreparedStatement consulta() {
+            return proxy(PreparedStatement.class, (m, a) -> m.equals("executeQuery") ? filas() : null);
+        }
+
+        private Statement sentencia() {
+            return proxy(Statement.class, (m, a) -> {
+                if (m.equals("execute")) ejecutadas.add((String) a[0]);
+                return m.equals("execute") ? Boolean.FALSE : null;
+            });
+        }
+
+        private ResultSet filas() {
+            Iterator<String> it = new ArrayList<>(particiones).iterator();
+            String[] actual = new String[1];
+            return proxy(ResultSet.class, (m, a) -> {
+                switch (m) {
+                    case "next":
+                        actual[0] = it.hasNext() ? it.next() : null;
+                        return actual[0] != null;
+                    case "getString": return actual[0];
+                    default: return null;
+                }
+            });
+        }
+    }
+
+    private interface Metodo {
+        Object invocar(String metodo, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> tipo, Metodo m) {
+        return (T) Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[]{tipo},
+                (p, metodo, args) -> m.invocar(metodo.getName(), args));
+    }
+}
@@ -0,0 +1,152 @@
+package com.digipro.emulator.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mide filas/segundo de DocumentoDAO al leer un expediente: la lista completa (findByLlave /
+ * findByLlaveYTipo) contra el recorrido por páginas de recorrerPorLlave, con procesador vacío.
+ * Los modos "d.*" y "proyeccion" aíslan el cambio de consulta: la misma lectura directa por JDBC
+ * (sin caché) con el SELECT d.* y mapeo por nombre de columna de antes, y con la proyección
+ * explícita y el mapeo por índice actuales (DocumentoDAO.SQL_POR_LLAVE y DocumentoDAO.map).
+ * Herramienta de medición, no forma parte del WAR. Requiere la BD de database.properties (en el
+ * classpath) y una llave con documentos:
+ *   java -cp target/classes:target/test-classes com.digipro.emulator.database.RecorridoDocumentosBench llave [tipoDocID] [segundos]
+ * Antes de cada lectura se invalida la llave en DocumentoCache para medir la BD y el mapeo, no la
+ * caché. Comparar documentos.pagina.tamano distintos corriendo varias veces; tomar los números como
+ * comparación relativa en la misma máquina y BD, no como valores absolutos.
+ */
+public final class RecorridoDocumentosBench {
+
+    /** Consulta anterior a la proyección explícita, para comparar. */
+    private static final String SQL_ANTERIOR =
+            "SELECT d.*, a.ruta_relativa, a.nombre_archivo, a.extension, a.tamano_bytes, a.fecha_creacion " +
+                    "FROM documentos d " +
+                    "JOIN archivos_fisicos a ON a.id_archivo = d.id_archivo ";
+
+    private static final String SQL_ANTERIOR_POR_LLAVE =
+            SQL_ANTERIOR +
+                    "WHERE d.llave_busqueda = ? " +
+                    "ORDER BY d.tipo_doc_id, d.id_documento";
+
+    private static final String SQL_ANTERIOR_POR_LLAVE_Y_TIPO =
+            SQL_ANTERIOR +
+                    "WHERE d.llave_busqueda = ? AND d.tipo_doc_id = ? " +
+                    "ORDER BY d.id_documento";
+
+    private RecorridoDocumentosBench() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Uso: RecorridoDocumentosBench llave [tipoDocID] [segundos]");
+            System.exit(2);
+        }
+        String llave = args[0];
+        int tipo = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        double segundos = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+
+        DatabaseManager db = DatabaseManager.getInstance();
+        try {
+            DocumentoDAO dao = new DocumentoDAO();
+            int filas = leerLista(dao, llave, tipo);
+            if (filas == 0) {
+                System.err.println("La llave " + llave + " no tiene documentos");
+                System.exit(2);
+            }
+            System.out.println("llave=" + llave + ", tipoDocID=" + tipo + ", documentos=" + filas
+                    + ", documentos.pagina.tamano=" + db.getConfig().documentosPaginaTamano);
+            System.out.printf("%-10s %12s %15s%n", "modo", "lecturas/s", "filas/s");
+            for (String modo : new String[]{"d.*", "proyeccion", "lista", "paginas"}) {
+                medir(db, dao, modo, llave, tipo, 1.0);
+                double porSegundo = medir(db, dao, modo, llave, tipo, segundos);
+                System.out.printf("%-10s %,12.1f %,15.0f%n", modo, porSegundo, porSegundo * filas);
+            }
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    /** @return lecturas completas del expediente por segundo */
+    private static double medir(DatabaseManager db, DocumentoDAO dao, String modo, String llave, int tipo,
+                                double segundos) throws Exception {
+        long fin = System.nanoTime() + (long) (segundos * 1e9);
+        long inicio = System.nanoTime();
+        long n = 0;
+        while (System.nanoTime() < fin) {
+            DocumentoCache.getInstance().invalidarLlave(llave);
+            switch (modo) {
+                case "d.*":
+                    leerDirecto(db, llave, tipo, true);
+                    break;
+                case "proyeccion":
+                    leerDirecto(db, llave, tipo, false);
+                    break;
+                case "lista":
+                    leerLista(dao, llave, tipo);
+                    break;
+                default:
+                    dao.recorrerPorLlave(llave, tipo, d -> { });
+            }
+            n++;
+        }
+        return n / ((System.nanoTime() - inicio) / 1e9);
+    }
+
+    private static int leerLista(DocumentoDAO dao, String llave, int tipo) {
+        List<DocumentoDTO> docs = tipo <= 0 ? dao.findByLlave(llave) : dao.findByLlaveYTipo(llave, tipo);
+        return docs.size();
+    }
+
+    /** Lectura por JDBC sin caché: SELECT d.* con mapeo por nombre, o la consulta y el mapeo de DocumentoDAO. */
+    private static int leerDirecto(DatabaseManager db, String llave, int tipo, boolean anterior) throws Exception {
+        String sql = anterior
+                ? (tipo <= 0 ? SQL_ANTERIOR_POR_LLAVE : SQL_ANTERIOR_POR_LLAVE_Y_TIPO)
+                : (tipo <= 0 ? DocumentoDAO.SQL_POR_LLAVE : DocumentoDAO.SQL_POR_LLAVE_Y_TIPO);
+        List<DocumentoDTO> docs = new ArrayList<>();
+        try (Connection cn = db.getReadConnection();
+             PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setString(1, llave);
+            if (tipo > 0) ps.setInt(2, tipo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    docs.add(anterior ? mapPorNombre(rs) : DocumentoDAO.map(rs));
+                }
+            }
+        }
+        return docs.size();
+    }
+
+    /** Mapeo de antes de la proyección explícita (por nombre de columna). */
+    private static DocumentoDTO mapPorNombre(ResultSet rs) throws Exception {
+        DocumentoDTO d = new DocumentoDTO();
+        d.idDocumento   = rs.getInt("id_documento");
+        d.negocio       = rs.getString("negocio");
+        d.proyectoId    = rs.getInt("proyecto_id");
+        d.tipoDocId     = rs.getInt("tipo_doc_id");
+        d.llaveBusqueda = rs.getString("llave_busqueda");
+        d.periodo       = rs.getString("periodo");
+        d.contrato      = rs.getString("contrato");
+        d.descripcion   = rs.getString("descripcion");
+
+        if (rs.getDate("fecha_documento") != null) {
+            d.fechaDocumento = rs.getDate("fecha_documento").toLocalDate();
+        }
+
+        Timestamp fc = rs.getTimestamp("fecha_creacion");
+        if (fc != null) {
+            d.fechaCreacion = new java.util.Date(fc.getTime());
+        }
+
+        d.idArchivo     = rs.getInt("id_archivo");
+        d.rutaRelativa  = rs.getString("ruta_relativa");
+        d.nombreArchivo = rs.getString("nombre_archivo");
+        d.extension     = rs.getString("extension");
+        d.tamanoBytes   = rs.getLong("tamano_bytes");
+        d.consecutivo   = 1;
+        return d;
+    }
+}
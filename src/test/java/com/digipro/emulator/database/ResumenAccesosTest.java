@@ -0,0 +1,38 @@
+package com.digipro.emulator.database;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Cubetas del histograma: [0] menos de 1 ms, [i] de 2^(i-1) a 2^i ms, [15] 16.4 s o más. */
+class ResumenAccesosTest {
+
+    @Test
+    void menosDeUnMilisegundo() {
+        assertEquals(0, ResumenAccesos.cubeta(0));
+    }
+
+    @Test
+    void cadaCubetaEmpiezaEnUnaPotenciaDeDos() {
+        for (int i = 1; i < ResumenAccesos.CUBETAS; i++) {
+            long desde = 1L << (i - 1);
+            assertEquals(i, ResumenAccesos.cubeta(desde), "desde " + desde + " ms");
+            assertEquals(i - 1, ResumenAccesos.cubeta(desde - 1), "antes de " + desde + " ms");
+        }
+    }
+
+    @Test
+    void limitesConocidos() {
+        assertEquals(1, ResumenAccesos.cubeta(1));
+        assertEquals(2, ResumenAccesos.cubeta(3));
+        assertEquals(10, ResumenAccesos.cubeta(1000));
+        assertEquals(14, ResumenAccesos.cubeta(16_383));
+    }
+
+    @Test
+    void laUltimaAcumulaTodoLoLento() {
+        assertEquals(ResumenAccesos.CUBETAS - 1, ResumenAccesos.cubeta(16_384));
+        assertEquals(ResumenAccesos.CUBETAS - 1, ResumenAccesos.cubeta(3_600_000));
+        assertEquals(ResumenAccesos.CUBETAS - 1, ResumenAccesos.cubeta(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,137 @@
+package com.digipro.emulator.database;
+
+import com.digipro.emulator.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** TicketCache es un singleton: cada prueba usa tokens propios. */
+class TicketCacheTest {
+
+    private static final long MINUTO = 60_000L;
+
+    private final TicketCache cache = TicketCache.getInstance();
+    private final AppConfig cfg = config("100");
+
+    private static AppConfig config(String max) {
+        Properties p = new Properties();
+        p.setProperty("cache.tickets.max", max);
+        p.setProperty("cache.tickets.revalidacion.s", "60");
+        p.setProperty("cache.tickets.negativo.ms", "2000");
+        p.setProperty("ticket.tiempo.vida.minutos", "60");
+        p.setProperty("ticket.deslizante.max.horas", "2");
+        return AppConfig.from(p);
+    }
+
+    private static String token() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Test
+    void sinEntradaHayQueIrABd() {
+        assertNull(cache.consultar(cfg, token()));
+    }
+
+    @Test
+    void vigenteHastaSuExpiracion() {
+        String t = token();
+        cache.putVigente(cfg, t, System.currentTimeMillis() + 60_000L, 0);
+        assertEquals(Boolean.TRUE, cache.consultar(cfg, t));
+    }
+
+    @Test
+    void expiradoEsInvalidoSinIrABd() {
+        String t = token();
+        cache.putVigente(cfg, t, System.currentTimeMillis() - 1, 0);
+        assertEquals(Boolean.FALSE, cache.consultar(cfg, t));
+    }
+
+    @Test
+    void negativoEsInvalido() {
+        String t = token();
+        cache.putNegativo(cfg, t);
+        assertEquals(Boolean.FALSE, cache.consultar(cfg, t));
+        assertNull(cache.expiracion(t));
+    }
+
+    @Test
+    void deshabilitadaNoGuardaNiResponde() {
+        AppConfig sinCache = config("0");
+        String t = token();
+        cache.putVigente(sinCache, t, System.currentTimeMillis() + 60_000L, 0);
+        assertNull(cache.consultar(sinCache, t));
+        assertNull(cache.consultar(cfg, t));
+    }
+
+    @Test
+    void desactivadoNoLoReemplazaUnaValidacionAtrasada() {
+        String t = token();
+        long expira = System.currentTimeMillis() + 60_000L;
+        cache.putVigente(cfg, t, expira, 0);
+        cache.putDesactivado(cfg, t);
+        // validarVigente que leyó el ticket activo antes del logout
+        cache.putVigente(cfg, t, expira, 0);
+        assertEquals(Boolean.FALSE, cache.consultar(cfg, t));
+        assertNull(cache.expiracion(t));
+        cache.extender(cfg, t, System.currentTimeMillis());
+        assertEquals(Boolean.FALSE, cache.consultar(cfg, t));
+    }
+
+    @Test
+    void extenderAdelantaHastaAccesoMasVida() {
+        String t = token();
+        long ahora = System.currentTimeMillis();
+        cache.putVigente(cfg, t, ahora + 10 * MINUTO, ahora);
+        cache.extender(cfg, t, ahora);
+        assertEquals(Long.valueOf(ahora + 60 * MINUTO), cache.expiracion(t));
+    }
+
+    @Test
+    void extenderNoPasaDeCreacionMasMaxHoras() {
+        String t = token();
+        long ahora = System.currentTimeMillis();
+        long creado = ahora - 90 * MINUTO;
+        cache.putVigente(cfg, t, ahora + 10 * MINUTO, creado);
+        cache.extender(cfg, t, ahora);
+        assertEquals(Long.valueOf(creado + 120 * MINUTO), cache.expiracion(t));
+    }
+
+    @Test
+    void extenderNuncaAcorta() {
+        String t = token();
+        long ahora = System.currentTimeMillis();
+        cache.putVigente(cfg, t, ahora + 100 * MINUTO, ahora);
+        cache.extender(cfg, t, ahora);
+        assertEquals(Long.valueOf(ahora + 100 * MINUTO), cache.expiracion(t));
+    }
+
+    @Test
+    void sinFechaDeCreacionNoSeExtiende() {
+        String t = token();
+        long ahora = System.currentTimeMillis();
+        cache.putVigente(cfg, t, ahora + 10 * MINUTO, 0);
+        cache.extender(cfg, t, ahora);
+        assertEquals(Long.valueOf(ahora + 10 * MINUTO), cache.expiracion(t));
+    }
+
+    @Test
+    void unTicketExpiradoNoRevive() {
+        String t = token();
+        long ahora = System.currentTimeMillis();
+        cache.putVigente(cfg, t, ahora - 1, ahora - 30 * MINUTO);
+        cache.extender(cfg, t, ahora);
+        assertEquals(Boolean.FALSE, cache.consultar(cfg, t));
+    }
+
+    @Test
+    void invalidarQuitaLaEntrada() {
+        String t = token();
+        cache.putVigente(cfg, t, System.currentTimeMillis() + 60_000L, 0);
+        cache.invalidar(t);
+        assertNull(cache.consultar(cfg, t));
+    }
+}
@@ -0,0 +1,62 @@
+package com.digipro.emulator.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mide tokens/segundo de cada modo de {@link GeneradorTokens} al aumentar los hilos.
+ * Herramienta de medición, no forma parte del WAR (vive en src/test/java). No requiere BD ni contenedor:
+ *   java -cp target/classes:target/test-classes com.digipro.emulator.service.GeneradorTokensBench [algoritmo] [segundos]
+ * Hace un calentamiento por combinación antes de medir; tomar los números como comparación
+ * relativa entre modos en la misma máquina, no como valores absolutos.
+ */
+public final class GeneradorTokensBench {
+
+    private static final String[] MODOS = {"compartido", "rayado", "porhilo"};
+    private static final int LONGITUD = 20;
+
+    private GeneradorTokensBench() {}
+
+    public static void main(String[] args) throws Exception {
+        String algoritmo = args.length > 0 ? args[0] : "DRBG";
+        double segundos = args.length > 1 ? Double.parseDouble(args[1]) : 2.0;
+        int maxHilos = Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.printf("%-24s %6s %15s%n", "modo", "hilos", "tokens/s");
+        for (String modo : MODOS) {
+            GeneradorTokens g = GeneradorTokens.crear(modo, algoritmo);
+            for (int hilos = 1; hilos <= maxHilos; hilos *= 2) {
+                medir(g, hilos, 0.5);
+                long porSegundo = medir(g, hilos, segundos);
+                System.out.printf("%-24s %6d %,15d%n", g, hilos, porSegundo);
+            }
+        }
+    }
+
+    private static long medir(GeneradorTokens g, int hilos, double segundos) throws InterruptedException {
+        LongAdder total = new LongAdder();
+        CountDownLatch inicio = new CountDownLatch(1);
+        long fin = System.nanoTime() + (long) (segundos * 1e9);
+        Thread[] ts = new Thread[hilos];
+        for (int i = 0; i < hilos; i++) {
+            ts[i] = new Thread(() -> {
+                byte[] token = new byte[LONGITUD];
+                long n = 0;
+                try {
+                    inicio.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < fin) {
+                    g.nextBytes(token);
+                    n++;
+                }
+                total.add(n);
+            });
+            ts[i].start();
+        }
+        inicio.countDown();
+        for (Thread t : ts) t.join();
+        return (long) (total.sum() / segundos);
+    }
+}
@@ -0,0 +1,89 @@
+package com.digipro.emulator.service;
+
+import com.digipro.emulator.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimitadorLoginTest {
+
+    /** Cubeta usada en el ms 1000 y que quedó sin fichas. */
+    private static final long VACIA_EN_1000 = 1000L << 24;
+
+    private static AppConfig config(int usuarioPorMin, int usuarioRafaga, int ipPorMin, int ipRafaga) {
+        Properties p = new Properties();
+        p.setProperty("login.limite.usuario.por.min", String.valueOf(usuarioPorMin));
+        p.setProperty("login.limite.usuario.rafaga", String.valueOf(usuarioRafaga));
+        p.setProperty("login.limite.ip.por.min", String.valueOf(ipPorMin));
+        p.setProperty("login.limite.ip.rafaga", String.valueOf(ipRafaga));
+        return AppConfig.from(p);
+    }
+
+    @Test
+    void cubetaSinUsarTieneLaRafagaCompleta() {
+        assertEquals(20_000, LimitadorLogin.fichas(0, 5000, 60, 20));
+    }
+
+    @Test
+    void rellenoProporcionalAlTiempo() {
+        // 60 por minuto = una ficha por segundo
+        assertEquals(1_000, LimitadorLogin.fichas(VACIA_EN_1000, 2000, 60, 20));
+        assertEquals(500, LimitadorLogin.fichas(VACIA_EN_1000, 1500, 60, 20));
+        // 6 por minuto: 100 ms dan una centésima de ficha (10 milésimas)
+        assertEquals(10, LimitadorLogin.fichas(VACIA_EN_1000, 1100, 6, 20));
+    }
+
+    @Test
+    void rellenoTopadoEnLaRafaga() {
+        assertEquals(20_000, LimitadorLogin.fichas(VACIA_EN_1000 | 5_000, 3_600_000, 60, 20));
+    }
+
+    @Test
+    void relojHaciaAtrasNoRellena() {
+        assertEquals(5_000, LimitadorLogin.fichas(VACIA_EN_1000 | 5_000, 500, 60, 20));
+    }
+
+    @Test
+    void laIpAgotaSuRafaga() {
+        AppConfig cfg = config(0, 20, 1, 3);
+        LimitadorLogin l = new LimitadorLogin(cfg);
+        for (int i = 0; i < 3; i++) assertTrue(l.permitir(cfg, "u" + i, "10.0.0.1"));
+        assertFalse(l.permitir(cfg, "otro", "10.0.0.1"));
+        assertTrue(l.permitir(cfg, "otro", "10.0.0.2"));
+        assertEquals(1, l.rechazados());
+    }
+
+    @Test
+    void sinIpNoSeLimitaPorIp() {
+        AppConfig cfg = config(0, 20, 1, 1);
+        LimitadorLogin l = new LimitadorLogin(cfg);
+        for (int i = 0; i < 10; i++) assertTrue(l.permitir(cfg, "u", null));
+    }
+
+    @Test
+    void ceroPorMinutoEsSinLimite() {
+        AppConfig cfg = config(0, 1, 0, 1);
+        LimitadorLogin l = new LimitadorLogin(cfg);
+        for (int i = 0; i < 10; i++) {
+            l.fallido(cfg, "u");
+            assertTrue(l.permitir(cfg, "u", "10.0.0.1"));
+        }
+    }
+
+    @Test
+    void alUsuarioSoloLoCobranLosFallidos() {
+        AppConfig cfg = config(1, 2, 0, 100);
+        LimitadorLogin l = new LimitadorLogin(cfg);
+        for (int i = 0; i < 10; i++) assertTrue(l.permitir(cfg, "u", null)); // exitosos: no cobran
+
+        l.fallido(cfg, "u");
+        assertTrue(l.permitir(cfg, "u", null));
+        l.fallido(cfg, "u");
+        assertFalse(l.permitir(cfg, "u", null));
+        assertTrue(l.permitir(cfg, "v", null));
+    }
+}
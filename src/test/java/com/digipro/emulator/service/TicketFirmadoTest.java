@@ -0,0 +1,107 @@
+package com.digipro.emulator.service;
+
+import com.digipro.emulator.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TicketFirmadoTest {
+
+    private static final String CLAVE_A = clave('a');
+    private static final String CLAVE_B = clave('b');
+
+    private final AtomicReference<AppConfig> cfg = new AtomicReference<>(config(CLAVE_A, null));
+    private final TicketFirmado firmado = new TicketFirmado(cfg::get, GeneradorTokens.crear("compartido", "DRBG"));
+
+    private static String clave(char c) {
+        byte[] k = new byte[32];
+        Arrays.fill(k, (byte) c);
+        return Base64.getEncoder().encodeToString(k);
+    }
+
+    private static AppConfig config(String clave, String anterior) {
+        Properties p = new Properties();
+        p.setProperty("ticket.firmado", "true");
+        p.setProperty("ticket.firma.clave", clave);
+        if (anterior != null) p.setProperty("ticket.firma.clave.anterior", anterior);
+        return AppConfig.from(p);
+    }
+
+    private static long dentroDeUnaHora() {
+        return System.currentTimeMillis() / 1000L + 3600;
+    }
+
+    @Test
+    void formatoDelTicket() {
+        long expira = 3_000_000_000L; // mayor que Integer.MAX_VALUE: se lee sin signo
+        byte[] t = firmado.emitir(42, expira);
+        assertEquals(TicketFirmado.LONGITUD, t.length);
+        assertEquals(0x01, t[0]);
+        assertEquals(42, TicketFirmado.idUsuario(t));
+        assertEquals(expira, TicketFirmado.expiraEnSegundos(t));
+        assertEquals(TicketFirmado.Estado.VIGENTE, firmado.estado(t));
+    }
+
+    @Test
+    void elNonceDistingueTicketsDelMismoUsuarioYSegundo() {
+        long expira = dentroDeUnaHora();
+        assertFalse(Arrays.equals(firmado.emitir(7, expira), firmado.emitir(7, expira)));
+    }
+
+    @Test
+    void expirado() {
+        byte[] t = firmado.emitir(1, System.currentTimeMillis() / 1000L - 1);
+        assertEquals(TicketFirmado.Estado.EXPIRADO, firmado.estado(t));
+    }
+
+    @Test
+    void datosAlteradosNoPasanLaFirma() {
+        byte[] t = firmado.emitir(1, dentroDeUnaHora());
+        t[4] ^= 1; // otro id_usuario
+        assertEquals(TicketFirmado.Estado.NO_FIRMADO, firmado.estado(t));
+    }
+
+    @Test
+    void longitudVersionOModoApagadoNoSonFirmados() {
+        byte[] t = firmado.emitir(1, dentroDeUnaHora());
+        assertEquals(TicketFirmado.Estado.NO_FIRMADO, firmado.estado(Arrays.copyOf(t, 16)));
+        assertEquals(TicketFirmado.Estado.NO_FIRMADO, firmado.estado(null));
+
+        byte[] otraVersion = t.clone();
+        otraVersion[0] = 0x02;
+        assertEquals(TicketFirmado.Estado.NO_FIRMADO, firmado.estado(otraVersion));
+
+        cfg.set(AppConfig.from(new Properties()));
+        assertEquals(TicketFirmado.Estado.NO_FIRMADO, firmado.estado(t));
+    }
+
+    @Test
+    void rotacionDeClave() {
+        byte[] conA = firmado.emitir(1, dentroDeUnaHora());
+
+        cfg.set(config(CLAVE_B, CLAVE_A));
+        byte[] conB = firmado.emitir(1, dentroDeUnaHora());
+        assertEquals(TicketFirmado.Estado.VIGENTE, firmado.estado(conA));
+        assertEquals(TicketFirmado.Estado.VIGENTE, firmado.estado(conB));
+
+        // retirada la clave anterior, los tickets firmados con ella ya no se reconocen
+        cfg.set(config(CLAVE_B, null));
+        assertEquals(TicketFirmado.Estado.NO_FIRMADO, firmado.estado(conA));
+        assertEquals(TicketFirmado.Estado.VIGENTE, firmado.estado(conB));
+    }
+
+    @Test
+    void revocarSoloAfectaAEseTicket() {
+        byte[] t1 = firmado.emitir(1, dentroDeUnaHora());
+        byte[] t2 = firmado.emitir(1, dentroDeUnaHora());
+        firmado.revocar(t1);
+        assertEquals(TicketFirmado.Estado.INVALIDO, firmado.estado(t1));
+        assertEquals(TicketFirmado.Estado.VIGENTE, firmado.estado(t2));
+    }
+}